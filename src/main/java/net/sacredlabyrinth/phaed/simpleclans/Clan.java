@@ -62,6 +62,8 @@ public class Clan implements Serializable, Comparable<Clan> {
     private List<Rank> ranks = new ArrayList<>();
     private @Nullable String defaultRank = null;
     private @Nullable ItemStack banner;
+    private transient volatile MemberTotals memberTotals;
+    private transient volatile ClanRelations relations;
 
     /**
      *
@@ -201,6 +203,7 @@ public class Clan implements Serializable, Comparable<Clan> {
      */
     public void setName(String name) {
         this.name = name;
+        notifyChange();
     }
 
     /**
@@ -278,6 +281,7 @@ public class Clan implements Serializable, Comparable<Clan> {
         }
 
         this.balance = event.getNewBalance();
+        notifyChange();
         if (cause != Cause.LOADING) {
             if (operation == SET) {
                 SimpleClans.getInstance().getBankLogger().log(new BankLog(operator, this, response, SET, cause, balance));
@@ -304,6 +308,8 @@ public class Clan implements Serializable, Comparable<Clan> {
      */
     public void setTag(String tag) {
         this.tag = tag;
+        relationsChanged();
+        notifyChange();
     }
     /**
      * Returns the first color in the clan's tag
@@ -440,6 +446,8 @@ public class Clan implements Serializable, Comparable<Clan> {
 
     private void addAlly(String tag) {
         allies.add(tag);
+        relationsChanged();
+        notifyChange();
     }
 
     private boolean removeAlly(String ally) {
@@ -448,6 +456,8 @@ public class Clan implements Serializable, Comparable<Clan> {
         }
 
         allies.remove(ally);
+        relationsChanged();
+        notifyChange();
         return true;
     }
 
@@ -494,6 +504,7 @@ public class Clan implements Serializable, Comparable<Clan> {
      */
     public void setColorTag(String colorTag) {
         this.colorTag = ChatUtils.parseColors(colorTag);
+        notifyChange();
     }
 
     /**
@@ -541,9 +552,22 @@ public class Clan implements Serializable, Comparable<Clan> {
      * (used internally)
      */
     public void importMember(ClanPlayer cp) {
+        MemberTotals totals = memberTotals;
         // Remove any existing entry with the same UUID to avoid duplicates
-        members.removeIf(existing -> existing.getUniqueId().equals(cp.getUniqueId()));
+        members.removeIf(existing -> {
+            if (!existing.getUniqueId().equals(cp.getUniqueId())) {
+                return false;
+            }
+            if (totals != null) {
+                totals.remove(existing);
+            }
+            return true;
+        });
         members.add(cp);
+        if (totals != null) {
+            totals.add(cp);
+        }
+        notifyChange();
     }
     
     /**
@@ -565,7 +589,41 @@ public class Clan implements Serializable, Comparable<Clan> {
      * (used internally)
      */
     public void removeMember(UUID uuid) {
-        members.removeIf(cp -> cp.getUniqueId().equals(uuid));
+        MemberTotals totals = memberTotals;
+        members.removeIf(cp -> {
+            if (!cp.getUniqueId().equals(uuid)) {
+                return false;
+            }
+            if (totals != null) {
+                totals.remove(cp);
+            }
+            return true;
+        });
+        notifyChange();
+    }
+
+    /**
+     * @return the running sums of the members' counters, counted on first use
+     */
+    private MemberTotals getMemberTotals() {
+        MemberTotals totals = memberTotals;
+        if (totals == null) {
+            synchronized (members) {
+                totals = memberTotals;
+                if (totals == null) {
+                    totals = new MemberTotals(members);
+                    memberTotals = totals;
+                }
+            }
+        }
+        return totals;
+    }
+
+    private void notifyChange() {
+        SimpleClans plugin = SimpleClans.getInstance();
+        if (plugin != null && plugin.getClanManager() != null) {
+            plugin.getClanManager().notifyChange(this);
+        }
     }
 
     /**
@@ -588,24 +646,65 @@ public class Clan implements Serializable, Comparable<Clan> {
 
     private void addRival(String tag) {
         rivals.add(tag);
+        relationsChanged();
+        notifyChange();
     }
 
     private boolean removeRival(String rival) {
-        return rivals.remove(rival);
+        boolean removed = rivals.remove(rival);
+        relationsChanged();
+        notifyChange();
+        return removed;
     }
 
     /**
      * Check if the tag is a rival
      */
     public boolean isRival(String tag) {
-        return rivals.contains(tag);
+        return getRelations().isRival(tag);
     }
 
     /**
      * Check if the tag is an ally
      */
     public boolean isAlly(String tag) {
-        return allies.contains(tag);
+        return getRelations().isAlly(tag);
+    }
+
+    /**
+     * @return the relations with other clans, built from the lists on first use
+     */
+    private ClanRelations getRelations() {
+        ClanRelations current = relations;
+        if (current == null) {
+            synchronized (this) {
+                current = relations;
+                if (current == null) {
+                    current = new ClanRelations(allies, rivals, flags.getStringList(WARRING_KEY));
+                    relations = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Drops the relations, must be called after the lists change
+     */
+    private synchronized void relationsChanged() {
+        relations = null;
+        invalidateCombatRelations();
+        SimpleClans plugin = SimpleClans.getInstance();
+        if (plugin != null && plugin.getProtectionManager() != null) {
+            plugin.getProtectionManager().invalidateWarring();
+        }
+    }
+
+    private void invalidateCombatRelations() {
+        SimpleClans plugin = SimpleClans.getInstance();
+        if (plugin != null && plugin.getClanManager() != null) {
+            plugin.getClanManager().getCombatRelations().invalidate();
+        }
     }
 
     /**
@@ -625,6 +724,8 @@ public class Clan implements Serializable, Comparable<Clan> {
      */
     public void setVerified(boolean verified) {
         this.verified = verified;
+        invalidateCombatRelations();
+        notifyChange();
     }
 
     @Placeholder("is_permanent")
@@ -690,6 +791,8 @@ public class Clan implements Serializable, Comparable<Clan> {
      */
     public void setPackedAllies(String packedAllies) {
         allies = Helper.fromArrayToList(packedAllies.split("[|]"));
+        relationsChanged();
+        notifyChange();
     }
 
     /**
@@ -708,6 +811,8 @@ public class Clan implements Serializable, Comparable<Clan> {
      */
     public void setPackedRivals(String packedRivals) {
         rivals = Helper.fromArrayToList(packedRivals.split("[|]"));
+        relationsChanged();
+        notifyChange();
     }
 
     /**
@@ -881,19 +986,14 @@ public class Clan implements Serializable, Comparable<Clan> {
         if (members.isEmpty()) {
             return 0;
         }
-        double totalWeightedKills = 0;
-        int totalDeaths = 0;
-
-        for (ClanPlayer cp : members) {
-            totalWeightedKills += cp.getWeightedKills();
-            totalDeaths += cp.getDeaths();
-        }
+        MemberTotals totals = getMemberTotals();
+        int totalDeaths = totals.getDeaths();
 
         if (totalDeaths == 0) {
             totalDeaths = 1;
         }
 
-        return ((float) totalWeightedKills) / ((float) totalDeaths);
+        return ((float) totals.getWeightedKills()) / ((float) totalDeaths);
     }
 
     /**
@@ -901,17 +1001,11 @@ public class Clan implements Serializable, Comparable<Clan> {
      */
     @Placeholder("total_deaths")
     public int getTotalDeaths() {
-        int totalDeaths = 0;
-
         if (members.isEmpty()) {
-            return totalDeaths;
-        }
-
-        for (ClanPlayer cp : members) {
-            totalDeaths += cp.getDeaths();
+            return 0;
         }
 
-        return totalDeaths;
+        return getMemberTotals().getDeaths();
     }
 
     /**
@@ -919,17 +1013,12 @@ public class Clan implements Serializable, Comparable<Clan> {
      */
     @Placeholder("average_wk")
     public int getAverageWK() {
-        int total = 0;
-
-        if (members.isEmpty()) {
-            return total;
-        }
-
-        for (ClanPlayer cp : members) {
-            total += cp.getWeightedKills();
+        int size = getSize();
+        if (size == 0) {
+            return 0;
         }
 
-        return total / getSize();
+        return getMemberTotals().getFlooredWeightedKills() / size;
     }
 
     @Placeholder("total_kills")
@@ -942,13 +1031,7 @@ public class Clan implements Serializable, Comparable<Clan> {
      */
     @Placeholder("total_rival")
     public int getTotalRival() {
-        int total = 0;
-
-        for (ClanPlayer cp : getMembers()) {
-            total += cp.getRivalKills();
-        }
-
-        return total;
+        return getMemberTotals().getRivalKills();
     }
 
     /**
@@ -956,13 +1039,7 @@ public class Clan implements Serializable, Comparable<Clan> {
      */
     @Placeholder("total_neutral")
     public int getTotalNeutral() {
-        int total = 0;
-
-        for (ClanPlayer cp : getMembers()) {
-            total += cp.getNeutralKills();
-        }
-
-        return total;
+        return getMemberTotals().getNeutralKills();
     }
 
     /**
@@ -970,24 +1047,12 @@ public class Clan implements Serializable, Comparable<Clan> {
      */
     @Placeholder("total_civilian")
     public int getTotalCivilian() {
-        int total = 0;
-
-        for (ClanPlayer cp : getMembers()) {
-            total += cp.getCivilianKills();
-        }
-
-        return total;
+        return getMemberTotals().getCivilianKills();
     }
 
     @Placeholder("total_ally")
     public int getTotalAlly() {
-        int total = 0;
-
-        for (ClanPlayer cp : getMembers()) {
-            total += cp.getAllyKills();
-        }
-
-        return total;
+        return getMemberTotals().getAllyKills();
     }
 
     /**
@@ -1464,9 +1529,17 @@ public class Clan implements Serializable, Comparable<Clan> {
                 SimpleClans.getInstance().getStorageManager().updateClanPlayer(cp);
             }
         }
+        // the former members no longer update this clan's totals
+        MemberTotals totals = memberTotals;
+        if (totals != null) {
+            for (ClanPlayer cp : members) {
+                cp.removeMemberTotals(totals);
+            }
+        }
 
         Bukkit.getPluginManager().callEvent(new DisbandClanEvent(sender, this));
         clans.remove(this);
+        relationsChanged();
 
         for (Clan c : clans) {
             String disbanded = lang("clan.disbanded");
@@ -1510,7 +1583,7 @@ public class Clan implements Serializable, Comparable<Clan> {
      * @param tag the tag of the clan we are at war with
      */
     public boolean isWarring(String tag) {
-        return flags.getStringList(WARRING_KEY).contains(tag);
+        return getRelations().isWarring(tag);
     }
 
     /**
@@ -1530,6 +1603,8 @@ public class Clan implements Serializable, Comparable<Clan> {
         if (!warring.contains(targetClan.getTag())) {
             warring.add(targetClan.getTag());
             flags.put(WARRING_KEY, warring);
+            relationsChanged();
+            notifyChange();
             if (requestPlayer != null) {
                 addBb(requestPlayer.getName(), lang("you.are.at.war",
                         getName(), targetClan.getColorTag()));
@@ -1549,6 +1624,8 @@ public class Clan implements Serializable, Comparable<Clan> {
         List<String> warring = flags.getStringList(WARRING_KEY);
         if (warring.remove(clan.getTag())) {
             flags.put(WARRING_KEY, warring);
+            relationsChanged();
+            notifyChange();
             SimpleClans.getInstance().getStorageManager().updateClan(this);
             return true;
         }
@@ -1582,6 +1659,8 @@ public class Clan implements Serializable, Comparable<Clan> {
      */
     public void setFlags(String flagString) {
         flags = new Flags(flagString);
+        relationsChanged();
+        notifyChange();
     }
 
     public void validateWarring() {
@@ -1595,6 +1674,8 @@ public class Clan implements Serializable, Comparable<Clan> {
             }
         }
         flags.put(WARRING_KEY, warring);
+        relationsChanged();
+        notifyChange();
     }
 
     public void setHomeLocation(@Nullable Location home) {
@@ -18,6 +18,7 @@ import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 import static net.sacredlabyrinth.phaed.simpleclans.SimpleClans.lang;
@@ -53,6 +54,7 @@ public class ClanPlayer implements Serializable, Comparable<ClanPlayer> {
     private boolean clanChatMute = false;
 
     private @Nullable Locale locale;
+    private transient CopyOnWriteArrayList<MemberTotals> memberTotals = new CopyOnWriteArrayList<>();
 
 
     /**
@@ -148,6 +150,7 @@ public class ClanPlayer implements Serializable, Comparable<ClanPlayer> {
      */
     public void setName(String name) {
         displayName = name;
+        notifyChange();
     }
 
     /**
@@ -180,6 +183,7 @@ public class ClanPlayer implements Serializable, Comparable<ClanPlayer> {
         }
 
         this.leader = leader;
+        notifyChange();
     }
 
     /**
@@ -293,6 +297,8 @@ public class ClanPlayer implements Serializable, Comparable<ClanPlayer> {
      */
     public void setRivalKills(int rivalKills) {
         kills.put(Kill.Type.RIVAL, rivalKills);
+        updateMemberTotals();
+        notifyChange();
     }
 
     /**
@@ -320,6 +326,8 @@ public class ClanPlayer implements Serializable, Comparable<ClanPlayer> {
      */
     public void setCivilianKills(int civilianKills) {
         kills.put(Kill.Type.CIVILIAN, civilianKills);
+        updateMemberTotals();
+        notifyChange();
     }
 
     /**
@@ -347,6 +355,8 @@ public class ClanPlayer implements Serializable, Comparable<ClanPlayer> {
      */
     public void setNeutralKills(int neutralKills) {
         kills.put(Kill.Type.NEUTRAL, neutralKills);
+        updateMemberTotals();
+        notifyChange();
     }
 
     /**
@@ -359,6 +369,8 @@ public class ClanPlayer implements Serializable, Comparable<ClanPlayer> {
 
     public void setAllyKills(int allyKills) {
         kills.put(Kill.Type.ALLY, allyKills);
+        updateMemberTotals();
+        notifyChange();
     }
 
     @Placeholder("ally_kills")
@@ -371,6 +383,8 @@ public class ClanPlayer implements Serializable, Comparable<ClanPlayer> {
      */
     public void addKill(Kill.Type type) {
         kills.compute(type, (t, c) -> c == null ? 1 : c + 1);
+        updateMemberTotals();
+        notifyChange();
     }
 
     /**
@@ -427,6 +441,43 @@ public class ClanPlayer implements Serializable, Comparable<ClanPlayer> {
      */
     public void setDeaths(int deaths) {
         this.deaths = deaths;
+        updateMemberTotals();
+        notifyChange();
+    }
+
+    /**
+     * (used internally)
+     */
+    void addMemberTotals(@NotNull MemberTotals totals) {
+        // null when deserialized by Java serialization
+        if (memberTotals == null) {
+            memberTotals = new CopyOnWriteArrayList<>();
+        }
+        memberTotals.addIfAbsent(totals);
+    }
+
+    /**
+     * (used internally)
+     */
+    void removeMemberTotals(@NotNull MemberTotals totals) {
+        if (memberTotals != null) {
+            memberTotals.remove(totals);
+        }
+    }
+
+    private void updateMemberTotals() {
+        if (memberTotals != null) {
+            for (MemberTotals totals : memberTotals) {
+                totals.update(this);
+            }
+        }
+    }
+
+    private void notifyChange() {
+        SimpleClans plugin = SimpleClans.getInstance();
+        if (plugin != null && plugin.getClanManager() != null) {
+            plugin.getClanManager().notifyChange(this);
+        }
     }
 
     /**
@@ -685,6 +736,7 @@ public class ClanPlayer implements Serializable, Comparable<ClanPlayer> {
         }
 
         this.clan = clan;
+        notifyChange();
     }
 
     /**
@@ -729,6 +781,7 @@ public class ClanPlayer implements Serializable, Comparable<ClanPlayer> {
      */
     public void setTrusted(boolean trusted) {
         this.trusted = trusted;
+        notifyChange();
     }
 
     /**
@@ -747,6 +800,7 @@ public class ClanPlayer implements Serializable, Comparable<ClanPlayer> {
      */
     public void setFlags(String flagString) {
         flags = new Flags(flagString);
+        notifyChange();
     }
 
     @Placeholder(value = "clanchat_player_color", resolver = "player_color")
@@ -875,6 +929,7 @@ public class ClanPlayer implements Serializable, Comparable<ClanPlayer> {
      */
     public void setRank(@Nullable String rank) {
         flags.put("rank", rank == null ? "" : rank);
+        notifyChange();
     }
 
     public @Nullable Locale getLocale() {
@@ -0,0 +1,76 @@
+package net.sacredlabyrinth.phaed.simpleclans;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A clan's allies, rivals and warring clans, as sets of interned tag ids, so checking a relation is a map lookup and a
+ * bit test instead of searching the tag lists.
+ * <p>
+ * Tags are interned once for the life of the server, so the ids of different clans can be compared. A clan's
+ * relations are built from its lists when first needed and dropped when they change, they are never changed.
+ * </p>
+ */
+final class ClanRelations {
+
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private final BitSet allies;
+    private final BitSet rivals;
+    private final BitSet warring;
+
+    ClanRelations(@NotNull Iterable<String> allies, @NotNull Iterable<String> rivals,
+                  @NotNull Iterable<String> warring) {
+        this.allies = toBitSet(allies);
+        this.rivals = toBitSet(rivals);
+        this.warring = toBitSet(warring);
+    }
+
+    boolean isAlly(@Nullable String tag) {
+        return contains(allies, tag);
+    }
+
+    boolean isRival(@Nullable String tag) {
+        return contains(rivals, tag);
+    }
+
+    boolean isWarring(@Nullable String tag) {
+        return contains(warring, tag);
+    }
+
+    /**
+     * @return the id of the tag, the same for every clan
+     */
+    static int intern(@NotNull String tag) {
+        Integer id = IDS.get(tag);
+        if (id == null) {
+            id = IDS.computeIfAbsent(tag, t -> NEXT_ID.getAndIncrement());
+        }
+        return id;
+    }
+
+    private static boolean contains(BitSet set, @Nullable String tag) {
+        if (tag == null) {
+            return false;
+        }
+        // a tag that was never interned isn't related to any clan
+        Integer id = IDS.get(tag);
+        return id != null && set.get(id);
+    }
+
+    private static BitSet toBitSet(Iterable<String> tags) {
+        BitSet set = new BitSet();
+        for (String tag : tags) {
+            if (tag != null && !tag.isEmpty()) {
+                set.set(intern(tag));
+            }
+        }
+        return set;
+    }
+}
@@ -0,0 +1,123 @@
+package net.sacredlabyrinth.phaed.simpleclans;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How each pair of clans relates in combat, worked out once per pair, so the damage and death listeners don't check
+ * the same clan, ally, rival, war and verified status of both clans on every hit.
+ * <p>
+ * The relations are dropped when any clan's allies, rivals, wars or verification change, see {@link #invalidate()}.
+ * </p>
+ */
+public final class CombatRelations {
+
+    private volatile Map<Long, Relation> relations = new ConcurrentHashMap<>();
+
+    /**
+     * @param attacker the attacker's clan
+     * @param victim   the victim's clan
+     * @return the relation of the attacker's clan with the victim's, or null if any of them is not in a clan
+     */
+    @Nullable
+    public Relation get(@Nullable Clan attacker, @Nullable Clan victim) {
+        if (attacker == null || victim == null) {
+            return null;
+        }
+        long key = ((long) ClanRelations.intern(attacker.getTag()) << 32) | ClanRelations.intern(victim.getTag());
+        Map<Long, Relation> current = relations;
+        Relation relation = current.get(key);
+        // a clan with the same tag may have replaced one of them
+        if (relation == null || relation.attacker != attacker || relation.victim != victim) {
+            relation = new Relation(attacker, victim);
+            current.put(key, relation);
+        }
+        return relation;
+    }
+
+    /**
+     * Drops every relation, they are worked out again when needed
+     */
+    public void invalidate() {
+        // a relation being worked out with the old values goes to the old map
+        relations = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * The relation of the attacker's clan with the victim's
+     */
+    public static final class Relation {
+        private final Clan attacker;
+        private final Clan victim;
+        private final boolean sameClan;
+        private final boolean ally;
+        private final boolean allyOfVictim;
+        private final boolean rival;
+        private final boolean warring;
+        private final boolean verified;
+
+        private Relation(@NotNull Clan attacker, @NotNull Clan victim) {
+            this.attacker = attacker;
+            this.victim = victim;
+            sameClan = attacker.equals(victim);
+            ally = attacker.isAlly(victim.getTag());
+            allyOfVictim = victim.isAlly(attacker.getTag());
+            rival = attacker.isRival(victim.getTag());
+            warring = attacker.isWarring(victim);
+            verified = attacker.isVerified() && victim.isVerified();
+        }
+
+        public boolean isSameClan() {
+            return sameClan;
+        }
+
+        /**
+         * @return whether the attacker's clan is allied with the victim's
+         */
+        public boolean isAlly() {
+            return ally;
+        }
+
+        /**
+         * @return whether the victim's clan is allied with the attacker's
+         */
+        public boolean isAllyOfVictim() {
+            return allyOfVictim;
+        }
+
+        public boolean isRival() {
+            return rival;
+        }
+
+        public boolean isWarring() {
+            return warring;
+        }
+
+        /**
+         * @return whether both clans are verified
+         */
+        public boolean isVerified() {
+            return verified;
+        }
+
+        /**
+         * @return the type of a kill of the victim by the attacker
+         */
+        @NotNull
+        public Kill.Type getKillType() {
+            if (!verified) {
+                return Kill.Type.CIVILIAN;
+            }
+            if (rival) {
+                return Kill.Type.RIVAL;
+            }
+            if (ally || sameClan) {
+                return Kill.Type.ALLY;
+            }
+            return Kill.Type.NEUTRAL;
+        }
+    }
+}
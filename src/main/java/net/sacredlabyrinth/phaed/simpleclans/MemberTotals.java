@@ -0,0 +1,164 @@
+package net.sacredlabyrinth.phaed.simpleclans;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Running sums of a clan's member counters, so the clan totals are read without iterating the members.
+ * <p>
+ * Each member's last counted values are kept, so refreshing a member only applies the difference. The weighted
+ * kills depend on the kill weights, they are counted again when the weights are reloaded. They are summed in
+ * millionths, so adding and removing fractional weights doesn't accumulate rounding errors.
+ * </p>
+ */
+final class MemberTotals {
+
+    private static final double SCALE = 1_000_000D;
+
+    private final Map<ClanPlayer, Counters> counted = new IdentityHashMap<>();
+    private double[] weights;
+    private int rivalKills;
+    private int neutralKills;
+    private int civilianKills;
+    private int allyKills;
+    private int deaths;
+    private long weightedKills;
+    private int flooredWeightedKills;
+
+    MemberTotals(@NotNull Iterable<ClanPlayer> members) {
+        weights = currentWeights();
+        for (ClanPlayer cp : members) {
+            add(cp);
+        }
+    }
+
+    synchronized void add(@NotNull ClanPlayer cp) {
+        cp.addMemberTotals(this);
+        refresh(cp);
+    }
+
+    synchronized void remove(@NotNull ClanPlayer cp) {
+        cp.removeMemberTotals(this);
+        Counters old = counted.remove(cp);
+        if (old != null) {
+            apply(old, -1);
+        }
+    }
+
+    /**
+     * Counts the member's current values, does nothing if it is not counted
+     */
+    synchronized void update(@NotNull ClanPlayer cp) {
+        if (counted.containsKey(cp)) {
+            refresh(cp);
+        }
+    }
+
+    synchronized int getRivalKills() {
+        return rivalKills;
+    }
+
+    synchronized int getNeutralKills() {
+        return neutralKills;
+    }
+
+    synchronized int getCivilianKills() {
+        return civilianKills;
+    }
+
+    synchronized int getAllyKills() {
+        return allyKills;
+    }
+
+    synchronized int getDeaths() {
+        return deaths;
+    }
+
+    /**
+     * @return the sum of the members' weighted kills
+     */
+    synchronized double getWeightedKills() {
+        checkWeights();
+        return weightedKills / SCALE;
+    }
+
+    /**
+     * @return the sum of the members' weighted kills, each rounded down
+     */
+    synchronized int getFlooredWeightedKills() {
+        checkWeights();
+        return flooredWeightedKills;
+    }
+
+    private void refresh(ClanPlayer cp) {
+        Counters current = new Counters(cp, weights);
+        Counters old = counted.put(cp, current);
+        if (old != null) {
+            apply(old, -1);
+        }
+        apply(current, 1);
+    }
+
+    private void apply(Counters counters, int sign) {
+        rivalKills += sign * counters.rivalKills;
+        neutralKills += sign * counters.neutralKills;
+        civilianKills += sign * counters.civilianKills;
+        allyKills += sign * counters.allyKills;
+        deaths += sign * counters.deaths;
+        weightedKills += sign * counters.weightedKills;
+        flooredWeightedKills += sign * counters.flooredWeightedKills;
+    }
+
+    /**
+     * Counts the weighted kills again if the weights were reloaded, the reload replaces the array
+     */
+    private void checkWeights() {
+        double[] current = currentWeights();
+        if (weights == current) {
+            return;
+        }
+        weights = current;
+        weightedKills = 0;
+        flooredWeightedKills = 0;
+        for (Counters counters : counted.values()) {
+            counters.weigh(weights);
+            weightedKills += counters.weightedKills;
+            flooredWeightedKills += counters.flooredWeightedKills;
+        }
+    }
+
+    private static double[] currentWeights() {
+        return SimpleClans.getInstance().getSettingsManager().getKillWeights();
+    }
+
+    private static final class Counters {
+        private final int rivalKills;
+        private final int neutralKills;
+        private final int civilianKills;
+        private final int allyKills;
+        private final int deaths;
+        private long weightedKills;
+        private int flooredWeightedKills;
+
+        private Counters(ClanPlayer cp, double[] weights) {
+            rivalKills = cp.getRivalKills();
+            neutralKills = cp.getNeutralKills();
+            civilianKills = cp.getCivilianKills();
+            allyKills = cp.getAllyKills();
+            deaths = cp.getDeaths();
+            weigh(weights);
+        }
+
+        /**
+         * Same as {@link ClanPlayer#getWeightedKills()}
+         */
+        private void weigh(double[] weights) {
+            double kills = Math.max(rivalKills * weights[0] + neutralKills * weights[1] + allyKills * weights[3] +
+                    civilianKills * weights[2], 0);
+            weightedKills = Math.round(kills * SCALE);
+            flooredWeightedKills = (int) kills;
+        }
+    }
+}
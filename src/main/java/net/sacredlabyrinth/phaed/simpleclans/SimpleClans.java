@@ -4,6 +4,7 @@ import co.aikar.commands.BukkitCommandIssuer;
 import net.sacredlabyrinth.phaed.simpleclans.commands.SCCommandManager;
 import net.sacredlabyrinth.phaed.simpleclans.hooks.papi.SimpleClansExpansion;
 import net.sacredlabyrinth.phaed.simpleclans.language.LanguageResource;
+import net.sacredlabyrinth.phaed.simpleclans.language.MessageCatalog;
 import net.sacredlabyrinth.phaed.simpleclans.listeners.*;
 import net.sacredlabyrinth.phaed.simpleclans.loggers.BankLogger;
 import net.sacredlabyrinth.phaed.simpleclans.loggers.CSVBankLogger;
@@ -37,7 +38,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField.*;
 import static org.bukkit.Bukkit.getPluginManager;
@@ -51,6 +51,7 @@ public class SimpleClans extends JavaPlugin {
 
     private static SimpleClans instance;
     private static LanguageResource languageResource;
+    private static MessageCatalog messageCatalog;
     private static final Logger logger = Logger.getLogger("SimpleClans");
     private SCCommandManager commandManager;
     private ClanManager clanManager;
@@ -64,7 +65,6 @@ public class SimpleClans extends JavaPlugin {
     private ProxyManager proxyManager;
     private RedisManager redisManager;
     private boolean hasUUID;
-    private static final Pattern ACF_PLACEHOLDER_PATTERN = Pattern.compile("\\{(?<key>[a-zA-Z]+?)}");
 
     private BankLogger bankLogger;
     private TagValidator tagValidator;
@@ -108,6 +108,7 @@ public class SimpleClans extends JavaPlugin {
         new BbMigration(settingsManager);
         new ChatFormatMigration(settingsManager);
         languageResource = new LanguageResource();
+        messageCatalog = new MessageCatalog(languageResource);
         this.hasUUID = UUIDMigration.canReturnUUID();
 
         permissionsManager = new PermissionsManager();
@@ -201,14 +202,23 @@ public class SimpleClans extends JavaPlugin {
         if (getSettingsManager().is(PERFORMANCE_HEAD_CACHING)) {
             new PlayerHeadCacheTask(this).start();
         }
+        if (getSettingsManager().is(PERFORMANCE_KILL_RETENTION_ENABLE)) {
+            new KillRetentionTask(this).start();
+        }
     }
 
     @Override
     public void onDisable() {
+        // Drain pending writes while their notifications can still reach other servers
+        getStorageManager().drainWrites();
+
         // Shutdown Redis first
         if (redisManager != null && redisManager.isInitialized()) {
             redisManager.shutdown();
         }
+        if (chatManager != null) {
+            chatManager.shutdown();
+        }
         
         if (getSettingsManager().is(PERFORMANCE_SAVE_PERIODICALLY)) {
             getStorageManager().saveModified();
@@ -246,10 +256,9 @@ public class SimpleClans extends JavaPlugin {
             proxyManager = new RedisProxyManager(this, redisManager);
             getLogger().info("Using Redis for cross-server communication");
             
-            // Request online players sync from other servers and publish our own players
+            // Register our own players and read the players of the other servers
             getServer().getScheduler().runTaskLater(this, () -> {
-                redisManager.requestPlayersSync();
-                redisManager.publishLocalPlayersSync();
+                redisManager.startPresence();
             }, 20L); // Wait 1 second for everything to initialize
         } else {
             // Fall back to BungeeCord
@@ -348,16 +357,7 @@ public class SimpleClans extends JavaPlugin {
             locale = clanPlayer.getLocale();
         }
 
-        String lang = languageResource.getLang(key, locale);
-        if (lang == null) {
-            return null;
-        }
-        String message = ChatUtils.parseColors(lang);
-        // contains acf placeholders like {commandprefix}
-        if (ACF_PLACEHOLDER_PATTERN.matcher(message).find()) {
-            return message;
-        }
-        return MessageFormat.format(message, arguments);
+        return messageCatalog.format(key, locale, arguments);
     }
 
     @Nullable
@@ -407,6 +407,10 @@ public class SimpleClans extends JavaPlugin {
         return teleportManager;
     }
 
+    public MessageCatalog getMessageCatalog() {
+        return messageCatalog;
+    }
+
     @Deprecated
     public List<String> getMessages() {
         return messages;
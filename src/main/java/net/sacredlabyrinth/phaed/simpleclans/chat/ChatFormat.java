@@ -0,0 +1,98 @@
+package net.sacredlabyrinth.phaed.simpleclans.chat;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A chat format split once into its literal parts and placeholders, so formatting a message takes a single pass
+ * instead of one {@link String#replace} per placeholder.
+ * <p>
+ * A placeholder is a name between two {@code %} without spaces, e.g. {@code %player%}. Placeholders that are not
+ * resolved are kept as they are, so they can be parsed later, e.g. by PlaceholderAPI.
+ * </p>
+ */
+public final class ChatFormat {
+
+    private final String[] literals;
+    private final String[] placeholders;
+    private final List<String> names;
+    private final int length;
+
+    private ChatFormat(String[] literals, String[] placeholders) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+        this.names = Collections.unmodifiableList(Arrays.asList(placeholders));
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.length = length;
+    }
+
+    @NotNull
+    public static ChatFormat compile(@NotNull String format) {
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < format.length()) {
+            int start = format.indexOf('%', i);
+            if (start == -1) {
+                break;
+            }
+            int end = format.indexOf('%', start + 1);
+            if (end == -1) {
+                break;
+            }
+            String name = format.substring(start + 1, end);
+            if (name.isEmpty() || name.indexOf(' ') != -1) {
+                // not a placeholder, the second % may start one
+                literal.append(format, i, end);
+                i = end;
+                continue;
+            }
+            literal.append(format, i, start);
+            literals.add(literal.toString());
+            literal.setLength(0);
+            placeholders.add(name);
+            i = end + 1;
+        }
+        literal.append(format, i, format.length());
+        literals.add(literal.toString());
+        return new ChatFormat(literals.toArray(new String[0]), placeholders.toArray(new String[0]));
+    }
+
+    /**
+     * @return the names of the placeholders, in the order they appear
+     */
+    @NotNull
+    public List<String> getPlaceholders() {
+        return names;
+    }
+
+    /**
+     * Formats a message
+     *
+     * @param resolver gives the value of a placeholder, or null to keep it
+     * @return the formatted message
+     */
+    @NotNull
+    public String apply(@NotNull Function<String, String> resolver) {
+        StringBuilder out = new StringBuilder(length + 16 * placeholders.length);
+        for (int i = 0; i < placeholders.length; i++) {
+            out.append(literals[i]);
+            String value = resolver.apply(placeholders[i]);
+            if (value != null) {
+                out.append(value);
+            } else {
+                out.append('%').append(placeholders[i]).append('%');
+            }
+        }
+        return out.append(literals[placeholders.length]).toString();
+    }
+}
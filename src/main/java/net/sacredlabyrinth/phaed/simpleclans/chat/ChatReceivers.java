@@ -0,0 +1,148 @@
+package net.sacredlabyrinth.phaed.simpleclans.chat;
+
+import net.sacredlabyrinth.phaed.simpleclans.Clan;
+import net.sacredlabyrinth.phaed.simpleclans.ClanPlayer;
+import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
+import net.sacredlabyrinth.phaed.simpleclans.events.DisbandClanEvent;
+import net.sacredlabyrinth.phaed.simpleclans.events.PlayerJoinedClanEvent;
+import net.sacredlabyrinth.phaed.simpleclans.events.PlayerKickedClanEvent;
+import net.sacredlabyrinth.phaed.simpleclans.events.TagChangeEvent;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the online members of each clan, so chat doesn't look up every member, and every ally's member, for each
+ * message.
+ * <p>
+ * The members of a clan are looked up the first time they are needed, then kept up to date as they join and quit.
+ * Membership changes drop the clan's members, to be looked up again. The lists may be read from any thread.
+ * </p>
+ */
+public class ChatReceivers implements Listener {
+
+    private final SimpleClans plugin;
+    // clan tag -> online members, replaced rather than changed
+    private final Map<String, List<ClanPlayer>> online = new ConcurrentHashMap<>();
+
+    public ChatReceivers(@NotNull SimpleClans plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * @return the online members of the clan
+     */
+    @NotNull
+    public List<ClanPlayer> getOnlineMembers(@NotNull Clan clan) {
+        List<ClanPlayer> members = online.computeIfAbsent(clan.getTag(), tag -> lookUp(clan));
+        for (ClanPlayer member : members) {
+            // left the clan without an event, e.g. reloaded from the database
+            if (member.getClan() != clan) {
+                members = lookUp(clan);
+                online.put(clan.getTag(), members);
+                break;
+            }
+        }
+        return members;
+    }
+
+    /**
+     * @return the online members of the clan's allies
+     */
+    @NotNull
+    public List<ClanPlayer> getOnlineAllyMembers(@NotNull Clan clan) {
+        List<ClanPlayer> members = new ArrayList<>();
+        for (String tag : clan.getAllies()) {
+            Clan ally = plugin.getClanManager().getClan(tag);
+            if (ally != null) {
+                members.addAll(getOnlineMembers(ally));
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Drops the online members of a clan, they are looked up again when needed
+     *
+     * @param tag the clan tag, or null for every clan
+     */
+    public void invalidate(@Nullable String tag) {
+        if (tag == null) {
+            online.clear();
+        } else {
+            online.remove(tag);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        ClanPlayer cp = plugin.getClanManager().getClanPlayer(event.getPlayer().getUniqueId());
+        Clan clan = cp != null ? cp.getClan() : null;
+        if (clan != null) {
+            online.computeIfPresent(clan.getTag(), (tag, members) -> {
+                if (containsSame(members, cp)) {
+                    return members;
+                }
+                List<ClanPlayer> updated = new ArrayList<>(members);
+                updated.add(cp);
+                return Collections.unmodifiableList(updated);
+            });
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        ClanPlayer cp = plugin.getClanManager().getClanPlayer(event.getPlayer().getUniqueId());
+        Clan clan = cp != null ? cp.getClan() : null;
+        if (clan != null) {
+            online.computeIfPresent(clan.getTag(), (tag, members) -> {
+                List<ClanPlayer> updated = new ArrayList<>(members);
+                updated.removeIf(member -> member == cp);
+                return Collections.unmodifiableList(updated);
+            });
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onMemberJoin(PlayerJoinedClanEvent event) {
+        invalidate(event.getClan().getTag());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onMemberKick(PlayerKickedClanEvent event) {
+        invalidate(event.getClan().getTag());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDisband(DisbandClanEvent event) {
+        invalidate(event.getClan().getTag());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onTagChange(TagChangeEvent event) {
+        invalidate(null);
+    }
+
+    private List<ClanPlayer> lookUp(Clan clan) {
+        return Collections.unmodifiableList(clan.getOnlineMembers());
+    }
+
+    private static boolean containsSame(List<ClanPlayer> members, ClanPlayer cp) {
+        for (ClanPlayer member : members) {
+            if (member == cp) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
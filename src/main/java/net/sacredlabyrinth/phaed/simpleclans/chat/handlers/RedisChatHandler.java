@@ -15,8 +15,8 @@ import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.Con
 /**
  * Chat handler that sends clan/ally chat messages to other servers via Redis.
  * <p>
- * This handler publishes chat messages to the Redis Pub/Sub channel,
- * allowing all connected servers to receive and display the message
+ * This handler publishes chat messages to the Redis Pub/Sub channel of the sender's clan,
+ * allowing the servers with members of the clan or its allies to receive and display the message
  * to their local clan members.
  * </p>
  * 
@@ -59,7 +59,7 @@ public class RedisChatHandler implements ChatHandler {
         json.addProperty("spyMessage", formattedSpyMessage);
         
         // Publish to Redis
-        redisManager.publish(RedisManager.CHANNEL_CHAT, GSON.toJson(json));
+        redisManager.publish(redisManager.getChatChannel(sender.getClan().getTag()), GSON.toJson(json));
     }
 
     @Override
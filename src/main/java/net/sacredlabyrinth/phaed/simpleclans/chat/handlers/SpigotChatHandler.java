@@ -6,10 +6,12 @@ import net.sacredlabyrinth.phaed.simpleclans.chat.ChatHandler;
 import net.sacredlabyrinth.phaed.simpleclans.chat.SCMessage;
 import net.sacredlabyrinth.phaed.simpleclans.events.ChatEvent;
 import net.sacredlabyrinth.phaed.simpleclans.utils.ChatUtils;
+import org.bukkit.Bukkit;
 import org.bukkit.scheduler.BukkitRunnable;
 
+import java.util.Map;
+
 import static net.sacredlabyrinth.phaed.simpleclans.chat.SCMessage.Source.*;
-import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField;
 import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField.PERFORMANCE_USE_BUNGEECORD;
 import static org.bukkit.Bukkit.getPluginManager;
 
@@ -19,7 +21,7 @@ public class SpigotChatHandler implements ChatHandler {
     @Override
     public void sendMessage(SCMessage message) {
         /*
-          TODO: Make it async, change Type to Channel in 3.0
+          TODO: Change Type to Channel in 3.0
         */
         new BukkitRunnable() {
             @Override
@@ -33,17 +35,22 @@ public class SpigotChatHandler implements ChatHandler {
                 }
                 message.setContent(stripColorsAndFormatsPerPermission(message.getSender(),event.getMessage()));
 
-                ConfigField configField = ConfigField.valueOf(String.format("%sCHAT_FORMAT",
-                        message.getSource() == DISCORD ? "DISCORD" : message.getChannel()));
-
-                String format = settingsManager.getString(configField);
-                String formattedMessage = chatManager.parseChatFormat(format, message, event.getPlaceholders());
+                String format = chatManager.getChatFormat(message, false);
+                String content = message.getContent();
+                // The clan, the player and PlaceholderAPI are read here, only applying the values runs off the main
+                // thread
+                Map<String, String> values = chatManager.resolvePlaceholders(format, message, event.getPlaceholders());
 
-                plugin.getLogger().info(ChatUtils.stripColors(formattedMessage));
+                chatManager.runAsync(() -> {
+                    String formattedMessage = chatManager.applyChatFormat(format, values, content);
+                    Bukkit.getScheduler().runTask(plugin, () -> {
+                        plugin.getLogger().info(ChatUtils.stripColors(formattedMessage));
 
-                for (ClanPlayer cp : message.getReceivers()) {
-                    ChatBlock.sendMessage(cp, formattedMessage);
-                }
+                        for (ClanPlayer cp : message.getReceivers()) {
+                            ChatBlock.sendMessage(cp, formattedMessage);
+                        }
+                    });
+                });
             }
         }.runTask(plugin);
     }
@@ -14,7 +14,6 @@ import java.util.stream.Collectors;
 
 import static net.sacredlabyrinth.phaed.simpleclans.chat.SCMessage.Source;
 import static net.sacredlabyrinth.phaed.simpleclans.chat.SCMessage.Source.*;
-import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField;
 import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField.PERFORMANCE_USE_BUNGEECORD;
 
 /**
@@ -24,9 +23,7 @@ public class SpyChatHandler implements ChatHandler {
 
     @Override
     public void sendMessage(SCMessage message) {
-        ConfigField formatField = ConfigField.valueOf(String.format("%sCHAT_SPYFORMAT",
-                message.getSource() == DISCORD ? "DISCORD" : message.getChannel()));
-        String format = settingsManager.getString(formatField);
+        String format = chatManager.getChatFormat(message, true);
         message.setContent(ChatUtils.stripColors(message.getContent()));
         String formattedMessage = chatManager.parseChatFormat(format, message);
 
@@ -74,6 +74,8 @@ public class BankCommand extends BaseCommand {
                 // Reload clan balance from database to ensure consistency
                 SimpleClans.getInstance().getStorageManager().reloadClan(clan);
                 processWithdrawInternal(player, clan, amount);
+                // The next holder reloads the balance, so it must be saved before the lock is released
+                SimpleClans.getInstance().getStorageManager().flushClan(clan, redis.getConfig().getLockBankTimeout());
             }
         } else {
             // No Redis, proceed without lock
@@ -150,6 +152,8 @@ public class BankCommand extends BaseCommand {
                 // Reload clan balance from database to ensure consistency
                 SimpleClans.getInstance().getStorageManager().reloadClan(clan);
                 processDepositInternal(player, clan, amount);
+                // The next holder reloads the balance, so it must be saved before the lock is released
+                SimpleClans.getInstance().getStorageManager().flushClan(clan, redis.getConfig().getLockBankTimeout());
             }
         } else {
             // No Redis, proceed without lock
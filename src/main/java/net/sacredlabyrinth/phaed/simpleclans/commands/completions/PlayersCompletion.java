@@ -11,6 +11,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -33,6 +34,7 @@ public class PlayersCompletion extends AbstractSyncCompletion {
     @Override
     public Collection<String> getCompletions(BukkitCommandCompletionContext c) throws InvalidCommandArgument {
         Collection<String> onlinePlayers = new ArrayList<>();
+        Set<String> names = new HashSet<>();
 
         // Add local online players
         for (Player onlinePlayer : Bukkit.getOnlinePlayers()) {
@@ -41,6 +43,7 @@ public class PlayersCompletion extends AbstractSyncCompletion {
                 continue;
             }
             onlinePlayers.add(onlinePlayer.getName());
+            names.add(onlinePlayer.getName().toLowerCase());
         }
         
         // Add players from other servers (via Redis)
@@ -49,7 +52,7 @@ public class PlayersCompletion extends AbstractSyncCompletion {
             Set<String> globalPlayers = redisProxy.getGlobalOnlinePlayers();
             for (String playerName : globalPlayers) {
                 // Name already has correct capitalization from Redis
-                if (!containsIgnoreCase(onlinePlayers, playerName)) {
+                if (names.add(playerName.toLowerCase())) {
                     onlinePlayers.add(playerName);
                 }
             }
@@ -57,13 +60,4 @@ public class PlayersCompletion extends AbstractSyncCompletion {
         
         return onlinePlayers;
     }
-    
-    private boolean containsIgnoreCase(Collection<String> collection, String name) {
-        for (String s : collection) {
-            if (s.equalsIgnoreCase(name)) {
-                return true;
-            }
-        }
-        return false;
-    }
 }
@@ -119,6 +119,7 @@ public class StaffCommands extends BaseCommand {
         plugin.reloadConfig();
         LanguageResource.clearCache();
         settings.loadAndSave();
+        plugin.getMessageCatalog().reload();
         storage.importFromDatabase();
         permissions.loadPermissions();
 
@@ -290,6 +291,7 @@ public class StaffCommands extends BaseCommand {
                     return;
                 }
                 clan.disband(sender, true, true);
+                SimpleClans.getInstance().getStorageManager().flushClan(clan, redis.getConfig().getLockDisbandTimeout());
             }
         } else {
             // No Redis, proceed without lock
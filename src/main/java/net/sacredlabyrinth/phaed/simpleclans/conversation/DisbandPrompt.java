@@ -26,6 +26,7 @@ public class DisbandPrompt extends ConfirmationPrompt {
                     return new MessagePromptImpl(RED + lang("disband.operation.in.progress", sender));
                 }
                 clan.disband(sender.toPlayer(), true, false);
+                SimpleClans.getInstance().getStorageManager().flushClan(clan, redis.getConfig().getLockDisbandTimeout());
             }
         } else {
             // No Redis, proceed without lock
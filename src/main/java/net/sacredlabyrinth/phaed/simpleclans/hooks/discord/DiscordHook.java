@@ -9,9 +9,8 @@ import github.scarsz.discordsrv.dependencies.commons.lang3.StringUtils;
 import github.scarsz.discordsrv.dependencies.emoji.EmojiParser;
 import github.scarsz.discordsrv.dependencies.jda.api.Permission;
 import github.scarsz.discordsrv.dependencies.jda.api.entities.*;
-import github.scarsz.discordsrv.dependencies.jda.api.exceptions.ErrorResponseException;
-import github.scarsz.discordsrv.dependencies.jda.api.requests.Response;
 import github.scarsz.discordsrv.dependencies.jda.api.requests.RestAction;
+import github.scarsz.discordsrv.dependencies.jda.api.requests.restaction.ChannelAction;
 import github.scarsz.discordsrv.dependencies.kyori.adventure.text.Component;
 import github.scarsz.discordsrv.objects.managers.AccountLinkManager;
 import github.scarsz.discordsrv.util.DiscordUtil;
@@ -24,6 +23,7 @@ import net.sacredlabyrinth.phaed.simpleclans.hooks.discord.exceptions.*;
 import net.sacredlabyrinth.phaed.simpleclans.managers.ChatManager;
 import net.sacredlabyrinth.phaed.simpleclans.managers.ClanManager;
 import net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager;
+import org.bukkit.Bukkit;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.jetbrains.annotations.NotNull;
@@ -32,7 +32,9 @@ import org.jetbrains.annotations.Nullable;
 import java.awt.*;
 import java.util.List;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -65,6 +67,10 @@ import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.Con
  * </ul>
  * <p>
  * Currently, works with clan chat only.
+ * <p>
+ * The changes are sent to Discord asynchronously, through a {@link DiscordSyncQueue}, and the channels are looked up
+ * in an index of the clan channels, so the server thread doesn't wait for Discord.
+ * </p>
  */
 public class DiscordHook implements Listener {
 
@@ -78,6 +84,17 @@ public class DiscordHook implements Listener {
     private final List<String> textCategories;
     private final List<String> clanTags;
     private final List<String> whitelist;
+    private final DiscordSyncQueue queue;
+    // clan tag -> channel id, of the channels in SimpleClans' categories
+    private final Map<String, String> channelIds = new ConcurrentHashMap<>();
+    // clans whose channel is being created
+    private final Set<String> creating = ConcurrentHashMap.newKeySet();
+    // category id -> channels being created in it
+    private final Map<String, Integer> reserved = new HashMap<>();
+    @Nullable
+    private CompletableFuture<Category> newCategory;
+    @Nullable
+    private CompletableFuture<Role> leaderRoleCreation;
 
     public DiscordHook(SimpleClans plugin) {
         this.plugin = plugin;
@@ -86,17 +103,19 @@ public class DiscordHook implements Listener {
         clanManager = plugin.getClanManager();
 
         textCategories = settingsManager.getStringList(DISCORDCHAT_TEXT_CATEGORY_IDS).stream().
-                filter(this::categoryExists).collect(Collectors.toList());
+                filter(this::categoryExists).collect(Collectors.toCollection(CopyOnWriteArrayList::new));
         whitelist = settingsManager.getStringList(DISCORDCHAT_TEXT_WHITELIST);
 
         clanTags = clanManager.getClans().stream().map(Clan::getTag).collect(Collectors.toList());
+        queue = new DiscordSyncQueue(plugin.getLogger());
 
         setupDiscord();
     }
 
     @Subscribe
     public void onMessageReceived(DiscordGuildMessageReceivedEvent event) {
-        Optional<TextChannel> channel = getCachedChannel(event.getChannel().getName());
+        Optional<TextChannel> channel = getCachedChannel(event.getChannel().getName()).
+                filter(textChannel -> textChannel.getIdLong() == event.getChannel().getIdLong());
 
         if (channel.isPresent()) {
             Message eventMessage = event.getMessage();
@@ -256,6 +275,7 @@ public class DiscordHook implements Listener {
     protected void setupDiscord() {
         Map<String, TextChannel> discordTagChannels = getChannels().stream().
                 collect(Collectors.toMap(TextChannel::getName, textChannel -> textChannel));
+        discordTagChannels.forEach((tag, channel) -> channelIds.put(tag, channel.getId()));
         SimpleClans.debug("DiscordTagChannels before clearing: " + String.join(",", discordTagChannels.keySet()));
 
         clearChannels(discordTagChannels);
@@ -268,27 +288,27 @@ public class DiscordHook implements Listener {
         SimpleClans.debug("ClanTags after creating: " + String.join(",", clanTags));
     }
 
+    /**
+     * Drops the changes not sent to Discord yet
+     */
+    public void shutdown() {
+        queue.shutdown();
+    }
+
     @NotNull
     public Guild getGuild() {
         return DiscordSRV.getPlugin().getMainGuild();
     }
 
     /**
-     * @return A leader role from guild, otherwise creates one.
+     * @return The leader role from guild, or null if it was not created yet
      */
-    @NotNull
+    @Nullable
     public Role getLeaderRole() {
         Role role = getGuild().getRoleById(settingsManager.getString(DISCORDCHAT_LEADER_ID));
 
         if (role == null || !role.getName().equals(settingsManager.getString(DISCORDCHAT_LEADER_ROLE))) {
-            role = getGuild().createRole().
-                    setName(settingsManager.getString(DISCORDCHAT_LEADER_ROLE)).
-                    setColor(getLeaderColor()).
-                    setMentionable(true).
-                    complete();
-
-            settingsManager.set(DISCORDCHAT_LEADER_ID, role.getId());
-            settingsManager.save();
+            return null;
         }
 
         return role;
@@ -316,40 +336,37 @@ public class DiscordHook implements Listener {
     /**
      * Creates a new SimpleClans {@link Category}
      *
-     * @return Category or null, if reached the limit
+     * @return the category being created, or null if reached the limit
      */
     @Nullable
-    public Category createCategory() {
+    public CompletableFuture<Category> createCategory() {
         if (getGuild().getChannels().size() >= MAX_CHANNELS_PER_GUILD) {
             return null;
         }
 
         String categoryName = settingsManager.getString(DISCORDCHAT_TEXT_CATEGORY_FORMAT);
-        Category category = null;
-        try {
-            category = getGuild().createCategory(categoryName).
-                    addRolePermissionOverride(
-                            getGuild().getPublicRole().getIdLong(),
-                            Collections.emptyList(),
-                            Collections.singletonList(VIEW_CHANNEL)).
-                    addMemberPermissionOverride(getGuild().getSelfMember().getIdLong(),
-                            Arrays.asList(VIEW_CHANNEL, MANAGE_CHANNEL),
-                            Collections.emptyList()).
-                    submit().get();
-
-            textCategories.add(category.getId());
-            settingsManager.set(DISCORDCHAT_TEXT_CATEGORY_IDS, textCategories);
-            settingsManager.save();
-        } catch (InterruptedException | ExecutionException ex) {
-            plugin.getLogger().log(Level.SEVERE, "Error while trying to create {0} category: " +
-                    ex.getMessage(), categoryName);
-        }
-
-        return category;
+        return getGuild().createCategory(categoryName).
+                addRolePermissionOverride(
+                        getGuild().getPublicRole().getIdLong(),
+                        Collections.emptyList(),
+                        Collections.singletonList(VIEW_CHANNEL)).
+                addMemberPermissionOverride(getGuild().getSelfMember().getIdLong(),
+                        Arrays.asList(VIEW_CHANNEL, MANAGE_CHANNEL),
+                        Collections.emptyList()).
+                submit().
+                whenComplete((category, ex) -> {
+                    if (ex != null) {
+                        plugin.getLogger().log(Level.SEVERE, "Error while trying to create {0} category: " +
+                                ex.getMessage(), categoryName);
+                        return;
+                    }
+                    textCategories.add(category.getId());
+                    saveCategories();
+                });
     }
 
     /**
-     * Creates a new {@link TextChannel} in available SimpleClans' categories,
+     * Queues the creation of a new {@link TextChannel} in available SimpleClans' categories,
      * otherwise creates one.
      *
      * <p>Sets positive {@link Permission#VIEW_CHANNEL} permission to all linked clan members.</p>
@@ -364,34 +381,40 @@ public class DiscordHook implements Listener {
     public void createChannel(@NotNull String clanTag)
             throws InvalidChannelException, CategoriesLimitException, ChannelsLimitException, ChannelExistsException {
         validateChannel(clanTag);
-        Map<ClanPlayer, Member> discordClanPlayers = getDiscordPlayers(clanManager.getClan(clanTag));
+        Map<ClanPlayer, Member> discordClanPlayers = getDiscordPlayers(Objects.requireNonNull(clanManager.getClan(clanTag)));
 
-        if (getChannels().size() >= settingsManager.getInt(DISCORDCHAT_TEXT_LIMIT)) {
+        if (channelIds.size() + creating.size() >= settingsManager.getInt(DISCORDCHAT_TEXT_LIMIT)) {
             throw new ChannelsLimitException("Discord reached the channels limit", "discord.reached.channels.limit");
         }
 
-        Category availableCategory = getCachedCategories().stream().
-                filter(category -> category.getTextChannels().size() < MAX_CHANNELS_PER_CATEGORY).
-                findAny().orElseGet(this::createCategory);
-
-        if (availableCategory == null) {
+        if (!hasAvailableCategory() && getGuild().getChannels().size() >= MAX_CHANNELS_PER_GUILD) {
             throw new CategoriesLimitException("Discord reached the categories limit", "discord.reached.category.limit");
         }
 
-        try {
-            availableCategory.createTextChannel(clanTag).complete();
+        creating.add(clanTag);
+        List<Member> members = new ArrayList<>(discordClanPlayers.values());
+        queue.submit("channel:create:" + clanTag, () -> reserveCategory().thenCompose(category -> {
             SimpleClans.debug(String.format("[%s] Creating a discord text channel for %s clan", Thread.currentThread().getId(), clanTag));
-        } catch (ErrorResponseException ex) {
-            Response response = ex.getResponse();
-            plugin.getLogger().warning(String.format("Could not create a channel for clan %s, error %d - %s",
-                    clanTag, response.code, response.message));
-            return;
-        }
+            ChannelAction<TextChannel> action = category.createTextChannel(clanTag);
+            // The linked members are allowed in the same request
+            for (Member member : members) {
+                action = action.addMemberPermissionOverride(member.getIdLong(),
+                        Collections.singletonList(VIEW_CHANNEL), Collections.emptyList());
+            }
+            return action.submit().whenComplete((channel, ex) -> release(category));
+        }).whenComplete((channel, ex) -> {
+            boolean wanted = creating.remove(clanTag);
+            if (channel == null) {
+                return;
+            }
+            channelIds.put(clanTag, channel.getId());
+            if (!wanted) {
+                // the clan was disbanded meanwhile
+                deleteChannel(clanTag);
+            }
+        }));
 
         for (Map.Entry<ClanPlayer, Member> entry : discordClanPlayers.entrySet()) {
-            // The map is formed from clan#getMembers (so the clan exists)
-            //noinspection ConstantConditions
-            updateViewPermission(entry.getValue(), entry.getKey().getClan(), ADD);
             updateLeaderRole(entry.getValue(), entry.getKey(), ADD);
         }
     }
@@ -404,7 +427,11 @@ public class DiscordHook implements Listener {
      * @see #getCachedCategories() retreive categories.
      */
     public Optional<TextChannel> getCachedChannel(@NotNull String channelName) {
-        return getCachedChannels().stream().filter(textChannel -> textChannel.getName().equals(channelName)).findFirst();
+        String channelId = channelIds.get(channelName);
+        if (channelId == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(getGuild().getTextChannelById(channelId));
     }
 
     /**
@@ -419,12 +446,12 @@ public class DiscordHook implements Listener {
     }
 
     /**
-     * Checks if a channel with the specified clan tag exists
+     * Checks if a channel with the specified clan tag exists, or is being created
      *
      * @see #categoryExists(String)
      */
     public boolean channelExists(String clanTag) {
-        return getChannel(clanTag).isPresent();
+        return channelIds.containsKey(clanTag) || creating.contains(clanTag);
     }
 
     /**
@@ -435,44 +462,34 @@ public class DiscordHook implements Listener {
      * @see #getCachedChannel(String) retreive the <b>cached</b> channel.
      */
     public Optional<TextChannel> getChannel(@NotNull String channelName) {
-        return getChannels().stream().filter(textChannel -> textChannel.getName().equals(channelName)).findAny();
+        return getCachedChannel(channelName);
     }
 
     /**
-     * Deletes channel from SimpleClans categories.
-     * If there are no channels, removes category as well.
+     * Queues the deletion of a channel from SimpleClans categories.
+     * If there are no channels left, removes category as well.
      *
      * @param channelName the channel name
-     * @return true, if channel was deleted and false if not.
+     * @return true, if channel will be deleted and false if not.
      */
     @SuppressWarnings("UnusedReturnValue")
     public boolean deleteChannel(@NotNull String channelName) {
-        boolean deleted = false;
-
-        if (channelExists(channelName)) {
-            for (Category category : getCachedCategories()) {
-                if (!category.getTextChannels().isEmpty()) {
-                    for (TextChannel textChannel : category.getTextChannels()) {
-                        if (textChannel.getName().equals(channelName)) {
-                            textChannel.delete().complete();
-                            deleted = true;
-                            break;
-                        }
-                    }
-
-                    if (category.getTextChannels().isEmpty()) {
-                        textCategories.remove(category.getId());
-                        settingsManager.set(DISCORDCHAT_TEXT_CATEGORY_IDS, textCategories);
-                        settingsManager.save();
-                        category.delete().complete();
-                    }
-
-                    return deleted;
-                }
-            }
+        // a channel still being created is deleted when it's ready
+        creating.remove(channelName);
+        String channelId = channelIds.remove(channelName);
+        if (channelId == null) {
+            return false;
         }
 
-        return false;
+        queue.submit("channel:delete:" + channelId, () -> {
+            TextChannel textChannel = getGuild().getTextChannelById(channelId);
+            if (textChannel == null) {
+                return null;
+            }
+            Category category = textChannel.getParent();
+            return textChannel.delete().submit().thenCompose(deleted -> deleteIfEmpty(category, textChannel));
+        });
+        return true;
     }
 
     /**
@@ -545,15 +562,13 @@ public class DiscordHook implements Listener {
 
     private void resetPermissions(Map<String, TextChannel> discordClanChannels) {
         for (Map.Entry<String, TextChannel> channelEntry : discordClanChannels.entrySet()) {
-            TextChannel channel = channelEntry.getValue();
             Clan clan = clanManager.getClan(channelEntry.getKey());
-            Map<ClanPlayer, Member> discordPlayers = getDiscordPlayers(clan);
-
-            for (Member member : discordPlayers.values()) {
-                PermissionOverride override = channel.getPermissionOverride(member);
-                if (override != null) {
-                    override.delete().queue(afterSuccess -> updateViewPermission(member, channel, ADD));
-                }
+            if (clan == null) {
+                continue;
+            }
+            // Replaces the permissions of each linked member with the view permission
+            for (Member member : getDiscordPlayers(clan).values()) {
+                updateViewPermission(member, clan, ADD);
             }
         }
     }
@@ -630,37 +645,138 @@ public class DiscordHook implements Listener {
     }
 
     private void updateLeaderRole(@NotNull Member member, @NotNull ClanPlayer clanPlayer, DiscordAction action) {
+        // A later change of the same member replaces this one, if it's still waiting
+        String key = "leader:" + member.getId();
         if (action == ADD && clanPlayer.isLeader()) {
-            getGuild().addRoleToMember(member, getLeaderRole()).queue();
+            queue.submit(key, () -> leaderRole().thenCompose(role -> getGuild().addRoleToMember(member, role).submit()));
             SimpleClans.debug(String.format("Added leader role to %s (%s) discord member", member.getNickname(), member.getId()));
         } else {
-            getGuild().removeRoleFromMember(member, getLeaderRole()).queue();
+            queue.submit(key, () -> {
+                Role role = getLeaderRole();
+                return role != null ? getGuild().removeRoleFromMember(member, role).submit() : null;
+            });
             SimpleClans.debug(String.format("Revoked leader role from %s (%s) discord member", member.getNickname(), member.getId()));
         }
     }
 
-    private void updateViewPermission(@Nullable Member member, @NotNull GuildChannel channel, @NotNull DiscordAction action) {
-        if (member == null) {
-            return;
-        }
-
+    private void updateViewPermission(@NotNull Member member, @NotNull Clan clan, @NotNull DiscordAction action) {
+        String tag = clan.getTag();
+        // A later change of the same member replaces this one, if it's still waiting
+        queue.submit("view:" + tag + ":" + member.getId(), () -> {
+            // the channel is looked up when the change is sent, it may have been created or deleted meanwhile
+            TextChannel channel = getCachedChannel(tag).orElse(null);
+            if (channel == null) {
+                return null;
+            }
+            if (action == ADD) {
+                return channel.upsertPermissionOverride(member).
+                        setPermissions(Collections.singletonList(VIEW_CHANNEL), Collections.emptyList()).submit();
+            }
+            PermissionOverride override = channel.getPermissionOverride(member);
+            return override != null ? override.delete().submit() : null;
+        });
         if (action == ADD) {
-            channel.upsertPermissionOverride(member).
-                    setPermissions(Collections.singletonList(VIEW_CHANNEL), Collections.emptyList()).queue();
             SimpleClans.debug(String.format("Added view permission to %s (%s) discord member", member.getNickname(), member.getId()));
         } else {
-            channel.getManager().removePermissionOverride(member).queue();
             SimpleClans.debug(String.format("Revoked view permission from %s (%s) discord member", member.getNickname(), member.getId()));
         }
     }
 
-    private void updateViewPermission(@NotNull Member member, @NotNull Clan clan, DiscordAction action) {
-        String tag = clan.getTag();
-        Optional<TextChannel> channel = getChannel(tag);
-        if (channel.isPresent()) {
-            TextChannel textChannel = channel.get();
-            updateViewPermission(member, textChannel, action);
+    /**
+     * @return the leader role, created once if it doesn't exist
+     */
+    private synchronized CompletableFuture<Role> leaderRole() {
+        Role role = getLeaderRole();
+        if (role != null) {
+            return CompletableFuture.completedFuture(role);
+        }
+        if (leaderRoleCreation != null) {
+            Role created = leaderRoleCreation.getNow(null);
+            // still being created, or created but the id is not saved yet
+            if (!leaderRoleCreation.isDone() || (created != null && getGuild().getRoleById(created.getIdLong()) != null)) {
+                return leaderRoleCreation;
+            }
+        }
+        leaderRoleCreation = getGuild().createRole().
+                setName(settingsManager.getString(DISCORDCHAT_LEADER_ROLE)).
+                setColor(getLeaderColor()).
+                setMentionable(true).
+                submit().
+                whenComplete((created, ex) -> {
+                    if (created != null) {
+                        Bukkit.getScheduler().runTask(plugin, () -> {
+                            settingsManager.set(DISCORDCHAT_LEADER_ID, created.getId());
+                            settingsManager.save();
+                        });
+                    }
+                });
+        return leaderRoleCreation;
+    }
+
+    private synchronized boolean hasAvailableCategory() {
+        for (Category category : getCachedCategories()) {
+            if (category.getTextChannels().size() + reserved.getOrDefault(category.getId(), 0) < MAX_CHANNELS_PER_CATEGORY) {
+                return true;
+            }
         }
+        return false;
+    }
+
+    /**
+     * Reserves room for a channel in a category, creating one if all of them are full
+     */
+    private synchronized CompletableFuture<Category> reserveCategory() {
+        for (Category category : getCachedCategories()) {
+            if (category.getTextChannels().size() + reserved.getOrDefault(category.getId(), 0) < MAX_CHANNELS_PER_CATEGORY) {
+                reserve(category);
+                return CompletableFuture.completedFuture(category);
+            }
+        }
+        // the channels waiting for a new category share it
+        if (newCategory == null || newCategory.isDone()) {
+            newCategory = createCategory();
+            if (newCategory == null) {
+                CompletableFuture<Category> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new CategoriesLimitException("Discord reached the categories limit",
+                        "discord.reached.category.limit"));
+                return failed;
+            }
+        }
+        return newCategory.thenApply(category -> {
+            reserve(category);
+            return category;
+        });
+    }
+
+    private synchronized void reserve(Category category) {
+        reserved.merge(category.getId(), 1, Integer::sum);
+    }
+
+    private synchronized void release(Category category) {
+        reserved.computeIfPresent(category.getId(), (id, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private CompletableFuture<?> deleteIfEmpty(@Nullable Category category, @NotNull TextChannel deleted) {
+        if (category == null || !textCategories.contains(category.getId())) {
+            return CompletableFuture.completedFuture(null);
+        }
+        synchronized (this) {
+            // the cache may still have the deleted channel
+            boolean empty = category.getTextChannels().stream().allMatch(channel -> channel.getIdLong() == deleted.getIdLong());
+            if (!empty || reserved.containsKey(category.getId())) {
+                return CompletableFuture.completedFuture(null);
+            }
+            textCategories.remove(category.getId());
+        }
+        saveCategories();
+        return category.delete().submit();
+    }
+
+    private void saveCategories() {
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            settingsManager.set(DISCORDCHAT_TEXT_CATEGORY_IDS, new ArrayList<>(textCategories));
+            settingsManager.save();
+        });
     }
 
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
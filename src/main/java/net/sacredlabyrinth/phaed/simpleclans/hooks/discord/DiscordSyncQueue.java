@@ -0,0 +1,134 @@
+package net.sacredlabyrinth.phaed.simpleclans.hooks.discord;
+
+import github.scarsz.discordsrv.dependencies.jda.api.exceptions.ErrorResponseException;
+import github.scarsz.discordsrv.dependencies.jda.api.requests.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Sends the changes to Discord without blocking the server thread.
+ * <p>
+ * Every operation has a key, e.g. a clan channel or a member in a channel. An operation replaces the waiting operation
+ * of the same key, so only the last change is sent, and the operations of a key run one at a time. At most
+ * {@link #MAX_IN_FLIGHT} operations wait for Discord at once, the others wait here instead of piling up in JDA's rate
+ * limiter, so a mass disband doesn't delay everything else for minutes.
+ * </p>
+ */
+class DiscordSyncQueue {
+
+    private static final int MAX_IN_FLIGHT = 4;
+
+    private final Logger logger;
+    // key -> operation, in submission order
+    private final Map<String, Supplier<CompletableFuture<?>>> pending = new LinkedHashMap<>();
+    private final Set<String> running = new HashSet<>();
+    private boolean shutdown;
+
+    DiscordSyncQueue(@NotNull Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Queues an operation, replacing the waiting operation of the same key
+     *
+     * @param operation starts the requests, called when the operation runs, returns null if there is nothing to do
+     */
+    void submit(@NotNull String key, @NotNull Supplier<CompletableFuture<?>> operation) {
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            pending.put(key, operation);
+        }
+        drain();
+    }
+
+    /**
+     * @return how many operations are waiting or running
+     */
+    synchronized int size() {
+        return pending.size() + running.size();
+    }
+
+    /**
+     * Drops the waiting operations
+     */
+    synchronized void shutdown() {
+        shutdown = true;
+        pending.clear();
+    }
+
+    private void drain() {
+        while (true) {
+            String key;
+            Supplier<CompletableFuture<?>> operation;
+            synchronized (this) {
+                Map.Entry<String, Supplier<CompletableFuture<?>>> next = next();
+                if (next == null) {
+                    return;
+                }
+                key = next.getKey();
+                operation = next.getValue();
+            }
+
+            CompletableFuture<?> future;
+            try {
+                future = operation.get();
+            } catch (Exception ex) {
+                future = null;
+                log(key, ex);
+            }
+            if (future == null || future.isDone()) {
+                if (future != null) {
+                    future.whenComplete((result, ex) -> log(key, ex));
+                }
+                synchronized (this) {
+                    running.remove(key);
+                }
+                continue;
+            }
+            future.whenComplete((result, ex) -> {
+                log(key, ex);
+                synchronized (this) {
+                    running.remove(key);
+                }
+                drain();
+            });
+        }
+    }
+
+    @Nullable
+    private Map.Entry<String, Supplier<CompletableFuture<?>>> next() {
+        if (running.size() >= MAX_IN_FLIGHT) {
+            return null;
+        }
+        Iterator<Map.Entry<String, Supplier<CompletableFuture<?>>>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Supplier<CompletableFuture<?>>> entry = iterator.next();
+            if (running.add(entry.getKey())) {
+                iterator.remove();
+                return new AbstractMap.SimpleImmutableEntry<>(entry);
+            }
+        }
+        return null;
+    }
+
+    private void log(String key, @Nullable Throwable ex) {
+        if (ex instanceof CompletionException && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        if (ex instanceof ErrorResponseException) {
+            Response response = ((ErrorResponseException) ex).getResponse();
+            logger.warning(String.format("Discord operation %s failed, error %d - %s", key, response.code,
+                    response.message));
+        } else if (ex != null) {
+            logger.warning(String.format("Discord operation %s failed: %s", key, ex.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package net.sacredlabyrinth.phaed.simpleclans.hooks.papi;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A {@link Placeholder} resolved once, when the expansion is registered: its resolver, parsed config and
+ * a direct accessor for the annotated method
+ */
+final class CompiledPlaceholder {
+
+    private final Method method;
+    private final PlaceholderResolver resolver;
+    private final Map<String, String> config;
+    private final Function<Object, Object> accessor;
+    private final boolean playerDependent;
+
+    CompiledPlaceholder(@NotNull Method method, @NotNull PlaceholderResolver resolver, @NotNull String config) {
+        this.method = method;
+        this.resolver = resolver;
+        this.config = Collections.unmodifiableMap(parseConfig(config));
+        this.accessor = createAccessor(method);
+        this.playerDependent = resolver.dependsOnPlayer(this.config);
+    }
+
+    @NotNull
+    Method getMethod() {
+        return method;
+    }
+
+    @NotNull
+    PlaceholderResolver getResolver() {
+        return resolver;
+    }
+
+    @NotNull
+    Map<String, String> getConfig() {
+        return config;
+    }
+
+    /**
+     * @return whether the value depends on the player requesting it
+     */
+    boolean isPlayerDependent() {
+        return playerDependent;
+    }
+
+    /**
+     * @return a function calling the method, or null if one could not be generated
+     */
+    @Nullable
+    Function<Object, Object> getAccessor() {
+        return accessor;
+    }
+
+    @NotNull
+    private static Map<String, String> parseConfig(@NotNull String config) {
+        HashMap<String, String> map = new HashMap<>();
+        String[] elements = config.split(",");
+        for (String element : elements) {
+            String[] keyAndValue = element.split(":");
+            map.put(keyAndValue[0], keyAndValue.length > 1 ? keyAndValue[1] : null);
+        }
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private static Function<Object, Object> createAccessor(@NotNull Method method) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle handle = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class), handle, handle.type().wrap());
+            return (Function<Object, Object>) site.getTarget().invokeExact();
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package net.sacredlabyrinth.phaed.simpleclans.hooks.papi;
+
+import net.sacredlabyrinth.phaed.simpleclans.managers.ClanManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Memoizes resolved placeholder values per subject ({@link net.sacredlabyrinth.phaed.simpleclans.Clan} or
+ * {@link net.sacredlabyrinth.phaed.simpleclans.ClanPlayer}), so viewers refreshing the same placeholder within the
+ * time to live share one computation. A subject's values are dropped as soon as it changes.
+ */
+final class PlaceholderCache implements ClanManager.ChangeListener {
+
+    private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    private final long ttlNanos;
+    private final Map<Subject, Map<String, Entry>> values = new ConcurrentHashMap<>();
+    private volatile long lastSweep = System.nanoTime();
+
+    PlaceholderCache(long ttlMillis) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * @param subject     the placeholder subject
+     * @param placeholder the placeholder
+     * @param viewer      the viewer, only for values that depend on who is viewing them
+     * @param resolver    resolves the value when it is not cached
+     * @return the value
+     */
+    @NotNull
+    String get(@NotNull Object subject, @NotNull String placeholder, @Nullable UUID viewer,
+               @NotNull Supplier<String> resolver) {
+        long now = System.nanoTime();
+        sweep(now);
+        String key = viewer == null ? placeholder : placeholder + '\0' + viewer;
+        Map<String, Entry> subjectValues = values.computeIfAbsent(new Subject(subject), s -> new ConcurrentHashMap<>());
+        Entry entry = subjectValues.get(key);
+        if (entry != null && now - entry.created < ttlNanos) {
+            return entry.value;
+        }
+        String value = resolver.get();
+        subjectValues.put(key, new Entry(value, now));
+        return value;
+    }
+
+    @Override
+    public void onChange(@NotNull Object subject) {
+        values.remove(new Subject(subject));
+    }
+
+    /**
+     * Drops the values of subjects that were not requested recently, e.g. deleted clans
+     */
+    private void sweep(long now) {
+        if (now - lastSweep < SWEEP_INTERVAL) {
+            return;
+        }
+        lastSweep = now;
+        values.values().removeIf(subjectValues -> {
+            subjectValues.values().removeIf(entry -> now - entry.created >= ttlNanos);
+            return subjectValues.isEmpty();
+        });
+    }
+
+    private static final class Entry {
+        private final String value;
+        private final long created;
+
+        private Entry(String value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+
+    /**
+     * Identity key, clans and players are equal by tag and name, which can change
+     */
+    private static final class Subject {
+        private final Object subject;
+
+        private Subject(Object subject) {
+            this.subject = subject;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Subject && ((Subject) o).subject == subject;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(subject);
+        }
+    }
+}
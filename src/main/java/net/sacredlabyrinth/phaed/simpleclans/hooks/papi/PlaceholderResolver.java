@@ -10,10 +10,14 @@ import org.jetbrains.annotations.Nullable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.logging.Level;
 
 public abstract class PlaceholderResolver {
 
+    private static final Map<Method, Function<Object, Object>> ACCESSORS = new ConcurrentHashMap<>();
+
     protected final SimpleClans plugin;
 
     public PlaceholderResolver(@NotNull SimpleClans plugin) {
@@ -38,13 +42,33 @@ public abstract class PlaceholderResolver {
     public abstract String resolve(@Nullable OfflinePlayer player, @NotNull Object object, @NotNull Method method,
                                    @NotNull String placeholder, @NotNull Map<String, String> config);
 
+    /**
+     * Whether the resolved value depends on the player requesting it, so it can't be shared with other players
+     *
+     * @param config configuration for the resolver
+     */
+    public boolean dependsOnPlayer(@NotNull Map<String, String> config) {
+        return false;
+    }
+
     @Nullable
     protected Object invoke(@NotNull Object object, @NotNull Method method, @NotNull String placeholder) {
+        Function<Object, Object> accessor = ACCESSORS.get(method);
         try {
+            if (accessor != null) {
+                return accessor.apply(object);
+            }
             return method.invoke(object);
-        } catch (IllegalAccessException | InvocationTargetException e) {
+        } catch (IllegalAccessException | InvocationTargetException | RuntimeException e) {
             plugin.getLogger().log(Level.SEVERE, String.format("Error parsing placeholder %s", placeholder), e);
         }
         return "";
     }
+
+    /**
+     * Makes {@link #invoke(Object, Method, String)} call the method through the accessor instead of reflection
+     */
+    static void registerAccessor(@NotNull Method method, @NotNull Function<Object, Object> accessor) {
+        ACCESSORS.put(method, accessor);
+    }
 }
@@ -5,6 +5,7 @@ import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import me.clip.placeholderapi.expansion.Relational;
 import net.sacredlabyrinth.phaed.simpleclans.Clan;
 import net.sacredlabyrinth.phaed.simpleclans.ClanPlayer;
+import net.sacredlabyrinth.phaed.simpleclans.CombatRelations.Relation;
 import net.sacredlabyrinth.phaed.simpleclans.Helper;
 import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
 import net.sacredlabyrinth.phaed.simpleclans.managers.ClanManager;
@@ -16,16 +17,20 @@ import org.jetbrains.annotations.Nullable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
-import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField.PERFORMANCE_PLACEHOLDER_CACHE_TTL;
+
 public class SimpleClansExpansion extends PlaceholderExpansion implements Relational, Configurable {
 
     private static final Pattern TOP_CLANS_PATTERN = Pattern.compile("(?<strip>^topclans_(?<position>\\d+)_)clan_");
     private static final Pattern TOP_PLAYERS_PATTERN = Pattern.compile("(?<strip>^topplayers_(?<position>\\d+)_)");
     private static final Map<String, PlaceholderResolver> RESOLVERS = new HashMap<>();
+    private final Map<String, CompiledPlaceholder> playerPlaceholders = new HashMap<>();
+    private final Map<String, CompiledPlaceholder> clanPlaceholders = new HashMap<>();
+    private final PlaceholderCache cache;
     private List<String> placeholders;
     private final SimpleClans plugin;
     private final ClanManager clanManager;
@@ -34,6 +39,13 @@ public class SimpleClansExpansion extends PlaceholderExpansion implements Relati
         this.plugin = plugin;
         clanManager = plugin.getClanManager();
         registerResolvers();
+        compilePlaceholders(ClanPlayer.class, playerPlaceholders);
+        compilePlaceholders(Clan.class, clanPlaceholders);
+        int ttl = plugin.getSettingsManager().getInt(PERFORMANCE_PLACEHOLDER_CACHE_TTL);
+        cache = ttl > 0 ? new PlaceholderCache(ttl) : null;
+        if (cache != null) {
+            clanManager.addChangeListener(cache);
+        }
     }
 
     @Override
@@ -96,17 +108,22 @@ public class SimpleClansExpansion extends PlaceholderExpansion implements Relati
         }
         if (params.equalsIgnoreCase("color")) {
             ClanPlayer cp1 = clanManager.getClanPlayer(player1);
-            if (cp1 == null) {
+            ClanPlayer cp2 = clanManager.getClanPlayer(player2);
+            if (cp1 == null || cp2 == null) {
                 return "";
             }
-            //noinspection ConstantConditions -- getClanPlayer != null == getClan() != null
-            if (cp1.getClan().isMember(player2)) {
+            // how player2's clan sees player1's
+            Relation relation = clanManager.getCombatRelations().get(cp2.getClan(), cp1.getClan());
+            if (relation == null) {
+                return "";
+            }
+            if (relation.isSameClan()) {
                 return getString("color.same_clan", null);
             }
-            if (cp1.isRival(player2)) {
+            if (relation.isRival()) {
                 return getString("color.rival", null);
             }
-            if (cp1.isAlly(player2)) {
+            if (relation.isAlly()) {
                 return getString("color.ally", null);
             }
             return "";
@@ -127,31 +144,18 @@ public class SimpleClansExpansion extends PlaceholderExpansion implements Relati
         Matcher matcher = TOP_CLANS_PATTERN.matcher(params);
         if (matcher.find()) {
             int position = Integer.parseInt(matcher.group("position"));
-            clan = getFromPosition(clanManager.getClans(), position, clanManager::sortClansByKDR);
+            clan = clanManager.getClanKdrRanking().get(position);
             params = params.replace(matcher.group("strip"), "");
         }
         matcher = TOP_PLAYERS_PATTERN.matcher(params);
         if (matcher.find()) {
             int position = Integer.parseInt(matcher.group("position"));
-            cp = getFromPosition(clanManager.getAllClanPlayers(), position, clanManager::sortClanPlayersByKDR);
+            cp = clanManager.getPlayerKdrRanking().get(position);
             params = params.replace(matcher.group("strip"), "");
         }
         return getValue(player, cp, clan, params);
     }
 
-    @Nullable
-    private <T> T getFromPosition(List<T> list, int position, Consumer<List<T>> sort) {
-        if (isPositionValid(list, position)) {
-            sort.accept(list);
-            return list.get(position - 1);
-        }
-        return null;
-    }
-
-    private boolean isPositionValid(@NotNull Collection<?> collection, int position) {
-        return position >= 1 && position <= collection.size();
-    }
-
     @NotNull
     private String getValue(@Nullable OfflinePlayer player, @Nullable ClanPlayer cp, @Nullable Clan clan,
                             @NotNull String placeholder) {
@@ -165,38 +169,41 @@ public class SimpleClansExpansion extends PlaceholderExpansion implements Relati
     @NotNull
     private String getValue(@Nullable OfflinePlayer player, @Nullable Object object, @NotNull String placeholder) {
         if (object != null) {
-            for (Method declaredMethod : object.getClass().getDeclaredMethods()) {
-                Placeholder[] annotations = declaredMethod.getAnnotationsByType(Placeholder.class);
-                for (Placeholder p : annotations) {
-                    if (p.value().equals(placeholder)) {
-                        return resolve(player, object, declaredMethod, p.resolver(), placeholder, p.config());
-                    }
+            CompiledPlaceholder compiled = (object instanceof Clan ? clanPlaceholders : playerPlaceholders).get(placeholder);
+            if (compiled != null) {
+                if (cache == null) {
+                    return resolve(player, object, compiled, placeholder);
                 }
+                UUID viewer = player != null && compiled.isPlayerDependent() ? player.getUniqueId() : null;
+                String p = placeholder;
+                return cache.get(object, placeholder, viewer, () -> resolve(player, object, compiled, p));
             }
             plugin.getLogger().warning(String.format("Placeholder %s not found", placeholder));
         }
         return "";
     }
 
-    private String resolve(@Nullable OfflinePlayer player, @NotNull Object object, @NotNull Method method,
-                           @NotNull String resolverId, @NotNull String placeholder, @NotNull String config) {
-        PlaceholderResolver resolver = RESOLVERS.get(resolverId);
-        if (resolver != null) {
-            return resolver.resolve(player, object, method, placeholder, getConfigMap(config));
-        }
-        plugin.getLogger().warning(String.format("Resolver %s for %s not found", resolverId, placeholder));
-        return "";
+    @NotNull
+    private String resolve(@Nullable OfflinePlayer player, @NotNull Object object, @NotNull CompiledPlaceholder compiled,
+                           @NotNull String placeholder) {
+        return compiled.getResolver().resolve(player, object, compiled.getMethod(), placeholder, compiled.getConfig());
     }
 
-    @NotNull
-    private Map<String, String> getConfigMap(@NotNull String config) {
-        HashMap<String, String> map = new HashMap<>();
-        String[] elements = config.split(",");
-        for (String element : elements) {
-            String[] keyAndValue = element.split(":");
-            map.put(keyAndValue[0], keyAndValue.length > 1 ? keyAndValue[1] : null);
+    private void compilePlaceholders(Class<?> clazz, Map<String, CompiledPlaceholder> table) {
+        for (Method method : clazz.getDeclaredMethods()) {
+            for (Placeholder p : method.getAnnotationsByType(Placeholder.class)) {
+                PlaceholderResolver resolver = RESOLVERS.get(p.resolver());
+                if (resolver == null) {
+                    plugin.getLogger().warning(String.format("Resolver %s for %s not found", p.resolver(), p.value()));
+                    continue;
+                }
+                CompiledPlaceholder compiled = new CompiledPlaceholder(method, resolver, p.config());
+                if (compiled.getAccessor() != null) {
+                    PlaceholderResolver.registerAccessor(method, compiled.getAccessor());
+                }
+                table.putIfAbsent(p.value(), compiled);
+            }
         }
-        return map;
     }
 
     private void registerResolvers() {
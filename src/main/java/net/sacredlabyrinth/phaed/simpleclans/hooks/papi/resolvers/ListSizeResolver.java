@@ -23,6 +23,11 @@ public class ListSizeResolver extends PlaceholderResolver {
         return "list_size";
     }
 
+    @Override
+    public boolean dependsOnPlayer(@NotNull Map<String, String> config) {
+        return config.containsKey("filter_vanished");
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public @NotNull String resolve(@Nullable OfflinePlayer player, @NotNull Object object, @NotNull Method method,
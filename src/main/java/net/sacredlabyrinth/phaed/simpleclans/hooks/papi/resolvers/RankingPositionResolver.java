@@ -9,7 +9,6 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.Method;
-import java.util.List;
 import java.util.Map;
 
 public class RankingPositionResolver extends PlaceholderResolver {
@@ -26,18 +25,19 @@ public class RankingPositionResolver extends PlaceholderResolver {
     public @NotNull String resolve(@Nullable OfflinePlayer player, @NotNull Object object, @NotNull Method method,
                                    @NotNull String placeholder, @NotNull Map<String, String> config) {
         if (object instanceof Clan) {
-            List<Clan> clans = plugin.getClanManager().getClans();
-            plugin.getClanManager().sortClansByKDR(clans);
-
-            return String.valueOf(clans.indexOf(object) + 1);
+            return format(plugin.getClanManager().getClanKdrRanking().getPosition((Clan) object));
         }
         if (object instanceof ClanPlayer) {
-            List<ClanPlayer> clanPlayers = plugin.getClanManager().getAllClanPlayers();
-            plugin.getClanManager().sortClanPlayersByKDR(clanPlayers);
-
-            return String.valueOf(clanPlayers.indexOf(object) + 1);
+            return format(plugin.getClanManager().getPlayerKdrRanking().getPosition((ClanPlayer) object));
         }
 
         return "";
     }
+
+    /**
+     * Unranked elements are shown as 0
+     */
+    private String format(int position) {
+        return String.valueOf(Math.max(position, 0));
+    }
 }
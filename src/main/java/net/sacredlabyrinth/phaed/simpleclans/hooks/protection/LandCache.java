@@ -0,0 +1,128 @@
+package net.sacredlabyrinth.phaed.simpleclans.hooks.protection;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Caches the lands found at each block, grouped by chunk, so repeated events on the same blocks don't query the
+ * protection providers again.
+ * <p>
+ * Lands created or changed without going through an event the plugin listens to are only seen when the cached
+ * lookup expires.
+ * </p>
+ */
+public final class LandCache {
+
+    private static final Land[] NO_LANDS = new Land[0];
+    private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    private final long ttlNanos;
+    private final Map<UUID, Map<Long, Chunk>> worlds = new HashMap<>();
+    private Chunk lastChunk;
+    private long lastSweep = System.nanoTime();
+
+    /**
+     * @param ttlMillis how long a lookup is reused
+     */
+    public LandCache(long ttlMillis) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * @param location the location
+     * @param lookup   finds the lands at a location when they are not cached
+     * @return the lands at the location, the array must not be modified
+     */
+    @NotNull
+    public synchronized Land[] get(@NotNull Location location, @NotNull Function<Location, Land[]> lookup) {
+        World world = location.getWorld();
+        if (world == null || ttlNanos <= 0) {
+            return lookup.apply(location);
+        }
+        long now = System.nanoTime();
+        sweep(now);
+        int x = location.getBlockX();
+        int y = location.getBlockY();
+        int z = location.getBlockZ();
+        Chunk chunk = getChunk(world.getUID(), x >> 4, z >> 4);
+        int block = (y << 8) | ((z & 15) << 4) | (x & 15);
+        Entry entry = chunk.blocks.get(block);
+        if (entry == null || now - entry.created >= ttlNanos) {
+            Land[] lands = lookup.apply(location);
+            entry = new Entry(lands.length == 0 ? NO_LANDS : lands, now);
+            chunk.blocks.put(block, entry);
+        }
+        return entry.lands;
+    }
+
+    /**
+     * Forgets all lookups, e.g. when a land is created or a provider is registered
+     */
+    public synchronized void clear() {
+        worlds.clear();
+        lastChunk = null;
+    }
+
+    private Chunk getChunk(UUID world, int chunkX, int chunkZ) {
+        Chunk chunk = lastChunk;
+        if (chunk != null && chunk.x == chunkX && chunk.z == chunkZ && chunk.world.equals(world)) {
+            return chunk;
+        }
+        chunk = worlds.computeIfAbsent(world, w -> new HashMap<>())
+                .computeIfAbsent(key(chunkX, chunkZ), k -> new Chunk(world, chunkX, chunkZ));
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    /**
+     * Drops the expired lookups, so chunks nobody builds in anymore don't stay in memory
+     */
+    private void sweep(long now) {
+        if (now - lastSweep < SWEEP_INTERVAL) {
+            return;
+        }
+        lastSweep = now;
+        for (Map<Long, Chunk> chunks : worlds.values()) {
+            chunks.values().removeIf(chunk -> {
+                chunk.blocks.values().removeIf(entry -> now - entry.created >= ttlNanos);
+                return chunk.blocks.isEmpty();
+            });
+        }
+        worlds.values().removeIf(Map::isEmpty);
+        lastChunk = null;
+    }
+
+    private static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    private static final class Chunk {
+        private final UUID world;
+        private final int x;
+        private final int z;
+        private final Map<Integer, Entry> blocks = new HashMap<>();
+
+        private Chunk(UUID world, int x, int z) {
+            this.world = world;
+            this.x = x;
+            this.z = z;
+        }
+    }
+
+    private static final class Entry {
+        private final Land[] lands;
+        private final long created;
+
+        private Entry(Land[] lands, long created) {
+            this.lands = lands;
+            this.created = created;
+        }
+    }
+}
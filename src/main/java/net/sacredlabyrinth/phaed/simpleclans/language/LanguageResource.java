@@ -54,6 +54,20 @@ public class LanguageResource {
         return null;
     }
 
+    /**
+     * @return the keys of the bundled messages
+     */
+    @NotNull
+    public Set<String> getKeys() {
+        try {
+            ResourceBundle bundle = ResourceBundle.getBundle("messages", Locale.ROOT,
+                    SimpleClans.getInstance().getClass().getClassLoader(), new ResourceControl(defaultLocale));
+            return bundle.keySet();
+        } catch (MissingResourceException ex) {
+            return Collections.emptySet();
+        }
+    }
+
     @Nullable
     private String getACFMinecraftLang(@NotNull String key, @NotNull Locale locale) {
         try {
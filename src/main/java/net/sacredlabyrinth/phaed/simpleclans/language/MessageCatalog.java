@@ -0,0 +1,156 @@
+package net.sacredlabyrinth.phaed.simpleclans.language;
+
+import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
+import net.sacredlabyrinth.phaed.simpleclans.utils.ChatUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.text.MessageFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The messages of every locale, colored and parsed once, so looking up a message doesn't read the resource bundles,
+ * translate the colors and parse the {@link MessageFormat} pattern every time.
+ * <p>
+ * The messages of the available locales are loaded when the catalog is created, other locales the first time they are
+ * needed. {@link #reload()} loads every message again and replaces them all at once, so a lookup never sees messages
+ * from both before and after a reload.
+ * </p>
+ */
+public class MessageCatalog {
+
+    private static final Pattern ACF_PLACEHOLDER_PATTERN = Pattern.compile("\\{(?<key>[a-zA-Z]+?)}");
+    private static final Template MISSING = new Template("", null);
+
+    private final LanguageResource resource;
+    private volatile Catalog catalog;
+
+    public MessageCatalog(@NotNull LanguageResource resource) {
+        this.resource = resource;
+        reload();
+    }
+
+    /**
+     * Loads the messages again, e.g. after the language files were changed
+     */
+    public void reload() {
+        Catalog loaded = new Catalog(resource.getKeys());
+        Set<Locale> locales = new LinkedHashSet<>(LanguageResource.getAvailableLocales());
+        locales.add(SimpleClans.getInstance().getSettingsManager().getLanguage());
+        for (Locale locale : locales) {
+            loaded.getTable(locale);
+        }
+        catalog = loaded;
+    }
+
+    /**
+     * @return the formatted message, or null if the key doesn't exist
+     */
+    @Nullable
+    public String format(@NotNull String key, @NotNull Locale locale, Object... arguments) {
+        Template template = catalog.getTable(locale).get(key);
+        return template != null ? template.format(arguments) : null;
+    }
+
+    private final class Catalog {
+        private final Set<String> keys;
+        private final Map<Locale, Table> tables = new ConcurrentHashMap<>();
+
+        private Catalog(Set<String> keys) {
+            this.keys = keys;
+        }
+
+        private Table getTable(Locale locale) {
+            Table table = tables.get(locale);
+            if (table == null) {
+                table = tables.computeIfAbsent(locale, l -> new Table(l, keys));
+            }
+            return table;
+        }
+    }
+
+    private final class Table {
+        private final Locale locale;
+        private final Map<String, Template> templates;
+        // keys not in the bundled messages, e.g. ACF's, looked up when first needed
+        private final Map<String, Template> others = new ConcurrentHashMap<>();
+
+        private Table(Locale locale, Set<String> keys) {
+            this.locale = locale;
+            Map<String, Template> templates = new HashMap<>(keys.size() * 4 / 3 + 1);
+            for (String key : keys) {
+                Template template = load(key);
+                if (template != MISSING) {
+                    templates.put(key, template);
+                }
+            }
+            this.templates = Collections.unmodifiableMap(templates);
+        }
+
+        @Nullable
+        private Template get(String key) {
+            Template template = templates.get(key);
+            if (template == null) {
+                template = others.computeIfAbsent(key, this::load);
+            }
+            return template != MISSING ? template : null;
+        }
+
+        private Template load(String key) {
+            String lang = resource.getLang(key, locale);
+            if (lang == null) {
+                return MISSING;
+            }
+            try {
+                return Template.compile(ChatUtils.parseColors(lang));
+            } catch (IllegalArgumentException ex) {
+                SimpleClans.getInstance().getLogger().warning(String.format("Invalid message %s (%s): %s", key,
+                        locale, ex.getMessage()));
+                return new Template(ChatUtils.parseColors(lang), null);
+            }
+        }
+    }
+
+    /**
+     * A colored message, with its parsed pattern if it has arguments
+     */
+    static final class Template {
+        private final String text;
+        @Nullable
+        private final MessageFormat format;
+
+        private Template(String text, @Nullable MessageFormat format) {
+            this.text = text;
+            this.format = format;
+        }
+
+        /**
+         * @param message the colored message
+         * @throws IllegalArgumentException if the pattern is invalid
+         */
+        static Template compile(@NotNull String message) {
+            // contains acf placeholders like {commandprefix}
+            if (ACF_PLACEHOLDER_PATTERN.matcher(message).find()) {
+                return new Template(message, null);
+            }
+            MessageFormat format = new MessageFormat(message);
+            if (format.getFormatsByArgumentIndex().length == 0) {
+                // no arguments, the message is always the same
+                return new Template(format.format(new Object[0]), null);
+            }
+            return new Template(message, format);
+        }
+
+        String format(Object... arguments) {
+            if (format == null) {
+                return text;
+            }
+            // MessageFormat is not thread-safe
+            synchronized (format) {
+                return format.format(arguments);
+            }
+        }
+    }
+}
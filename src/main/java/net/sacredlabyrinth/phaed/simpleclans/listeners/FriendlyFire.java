@@ -3,6 +3,7 @@ package net.sacredlabyrinth.phaed.simpleclans.listeners;
 import net.sacredlabyrinth.phaed.simpleclans.ChatBlock;
 import net.sacredlabyrinth.phaed.simpleclans.Clan;
 import net.sacredlabyrinth.phaed.simpleclans.ClanPlayer;
+import net.sacredlabyrinth.phaed.simpleclans.CombatRelations.Relation;
 import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
@@ -44,15 +45,17 @@ public class FriendlyFire extends SCListener {
         Clan victimClan = vcp == null ? null : vcp.getClan();
         Clan attackerClan = plugin.getClanManager().getClanByPlayerUniqueId(attacker.getUniqueId());
 
-        process(event, attacker, vcp, victimClan, attackerClan);
+        Relation relation = plugin.getClanManager().getCombatRelations().get(attackerClan, victimClan);
+
+        process(event, attacker, vcp, victimClan, relation);
     }
 
     private void process(EntityDamageEvent event,
                          Player attacker,
                          @Nullable ClanPlayer vcp,
                          @Nullable Clan victimClan,
-                         @Nullable Clan attackerClan) {
-        if (vcp == null || victimClan == null || attackerClan == null) {
+                         @Nullable Relation relation) {
+        if (vcp == null || victimClan == null || relation == null) {
             if (plugin.getSettingsManager().is(SAFE_CIVILIANS)) {
                 ChatBlock.sendMessageKey(attacker, "cannot.attack.civilians");
                 event.setCancelled(true);
@@ -64,13 +67,13 @@ public class FriendlyFire extends SCListener {
             return;
         }
 
-        if (victimClan.equals(attackerClan)) {
+        if (relation.isSameClan()) {
             warn(attacker, "cannot.attack.clan.member");
             event.setCancelled(true);
             return;
         }
 
-        if (victimClan.isAlly(attackerClan.getTag())) {
+        if (relation.isAllyOfVictim()) {
             warn(attacker, "cannot.attack.ally");
             event.setCancelled(true);
         }
@@ -63,7 +63,7 @@ public class LandProtection implements Listener {
     public void registerListeners() {
         registerListener(BlockBreakEvent.class, (event, cancel) -> {
             Block block = event.getBlock();
-            if (settingsManager.getIgnoredList(BREAK).contains(block.getType().name())) {
+            if (settingsManager.isIgnored(BREAK, block.getType())) {
                 return;
             }
             if (protectionManager.can(BREAK, block.getLocation(), event.getPlayer())) {
@@ -98,7 +98,7 @@ public class LandProtection implements Listener {
         });
         registerListener(BlockPlaceEvent.class, (event, cancel) -> {
             Block block = event.getBlock();
-            if (settingsManager.getIgnoredList(PLACE).contains(block.getType().name())) {
+            if (settingsManager.isIgnored(PLACE, block.getType())) {
                 return;
             }
             if (protectionManager.can(PLACE, block.getLocation(), event.getPlayer())) {
@@ -107,7 +107,7 @@ public class LandProtection implements Listener {
         });
         registerListener(PlayerBucketEmptyEvent.class, (event, cancel) -> {
             Block block = event.getBlockClicked();
-            if (settingsManager.getIgnoredList(PLACE).contains(block.getType().name())) {
+            if (settingsManager.isIgnored(PLACE, block.getType())) {
                 return;
             }
             if (protectionManager.can(PLACE, block.getLocation(), event.getPlayer())) {
@@ -116,7 +116,7 @@ public class LandProtection implements Listener {
         });
         registerListener(PlayerBucketFillEvent.class, (event, cancel) -> {
             Block block = event.getBlockClicked().getRelative(event.getBlockFace());
-            if (settingsManager.getIgnoredList(BREAK).contains(block.getType().name())) {
+            if (settingsManager.isIgnored(BREAK, block.getType())) {
                 return;
             }
             if (protectionManager.can(BREAK, block.getLocation(), event.getPlayer())) {
@@ -213,6 +213,12 @@ public class LandProtection implements Listener {
 
     public void registerCreateLandEvent(ProtectionProvider provider, @Nullable Class<? extends Event> createLandEvent) {
         if (createLandEvent == null) return;
+        // the land only exists after the event, forget the cached lookups once it is created
+        Bukkit.getPluginManager().registerEvent(createLandEvent, this, EventPriority.MONITOR, (listener, event) -> {
+            if (createLandEvent.isInstance(event)) {
+                Bukkit.getScheduler().runTask(plugin, protectionManager::invalidateLands);
+            }
+        }, plugin, true);
         Bukkit.getPluginManager().registerEvent(createLandEvent, this, EventPriority.NORMAL, (listener, event) -> {
             if (!createLandEvent.isInstance(event)) {
                 return;
@@ -1,6 +1,7 @@
 package net.sacredlabyrinth.phaed.simpleclans.listeners;
 
 import net.sacredlabyrinth.phaed.simpleclans.*;
+import net.sacredlabyrinth.phaed.simpleclans.CombatRelations.Relation;
 import net.sacredlabyrinth.phaed.simpleclans.events.AddKillEvent;
 import net.sacredlabyrinth.phaed.simpleclans.managers.PermissionsManager;
 import org.bukkit.Bukkit;
@@ -43,13 +44,13 @@ public class PlayerDeath extends SCListener {
         ClanPlayer victimCp = plugin.getClanManager().getCreateClanPlayer(victim.getUniqueId());
         ClanPlayer attackerCp = plugin.getClanManager().getCreateClanPlayer(attacker.getUniqueId());
 
-        classifyKill(victimCp, attackerCp);
-        giveMoneyReward(victimCp, attackerCp);
+        Relation relation = plugin.getClanManager().getCombatRelations().get(attackerCp.getClan(), victimCp.getClan());
+        classifyKill(victimCp, attackerCp, relation);
+        giveMoneyReward(victimCp, attackerCp, relation);
 
-        // record death for victim
+        // record death for victim, the attacker is saved when the kill is accepted
         victimCp.addDeath();
         plugin.getStorageManager().updateClanPlayer(victimCp);
-        plugin.getStorageManager().updateClanPlayer(attackerCp);
     }
 
     @EventHandler
@@ -68,21 +69,11 @@ public class PlayerDeath extends SCListener {
         war.increaseCasualties(victimClan);
     }
 
-    private void classifyKill(@NotNull ClanPlayer victim, @NotNull ClanPlayer attacker) {
-        Clan victimClan = victim.getClan();
-        Clan attackerClan = attacker.getClan();
-        if (victimClan == null || attackerClan == null || !victimClan.isVerified() || !attackerClan.isVerified()) {
-            addKill(Kill.Type.CIVILIAN, attacker, victim);
-        } else if (attackerClan.isRival(victim.getTag())) {
-            addKill(Kill.Type.RIVAL, attacker, victim);
-        } else if (attackerClan.isAlly(victimClan.getTag()) || attackerClan.equals(victimClan)) {
-            addKill(Kill.Type.ALLY, attacker, victim);
-        } else {
-            addKill(Kill.Type.NEUTRAL, attacker, victim);
-        }
+    private void classifyKill(@NotNull ClanPlayer victim, @NotNull ClanPlayer attacker, @Nullable Relation relation) {
+        addKill(relation == null ? Kill.Type.CIVILIAN : relation.getKillType(), attacker, victim);
     }
 
-    private void giveMoneyReward(@NotNull ClanPlayer victim, @NotNull ClanPlayer attacker) {
+    private void giveMoneyReward(@NotNull ClanPlayer victim, @NotNull ClanPlayer attacker, @Nullable Relation relation) {
         if (!plugin.getSettingsManager().is(ECONOMY_MONEY_PER_KILL)) {
             return;
         }
@@ -90,7 +81,7 @@ public class PlayerDeath extends SCListener {
         if (attackerClan == null) {
             return;
         }
-        double reward = calculateReward(attacker, victim);
+        double reward = calculateReward(attacker, relation);
         if (reward != 0) {
             for (ClanPlayer cp : attackerClan.getOnlineMembers()) {
                 double money = Math.round((reward / attacker.getClan().getOnlineMembers().size()) * 100D) / 100D;
@@ -146,44 +137,38 @@ public class PlayerDeath extends SCListener {
         }
 
         if (plugin.getSettingsManager().is(KDR_ENABLE_MAX_KILLS)) {
-            plugin.getStorageManager().getKillsPerPlayer(attacker.getName(), data -> {
+            plugin.getClanManager().getKillCounts(attacker, counts -> {
                 final int max = plugin.getSettingsManager().getInt(KDR_MAX_KILLS_PER_VICTIM);
-                Integer kills = data.get(kill.getVictim().getName());
-                if (kills != null) {
-                    if (kills < max) {
-                        saveKill(kill, type);
-                    }
-                } else {
+                if (counts.getOrDefault(kill.getVictim().getName(), 0) < max) {
                     saveKill(kill, type);
                 }
             });
-    		return;
-    	}
-    	saveKill(kill, type);
+            return;
+        }
+        saveKill(kill, type);
     }
 
-	private void saveKill(Kill kill, Kill.Type type) {
-		plugin.getClanManager().addKill(kill);
-    	ClanPlayer killer = kill.getKiller();
-    	ClanPlayer victim = kill.getVictim();
-		killer.addKill(type);
-		plugin.getStorageManager().insertKill(killer, victim, type.getShortname(), kill.getTime());
-	}
+    private void saveKill(Kill kill, Kill.Type type) {
+        plugin.getClanManager().addKill(kill);
+        ClanPlayer killer = kill.getKiller();
+        ClanPlayer victim = kill.getVictim();
+        killer.addKill(type);
+        plugin.getStorageManager().updateClanPlayer(killer);
+        plugin.getStorageManager().insertKill(killer, victim, type.getShortname(), kill.getTime());
+    }
 
-    private double calculateReward(@NotNull ClanPlayer attacker, @NotNull ClanPlayer victim) {
+    private double calculateReward(@NotNull ClanPlayer attacker, @Nullable Relation relation) {
         double reward;
         double multiplier = plugin.getSettingsManager().getDouble(ECONOMY_MONEY_PER_KILL_KDR_MULTIPLIER);
         double kdr = attacker.getKDR() * multiplier;
-        Clan attackerClan = attacker.getClan();
-        Clan victimClan = victim.getClan();
-        if (attackerClan == null || !attackerClan.isVerified() || victimClan == null || !victimClan.isVerified()) {
+        if (relation == null || !relation.isVerified()) {
             return 0;
         }
-        if (attackerClan.isRival(victimClan.getTag())) {
-            if (attackerClan.isWarring(victimClan)) {
+        if (relation.isRival()) {
+            if (relation.isWarring()) {
                 reward = kdr * 4;
             } else reward = kdr * 2;
-        } else if (attackerClan.isAlly(victimClan.getTag())) {
+        } else if (relation.isAlly()) {
             reward = kdr * -1;
         } else {
             reward = kdr;
@@ -2,6 +2,7 @@ package net.sacredlabyrinth.phaed.simpleclans.listeners;
 
 import net.sacredlabyrinth.phaed.simpleclans.ChatBlock;
 import net.sacredlabyrinth.phaed.simpleclans.Clan;
+import net.sacredlabyrinth.phaed.simpleclans.CombatRelations.Relation;
 import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
@@ -33,13 +34,14 @@ public class PvPOnlyInWar extends SCListener {
         Clan victimClan = plugin.getClanManager().getClanByPlayerUniqueId(victim.getUniqueId());
 
         if (plugin.getSettingsManager().is(PVP_ONLY_WHILE_IN_WAR)) {
-            process(event, attacker, victim, attackerClan, victimClan);
+            Relation relation = plugin.getClanManager().getCombatRelations().get(attackerClan, victimClan);
+            process(event, attacker, victim, victimClan, relation);
         }
     }
 
-    private void process(EntityDamageEvent event, Player attacker, Player victim, @Nullable Clan attackerClan,
-                         @Nullable Clan victimClan) {
-        if (attackerClan == null || victimClan == null) {
+    private void process(EntityDamageEvent event, Player attacker, Player victim, @Nullable Clan victimClan,
+                         @Nullable Relation relation) {
+        if (victimClan == null || relation == null) {
             ChatBlock.sendMessageKey(attacker, "must.be.in.clan.to.pvp", victim.getName());
             event.setCancelled(true);
             return;
@@ -50,7 +52,7 @@ public class PvPOnlyInWar extends SCListener {
             return;
         }
 
-        if (!attackerClan.isWarring(victimClan)) {
+        if (!relation.isWarring()) {
             ChatBlock.sendMessageKey(attacker, "clans.not.at.war.pvp.denied", victimClan.getName());
             event.setCancelled(true);
         }
@@ -164,6 +164,7 @@ public class SCPlayerListener extends SCListener {
 
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.getClanManager().clearKillCounts(event.getPlayer().getUniqueId());
         ClanPlayer cp = plugin.getClanManager().getClanPlayer(event.getPlayer());
         if (cp != null) {
             Clan clan = Objects.requireNonNull(cp.getClan());
@@ -9,7 +9,9 @@ import net.sacredlabyrinth.phaed.simpleclans.Clan;
 import net.sacredlabyrinth.phaed.simpleclans.ClanPlayer;
 import net.sacredlabyrinth.phaed.simpleclans.Helper;
 import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
+import net.sacredlabyrinth.phaed.simpleclans.chat.ChatFormat;
 import net.sacredlabyrinth.phaed.simpleclans.chat.ChatHandler;
+import net.sacredlabyrinth.phaed.simpleclans.chat.ChatReceivers;
 import net.sacredlabyrinth.phaed.simpleclans.chat.SCMessage;
 import net.sacredlabyrinth.phaed.simpleclans.hooks.discord.DiscordHook;
 import net.sacredlabyrinth.phaed.simpleclans.utils.ChatUtils;
@@ -20,8 +22,11 @@ import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 
 import static net.sacredlabyrinth.phaed.simpleclans.ClanPlayer.Channel;
 import static net.sacredlabyrinth.phaed.simpleclans.chat.SCMessage.Source;
@@ -34,10 +39,32 @@ public final class ChatManager {
 
     private final SimpleClans plugin;
     private final Set<ChatHandler> handlers = new HashSet<>();
+    private final ChatReceivers receivers;
+    private final Map<String, ChatFormat> formats = new ConcurrentHashMap<>();
+    private final Map<Channel, ConfigField[]> channelFields = new EnumMap<>(Channel.class);
+    // a single thread, so messages are formatted in the order they were sent
+    private final ExecutorService formatter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "SimpleClans-Chat");
+        thread.setDaemon(true);
+        return thread;
+    });
     private DiscordHook discordHook;
 
+    private static final int LEADER_COLOR = 0, MEMBER_COLOR = 1, TRUSTED_COLOR = 2, RANK = 3, FORMAT = 4, SPY_FORMAT = 5;
+
     public ChatManager(SimpleClans plugin) {
         this.plugin = plugin;
+        for (Channel channel : new Channel[]{Channel.CLAN, Channel.ALLY}) {
+            channelFields.put(channel, new ConfigField[]{
+                    ConfigField.valueOf(channel + "CHAT_LEADER_COLOR"),
+                    ConfigField.valueOf(channel + "CHAT_MEMBER_COLOR"),
+                    ConfigField.valueOf(channel + "CHAT_TRUSTED_COLOR"),
+                    ConfigField.valueOf(channel + "CHAT_RANK"),
+                    ConfigField.valueOf(channel + "CHAT_FORMAT"),
+                    ConfigField.valueOf(channel + "CHAT_SPYFORMAT")});
+        }
+        receivers = new ChatReceivers(plugin);
+        getPluginManager().registerEvents(receivers, plugin);
         registerHandlers();
         if (isDiscordHookEnabled()) {
             DiscordSRV.api.subscribe(this);
@@ -73,18 +100,27 @@ public final class ChatManager {
                     return;
                 }
 
-                receivers.addAll(getOnlineAllyMembers(clan).stream().filter(allyMember ->
-                        !allyMember.isMutedAlly()).collect(Collectors.toList()));
-                receivers.addAll(clan.getOnlineMembers().stream().filter(onlineMember ->
-                        !onlineMember.isMutedAlly()).collect(Collectors.toList()));
+                for (ClanPlayer allyMember : this.receivers.getOnlineAllyMembers(clan)) {
+                    if (!allyMember.isMutedAlly()) {
+                        receivers.add(allyMember);
+                    }
+                }
+                for (ClanPlayer onlineMember : this.receivers.getOnlineMembers(clan)) {
+                    if (!onlineMember.isMutedAlly()) {
+                        receivers.add(onlineMember);
+                    }
+                }
                 break;
             case CLAN:
                 if (!plugin.getSettingsManager().is(CLANCHAT_ENABLE)) {
                     return;
                 }
 
-                receivers.addAll(clan.getOnlineMembers().stream().filter(member -> !member.isMuted()).
-                        collect(Collectors.toList()));
+                for (ClanPlayer member : this.receivers.getOnlineMembers(clan)) {
+                    if (!member.isMuted()) {
+                        receivers.add(member);
+                    }
+                }
         }
         message.setReceivers(receivers);
 
@@ -106,35 +142,139 @@ public final class ChatManager {
     }
 
     public String parseChatFormat(String format, SCMessage message, Map<String, String> placeholders) {
+        return applyChatFormat(format, resolvePlaceholders(format, message, placeholders), message.getContent());
+    }
+
+    /**
+     * Resolves the placeholders of a format, including PlaceholderAPI's, must be called on the main thread
+     *
+     * @param placeholders values that take precedence, e.g. from the ChatEvent
+     * @return the value of each placeholder of the format, by name
+     */
+    @NotNull
+    public Map<String, String> resolvePlaceholders(@NotNull String format, @NotNull SCMessage message,
+                                                   @Nullable Map<String, String> placeholders) {
         SettingsManager sm = plugin.getSettingsManager();
         ClanPlayer sender = message.getSender();
+        Clan clan = Objects.requireNonNull(sender.getClan());
+        ConfigField[] fields = channelFields.get(message.getChannel());
 
-        String leaderColor = sm.getColored(ConfigField.valueOf(message.getChannel() + "CHAT_LEADER_COLOR"));
-        String memberColor = sm.getColored(ConfigField.valueOf(message.getChannel() + "CHAT_MEMBER_COLOR"));
-        String trustedColor = sm.getColored(ConfigField.valueOf(message.getChannel() + "CHAT_TRUSTED_COLOR"));
+        String nickColor = sm.getColored(fields[sender.isLeader() ? LEADER_COLOR :
+                sender.isTrusted() ? TRUSTED_COLOR : MEMBER_COLOR]);
 
         String rank = sender.getRankId().isEmpty() ? null : ChatUtils.parseColors(sender.getRankDisplayName());
-        ConfigField configField = ConfigField.valueOf(String.format("%sCHAT_RANK",
-                message.getSource() == DISCORD ? "DISCORD" : message.getChannel()));
+        ConfigField configField = message.getSource() == DISCORD ? DISCORDCHAT_RANK : fields[RANK];
         String rankFormat = (rank != null) ? sm.getColored(configField).replace("%rank%", rank) : "";
 
-        if (placeholders != null) {
-            for (Map.Entry<String, String> e : placeholders.entrySet()) {
-                format = format.replace("%" + e.getKey() + "%", e.getValue());
+        Map<String, String> values = new HashMap<>();
+        for (String placeholder : getCompiledFormat(format).getPlaceholders()) {
+            String value;
+            if (placeholders != null && placeholders.containsKey(placeholder)) {
+                value = ChatUtils.parseColors(placeholders.get(placeholder));
+            } else {
+                switch (placeholder) {
+                    case "message":
+                        // kept, so PlaceholderAPI doesn't parse the player's message
+                        continue;
+                    case "clan":
+                        value = clan.getColorTag();
+                        break;
+                    case "clean-tag":
+                        value = clan.getTag();
+                        break;
+                    case "nick-color":
+                        value = nickColor;
+                        break;
+                    case "player":
+                        value = sender.getName();
+                        break;
+                    case "rank":
+                        value = rankFormat;
+                        break;
+                    default:
+                        value = "%" + placeholder + "%";
+                }
+            }
+            if (value != null && value.indexOf('%') != -1) {
+                value = parseWithPapi(sender, value);
             }
+            values.put(placeholder, value);
+        }
+        return values;
+    }
+
+    /**
+     * Formats a message with the values of {@link #resolvePlaceholders}, may be called from any thread
+     *
+     * @param content the player's message
+     * @return the formatted message
+     */
+    @NotNull
+    public String applyChatFormat(@NotNull String format, @NotNull Map<String, String> values,
+                                  @NotNull String content) {
+        return getCompiledFormat(format).apply(values::get).replace("%message%", content);
+    }
+
+    /**
+     * @param spy whether to get the spy format
+     * @return the format of the message's channel, or of Discord if it came from there
+     */
+    @NotNull
+    public String getChatFormat(@NotNull SCMessage message, boolean spy) {
+        ConfigField field;
+        if (message.getSource() == DISCORD) {
+            field = spy ? DISCORDCHAT_SPYFORMAT : DISCORDCHAT_FORMAT;
+        } else {
+            field = channelFields.get(message.getChannel())[spy ? SPY_FORMAT : FORMAT];
         }
+        return plugin.getSettingsManager().getString(field);
+    }
 
-        String parsedFormat = ChatUtils.parseColors(format)
-                .replace("%clan%", Objects.requireNonNull(sender.getClan()).getColorTag())
-                .replace("%clean-tag%", sender.getClan().getTag())
-                .replace("%nick-color%",
-                        (sender.isLeader() ? leaderColor : sender.isTrusted() ? trustedColor : memberColor))
-                .replace("%player%", sender.getName())
-                .replace("%rank%", rankFormat);
-        parsedFormat = parseWithPapi(message.getSender(), parsedFormat)
-                .replace("%message%", message.getContent());
+    /**
+     * Runs a task on the chat thread, tasks run in the order they were submitted
+     *
+     * @param task the task, e.g. formatting a message
+     */
+    public void runAsync(@NotNull Runnable task) {
+        try {
+            formatter.execute(task);
+        } catch (RejectedExecutionException ex) {
+            // shutting down
+            task.run();
+        }
+    }
 
-        return parsedFormat;
+    /**
+     * Drops the cached online members of a clan, e.g. after it was reloaded
+     *
+     * @param tag the clan tag, or null for every clan
+     */
+    public void invalidateReceivers(@Nullable String tag) {
+        receivers.invalidate(tag);
+    }
+
+    /**
+     * Stops the chat thread
+     */
+    public void shutdown() {
+        formatter.shutdown();
+        if (discordHook != null) {
+            discordHook.shutdown();
+        }
+    }
+
+    @NotNull
+    private ChatFormat getCompiledFormat(@NotNull String format) {
+        ChatFormat compiled = formats.get(format);
+        if (compiled == null) {
+            // formats come from the config, the cache only grows with reloads that change them
+            if (formats.size() > 64) {
+                formats.clear();
+            }
+            compiled = ChatFormat.compile(ChatUtils.parseColors(format));
+            formats.put(format, compiled);
+        }
+        return compiled;
     }
 
     public boolean isDiscordHookEnabled() {
@@ -170,10 +310,4 @@ public final class ChatManager {
             }
         }
     }
-
-    private List<ClanPlayer> getOnlineAllyMembers(Clan clan) {
-        return clan.getAllAllyMembers().stream().
-                filter(allyPlayer -> allyPlayer.toPlayer() != null).
-                collect(Collectors.toList());
-    }
 }
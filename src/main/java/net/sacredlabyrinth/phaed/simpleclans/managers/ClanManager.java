@@ -9,6 +9,7 @@ import net.sacredlabyrinth.phaed.simpleclans.events.EconomyTransactionEvent.Caus
 import net.sacredlabyrinth.phaed.simpleclans.loggers.BankOperator;
 import net.sacredlabyrinth.phaed.simpleclans.utils.ChatUtils;
 import net.sacredlabyrinth.phaed.simpleclans.utils.CurrencyFormat;
+import net.sacredlabyrinth.phaed.simpleclans.utils.RankedIndex;
 import net.sacredlabyrinth.phaed.simpleclans.utils.VanishUtils;
 import net.sacredlabyrinth.phaed.simpleclans.uuid.UUIDMigration;
 import org.bukkit.Bukkit;
@@ -28,6 +29,8 @@ import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 import static net.sacredlabyrinth.phaed.simpleclans.SimpleClans.lang;
@@ -44,6 +47,12 @@ public final class ClanManager {
     private final ConcurrentHashMap<String, Clan> clans = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<UUID, ClanPlayer> clanPlayers = new ConcurrentHashMap<>();
     private final HashMap<ClanPlayer, List<Kill>> kills = new HashMap<>();
+    private final HashMap<UUID, Map<String, Integer>> killCounts = new HashMap<>();
+    private final HashMap<UUID, List<Consumer<Map<String, Integer>>>> pendingKillCounts = new HashMap<>();
+    private final RankedIndex<Clan> clanKdrRanking = new RankedIndex<>(Clan::getTotalKDR);
+    private final RankedIndex<ClanPlayer> playerKdrRanking = new RankedIndex<>(ClanPlayer::getKDR);
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private final CombatRelations combatRelations = new CombatRelations();
 
     /**
      *
@@ -59,6 +68,10 @@ public final class ClanManager {
         clans.clear();
         clanPlayers.clear();
         kills.clear();
+        killCounts.clear();
+        clanKdrRanking.clear();
+        playerKdrRanking.clear();
+        combatRelations.invalidate();
     }
 
     /**
@@ -88,6 +101,58 @@ public final class ClanManager {
         }
 
         list.add(kill);
+
+        Map<String, Integer> counts = killCounts.get(kill.getKiller().getUniqueId());
+        if (counts != null) {
+            counts.merge(kill.getVictim().getName(), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Runs the action with the attacker's victim-{@literal >}kills map.
+     * The map is loaded from the database the first time, in which case the action runs on a later tick.
+     * Must be called from the main thread.
+     *
+     * @param attacker the attacker
+     * @param action   the action, always run on the main thread
+     */
+    public void getKillCounts(@NotNull ClanPlayer attacker, @NotNull Consumer<Map<String, Integer>> action) {
+        UUID uuid = attacker.getUniqueId();
+        Map<String, Integer> counts = killCounts.get(uuid);
+        if (counts != null) {
+            action.accept(counts);
+            return;
+        }
+        List<Consumer<Map<String, Integer>>> pending = pendingKillCounts.get(uuid);
+        if (pending != null) {
+            pending.add(action);
+            return;
+        }
+        pending = new ArrayList<>();
+        pending.add(action);
+        pendingKillCounts.put(uuid, pending);
+        plugin.getStorageManager().getKillsPerPlayer(uuid, data ->
+                Bukkit.getScheduler().runTask(plugin, () -> {
+                    Map<String, Integer> loaded = new HashMap<>(data);
+                    killCounts.put(uuid, loaded);
+                    List<Consumer<Map<String, Integer>>> actions = pendingKillCounts.remove(uuid);
+                    if (actions != null) {
+                        actions.forEach(a -> a.accept(loaded));
+                    }
+                }));
+    }
+
+    /**
+     * Forgets the attacker's kill counts, they will be loaded again on the next kill
+     *
+     * @param attacker the attacker's UUID
+     */
+    public void clearKillCounts(@NotNull UUID attacker) {
+        if (Bukkit.isPrimaryThread()) {
+            killCounts.remove(attacker);
+        } else {
+            Bukkit.getScheduler().runTask(plugin, () -> killCounts.remove(attacker));
+        }
     }
 
     /**
@@ -120,7 +185,11 @@ public final class ClanManager {
      * Import a clan into the in-memory store
      */
     public void importClan(Clan clan) {
-        this.clans.put(clan.getTag(), clan);
+        Clan old = this.clans.put(clan.getTag(), clan);
+        if (old != null && old != clan) {
+            clanKdrRanking.remove(old);
+        }
+        clanKdrRanking.add(clan);
     }
 
     /**
@@ -128,10 +197,78 @@ public final class ClanManager {
      */
     public void importClanPlayer(ClanPlayer cp) {
         if (cp.getUniqueId() != null) {
-            this.clanPlayers.put(cp.getUniqueId(), cp);
+            ClanPlayer old = this.clanPlayers.put(cp.getUniqueId(), cp);
+            if (old != null && old != cp) {
+                playerKdrRanking.remove(old);
+            }
+            playerKdrRanking.add(cp);
+        }
+    }
+
+    /**
+     * The relations of the clans in combat
+     */
+    public @NotNull CombatRelations getCombatRelations() {
+        return combatRelations;
+    }
+
+    /**
+     * Clans ranked by their total KDR, highest first
+     */
+    public @NotNull RankedIndex<Clan> getClanKdrRanking() {
+        return clanKdrRanking;
+    }
+
+    /**
+     * Clan players ranked by their KDR, highest first
+     */
+    public @NotNull RankedIndex<ClanPlayer> getPlayerKdrRanking() {
+        return playerKdrRanking;
+    }
+
+    /**
+     * Registers a listener notified when clans and clan players change in memory
+     */
+    public void addChangeListener(@NotNull ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Notifies that the player changed, re-ranking them and their clan
+     */
+    public void notifyChange(@NotNull ClanPlayer cp) {
+        playerKdrRanking.update(cp);
+        for (ChangeListener listener : changeListeners) {
+            listener.onChange(cp);
+        }
+        Clan clan = cp.getClan();
+        if (clan != null) {
+            notifyChange(clan);
+        }
+    }
+
+    /**
+     * Notifies that the clan or its members changed, re-ranking it
+     */
+    public void notifyChange(@NotNull Clan clan) {
+        clanKdrRanking.update(clan);
+        for (ChangeListener listener : changeListeners) {
+            listener.onChange(clan);
         }
     }
 
+    /**
+     * Listens to in-memory changes of clans and clan players
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+
+        /**
+         * @param subject the {@link Clan} or {@link ClanPlayer} that changed
+         */
+        void onChange(@NotNull Object subject);
+    }
+
     /**
      * Create a new clan
      */
@@ -181,6 +318,7 @@ public final class ClanManager {
             clan.removePlayerFromClan(cp.getUniqueId());
         }
         clanPlayers.remove(cp.getUniqueId());
+        playerKdrRanking.remove(cp);
         plugin.getStorageManager().deleteClanPlayer(cp);
     }
 
@@ -188,14 +326,21 @@ public final class ClanManager {
      * Delete a player data from memory
      */
     public void deleteClanPlayerFromMemory(UUID playerUniqueId) {
-        clanPlayers.remove(playerUniqueId);
+        ClanPlayer removed = clanPlayers.remove(playerUniqueId);
+        if (removed != null) {
+            playerKdrRanking.remove(removed);
+        }
     }
 
     /**
      * Remove a clan from memory
      */
     public void removeClan(String tag) {
-        clans.remove(tag);
+        Clan removed = clans.remove(tag);
+        if (removed != null) {
+            clanKdrRanking.remove(removed);
+            invalidateChatReceivers(tag);
+        }
     }
 
     /**
@@ -1206,6 +1351,7 @@ public final class ClanManager {
             plugin.getLogger().fine("[Redis] Reloading clan from database: " + cleanTag);
             // Reload clan from database
             plugin.getStorageManager().reloadClan(existing);
+            invalidateChatReceivers(cleanTag);
         } else {
             // Clan doesn't exist locally - load from database (new clan from another server)
             Clan newClan = plugin.getStorageManager().retrieveOneClan(cleanTag);
@@ -1229,8 +1375,15 @@ public final class ClanManager {
         
         if (existing != null) {
             plugin.getLogger().fine("[Redis] Reloading player from database: " + uuid);
+            Clan previous = existing.getClan();
             // Reload player from database
             plugin.getStorageManager().reloadClanPlayer(existing);
+            if (previous != null) {
+                invalidateChatReceivers(previous.getTag());
+            }
+            if (existing.getClan() != null) {
+                invalidateChatReceivers(existing.getClan().getTag());
+            }
         } else {
             // Player doesn't exist locally - load from database (may have joined a clan on another server)
             ClanPlayer newCp = plugin.getStorageManager().retrieveOneClanPlayer(uuid);
@@ -1243,6 +1396,9 @@ public final class ClanManager {
                 if (clan != null && !clan.isMember(newCp.getUniqueId())) {
                     clan.importMember(newCp);
                 }
+                if (clan != null) {
+                    invalidateChatReceivers(clan.getTag());
+                }
             }
         }
     }
@@ -1259,9 +1415,12 @@ public final class ClanManager {
         
         if (removed != null) {
             plugin.getLogger().fine("[Redis] Removed clan from memory: " + cleanTag);
+            clanKdrRanking.remove(removed);
+            invalidateChatReceivers(cleanTag);
             // Remove all clan members from cache as well
             for (ClanPlayer cp : removed.getAllMembers()) {
                 clanPlayers.remove(cp.getUniqueId());
+                playerKdrRanking.remove(cp);
             }
         }
     }
@@ -1275,8 +1434,18 @@ public final class ClanManager {
         clans.clear();
         clanPlayers.clear();
         kills.clear();
+        killCounts.clear();
+        clanKdrRanking.clear();
+        playerKdrRanking.clear();
+        invalidateChatReceivers(null);
         
         // Reload all data from database
         plugin.getStorageManager().importFromDatabase();
     }
+
+    private void invalidateChatReceivers(@Nullable String tag) {
+        if (plugin.getChatManager() != null) {
+            plugin.getChatManager().invalidateReceivers(tag);
+        }
+    }
 }
@@ -7,6 +7,7 @@ import net.sacredlabyrinth.phaed.simpleclans.War;
 import net.sacredlabyrinth.phaed.simpleclans.events.WarEndEvent;
 import net.sacredlabyrinth.phaed.simpleclans.events.WarStartEvent;
 import net.sacredlabyrinth.phaed.simpleclans.hooks.protection.Land;
+import net.sacredlabyrinth.phaed.simpleclans.hooks.protection.LandCache;
 import net.sacredlabyrinth.phaed.simpleclans.hooks.protection.ProtectionProvider;
 import net.sacredlabyrinth.phaed.simpleclans.listeners.LandProtection;
 import org.bukkit.Bukkit;
@@ -34,6 +35,8 @@ public class ProtectionManager {
     private final Logger logger;
     private final Map<War, BukkitTask> wars = new HashMap<>();
     private final List<ProtectionProvider> providers = new ArrayList<>();
+    private final LandCache landCache;
+    private volatile Map<Clan, Map<Clan, Boolean>> warring = new IdentityHashMap<>();
     private LandProtection landProtection;
     private final SimpleClans plugin;
 
@@ -42,6 +45,7 @@ public class ProtectionManager {
         settingsManager = plugin.getSettingsManager();
         clanManager = plugin.getClanManager();
         logger = plugin.getLogger();
+        landCache = new LandCache(settingsManager.getInt(PERFORMANCE_LAND_CACHE_TTL));
         if (!settingsManager.is(ENABLE_WAR) && !settingsManager.is(LAND_SHARING)) {
             return;
         }
@@ -85,7 +89,7 @@ public class ProtectionManager {
 
     public boolean isOwner(@NotNull OfflinePlayer player, @NotNull Location location) {
         debug(String.format("isOwner: player %s %s -> %s", player.getName(), player.getUniqueId(), location));
-        for (Land land : getLandsAt(location)) {
+        for (Land land : getCachedLandsAt(location)) {
             debug(String.format("land -> id %s - owners %s", land.getId(), land.getOwners()));
             if (land.getOwners().contains(player.getUniqueId())) {
                 return true;
@@ -108,19 +112,35 @@ public class ProtectionManager {
     }
 
     public boolean can(@NotNull Action action, @NotNull Location location, @NotNull Player player, @Nullable Player other) {
-        for (Land land : getLandsAt(location)) {
+        boolean war = settingsManager.is(ENABLE_WAR) && settingsManager.isActionAllowedInWar(action);
+        boolean sharing = settingsManager.is(LAND_SHARING);
+        if (!war && !sharing) {
+            return false;
+        }
+        Land[] lands = getCachedLandsAt(location);
+        if (lands.length == 0) {
+            return false;
+        }
+        Clan playerClan = clanManager.getClanByPlayerUniqueId(player.getUniqueId());
+        Clan otherClan = other != null ? clanManager.getClanByPlayerUniqueId(other.getUniqueId()) : null;
+        for (Land land : lands) {
             for (UUID owner : land.getOwners()) {
                 if (owner == null) {
                     continue;
                 }
-                Player involved;
-                if (other != null && player.getUniqueId().equals(owner)) {
-                    involved = other;
-                } else {
-                    involved = player;
+                Clan involvedClan = other != null && player.getUniqueId().equals(owner) ? otherClan : playerClan;
+                if (involvedClan == null) {
+                    continue;
+                }
+                ClanPlayer ownerCp = clanManager.getClanPlayer(owner);
+                Clan ownerClan = ownerCp != null ? ownerCp.getClan() : null;
+                if (ownerClan == null) {
+                    continue;
                 }
-                if (isWarringAndAllowed(action, owner, involved) ||
-                        isSameClanAndAllowed(action, owner, involved, land.getId())) {
+                if (war && isWarring(ownerClan, involvedClan)) {
+                    return true;
+                }
+                if (sharing && ownerClan.equals(involvedClan) && ownerCp.isAllowed(action, land.getId())) {
                     return true;
                 }
             }
@@ -128,6 +148,23 @@ public class ProtectionManager {
         return false;
     }
 
+    /**
+     * Forgets the cached lands, call it when lands are created, changed or deleted
+     */
+    public void invalidateLands() {
+        landCache.clear();
+    }
+
+    @NotNull
+    private Land[] getCachedLandsAt(@NotNull Location location) {
+        return landCache.get(location, l -> {
+            if (providers.size() == 1) {
+                return providers.get(0).getLandsAt(l).toArray(new Land[0]);
+            }
+            return getLandsAt(l).toArray(new Land[0]);
+        });
+    }
+
     @SuppressWarnings("UnusedReturnValue")
     public boolean addWar(@NotNull ClanPlayer requester, Clan requestClan, Clan targetClan) {
         War war = new War(requestClan, targetClan);
@@ -213,28 +250,20 @@ public class ProtectionManager {
         }
     }
 
-    private boolean isSameClanAndAllowed(Action action, UUID owner, Player involved, String landId) {
-        if (!settingsManager.is(LAND_SHARING)) {
-            return false;
-        }
-        ClanPlayer cp = clanManager.getCreateClanPlayer(owner);
-        Clan involvedClan = clanManager.getClanByPlayerUniqueId(involved.getUniqueId());
-        if (cp.getClan() == null || !cp.getClan().equals(involvedClan)) {
-            return false;
-        }
-        return cp.isAllowed(action, landId);
+    /**
+     * Forgets which clans are at war, must be called when a clan's wars or tag change or a clan is disbanded
+     */
+    public void invalidateWarring() {
+        warring = new IdentityHashMap<>();
     }
 
-    private boolean isWarringAndAllowed(@NotNull Action action, @NotNull UUID owner, @NotNull Player involved) {
-        if (!settingsManager.isActionAllowedInWar(action) || !settingsManager.is(ENABLE_WAR)) {
-            return false;
-        }
-        Clan ownerClan = clanManager.getClanByPlayerUniqueId(owner);
-        Clan involvedClan = clanManager.getClanByPlayerUniqueId(involved.getUniqueId());
-        if (ownerClan == null || involvedClan == null) {
-            return false;
-        }
-        return ownerClan.isWarring(involvedClan);
+    /**
+     * Whether the clans are at war, remembered per pair until {@link #invalidateWarring()}
+     */
+    private boolean isWarring(@NotNull Clan ownerClan, @NotNull Clan involvedClan) {
+        Map<Clan, Map<Clan, Boolean>> warring = this.warring;
+        return warring.computeIfAbsent(ownerClan, c -> new IdentityHashMap<>())
+                .computeIfAbsent(involvedClan, ownerClan::isWarring);
     }
 
     private void registerProviders() {
@@ -274,6 +303,7 @@ public class ProtectionManager {
             return;
         }
         providers.add(provider);
+        invalidateLands();
         landProtection.registerCreateLandEvent(provider, provider.getCreateLandEvent());
         logger.info(String.format("Registered %s successfully", providerName));
     }
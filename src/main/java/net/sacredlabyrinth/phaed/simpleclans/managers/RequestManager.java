@@ -716,6 +716,13 @@ public final class RequestManager {
                 removeFromRedis(key, "removed");
             }
         }
+        // Requests of, or targeting, the clan that were created on other servers
+        RedisRequestStorage storage = getRedisStorage();
+        if (storage != null) {
+            for (String key : storage.getClanRequestKeys(keyOrTarget)) {
+                removeFromRedis(key, "removed");
+            }
+        }
     }
 
     /**
@@ -31,6 +31,9 @@ public final class SettingsManager {
 
     private final FileConfiguration config;
     private final File configFile;
+    private volatile Map<ProtectionManager.Action, Set<Material>> ignoredMaterials = Collections.emptyMap();
+    private volatile Set<ProtectionManager.Action> warActions = Collections.emptySet();
+    private volatile double[] killWeights = new double[4];
 
     public SettingsManager(SimpleClans plugin) {
         this.plugin = plugin;
@@ -98,6 +101,45 @@ public final class SettingsManager {
         }
 
         save();
+        compileProtectionSettings();
+        compileKillWeights();
+    }
+
+    /**
+     * Resolves the protection settings read on every block event, so the listeners don't look up the config
+     */
+    private void compileProtectionSettings() {
+        Map<ProtectionManager.Action, Set<Material>> ignored = new EnumMap<>(ProtectionManager.Action.class);
+        Set<ProtectionManager.Action> actions = EnumSet.noneOf(ProtectionManager.Action.class);
+        for (ProtectionManager.Action action : ProtectionManager.Action.values()) {
+            if (is(ConfigField.valueOf("WAR_ACTIONS_" + action.name()))) {
+                actions.add(action);
+            }
+            ConfigField field;
+            try {
+                field = ConfigField.valueOf("WAR_LISTENERS_IGNORED_LIST_" + action.name());
+            } catch (IllegalArgumentException ex) {
+                continue;
+            }
+            Set<Material> materials = EnumSet.noneOf(Material.class);
+            for (String name : getStringList(field)) {
+                Material material = Material.getMaterial(name);
+                if (material != null) {
+                    materials.add(material);
+                }
+            }
+            ignored.put(action, materials);
+        }
+        ignoredMaterials = ignored;
+        warActions = actions;
+    }
+
+    /**
+     * Reads the kill weights once, so the clan totals don't look them up on every read
+     */
+    private void compileKillWeights() {
+        killWeights = new double[]{getDouble(KILL_WEIGHTS_RIVAL), getDouble(KILL_WEIGHTS_NEUTRAL),
+                getDouble(KILL_WEIGHTS_CIVILIAN), getDouble(KILL_WEIGHTS_ALLY)};
     }
 
     public void save() {
@@ -264,14 +306,32 @@ public final class SettingsManager {
         save();
     }
 
+    /**
+     * @return the kill weights as of the last reload, in the order rival, neutral, civilian and ally.
+     * A reload replaces the array, it must not be modified.
+     */
+    public double[] getKillWeights() {
+        return killWeights;
+    }
+
     public boolean isActionAllowedInWar(@NotNull ProtectionManager.Action action) {
-        return is(ConfigField.valueOf("WAR_ACTIONS_" + action.name()));
+        return warActions.contains(action);
     }
 
     public List<String> getIgnoredList(@NotNull ProtectionManager.Action action) {
         return getStringList(ConfigField.valueOf("WAR_LISTENERS_IGNORED_LIST_" + action.name()));
     }
 
+    /**
+     * @param action   the action
+     * @param material the material
+     * @return whether the land protection ignores the action on the material
+     */
+    public boolean isIgnored(@NotNull ProtectionManager.Action action, @NotNull Material material) {
+        Set<Material> materials = ignoredMaterials.get(action);
+        return materials != null && materials.contains(material);
+    }
+
     @NotNull
     public RankingType getRankingType() {
         try {
@@ -617,6 +677,10 @@ public final class SettingsManager {
         MYSQL_PASSWORD("mysql.password", ""),
         MYSQL_DATABASE("mysql.database", ""),
         MYSQL_TABLE_PREFIX("mysql.table_prefix", "sc_"),
+        MYSQL_POOL_SIZE("mysql.pool.size", 10),
+        MYSQL_POOL_CONNECTION_TIMEOUT("mysql.pool.connection-timeout", 5000),
+        MYSQL_POOL_VALIDATION_TIMEOUT("mysql.pool.validation-timeout", 2),
+        MYSQL_POOL_STATEMENT_CACHE_SIZE("mysql.pool.statement-cache-size", 250),
         /*
         ================
         > Permissions Settings
@@ -633,6 +697,17 @@ public final class SettingsManager {
         PERFORMANCE_USE_THREADS("performance.use-threads", true),
         PERFORMANCE_USE_BUNGEECORD("performance.use-bungeecord", false),
         PERFORMANCE_HEAD_CACHING("performance.cache-player-heads", false),
+        PERFORMANCE_WRITER_THREADS("performance.writer.threads", 2),
+        PERFORMANCE_WRITER_QUEUE_SIZE("performance.writer.queue-size", 10000),
+        PERFORMANCE_WRITER_MAX_WAIT("performance.writer.max-wait", 50),
+        PERFORMANCE_WRITER_SHUTDOWN_TIMEOUT("performance.writer.shutdown-timeout", 30),
+        PERFORMANCE_KILL_RETENTION_ENABLE("performance.kill-retention.enable", false),
+        PERFORMANCE_KILL_RETENTION_DAYS("performance.kill-retention.days", 90),
+        PERFORMANCE_KILL_RETENTION_INTERVAL("performance.kill-retention.interval", 60),
+        PERFORMANCE_KILL_RETENTION_BATCH_SIZE("performance.kill-retention.batch-size", 5000),
+        PERFORMANCE_KILL_RETENTION_MYSQL_PARTITIONING("performance.kill-retention.mysql-partitioning", false),
+        PERFORMANCE_PLACEHOLDER_CACHE_TTL("performance.placeholder-cache-ttl", 50),
+        PERFORMANCE_LAND_CACHE_TTL("performance.land-cache-ttl", 5000),
 
         SAFE_CIVILIANS("safe-civilians", false);
 
@@ -4,9 +4,12 @@ import net.sacredlabyrinth.phaed.simpleclans.*;
 import net.sacredlabyrinth.phaed.simpleclans.events.ClanBalanceUpdateEvent;
 import net.sacredlabyrinth.phaed.simpleclans.loggers.BankLogger;
 import net.sacredlabyrinth.phaed.simpleclans.loggers.BankOperator;
+import net.sacredlabyrinth.phaed.simpleclans.storage.ConnectionPool;
 import net.sacredlabyrinth.phaed.simpleclans.storage.DBCore;
+import net.sacredlabyrinth.phaed.simpleclans.storage.KillPartitioning;
 import net.sacredlabyrinth.phaed.simpleclans.storage.MySQLCore;
 import net.sacredlabyrinth.phaed.simpleclans.storage.SQLiteCore;
+import net.sacredlabyrinth.phaed.simpleclans.storage.StorageWriter;
 import net.sacredlabyrinth.phaed.simpleclans.utils.ChatUtils;
 import net.sacredlabyrinth.phaed.simpleclans.utils.YAMLSerializer;
 import net.sacredlabyrinth.phaed.simpleclans.uuid.UUIDFetcher;
@@ -23,10 +26,18 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
 import java.text.MessageFormat;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -38,11 +49,26 @@ import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.Con
  */
 public final class StorageManager {
 
+    private static final String KILLS_SHARD = "kills";
+    /**
+     * How many times a kill is written before it is considered broken and dropped
+     */
+    private static final int MAX_KILL_ATTEMPTS = 3;
+    /**
+     * How many kills can wait to be written, newer kills are dropped while the database is unavailable
+     */
+    private static final int MAX_PENDING_KILLS = 50000;
+
     private final SimpleClans plugin;
     private DBCore core;
     private final HashMap<String, ChatBlock> chatBlocks = new HashMap<>();
-    private final Set<Clan> modifiedClans = new HashSet<>();
-    private final Set<ClanPlayer> modifiedClanPlayers = new HashSet<>();
+    private final Set<Clan> modifiedClans = ConcurrentHashMap.newKeySet();
+    private final Set<ClanPlayer> modifiedClanPlayers = ConcurrentHashMap.newKeySet();
+    private final Map<String, BooleanSupplier> clanGuards = new ConcurrentHashMap<>();
+    private final Deque<PendingKill> pendingKills = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger pendingKillCount = new AtomicInteger();
+    private final AtomicBoolean killsOverflowing = new AtomicBoolean();
+    private boolean upsertSupported = true;
 
     /**
      *
@@ -78,7 +104,10 @@ public final class StorageManager {
     public void initiateDB() {
         SettingsManager settings = plugin.getSettingsManager();
         if (settings.is(MYSQL_ENABLE)) {
-            core = new MySQLCore(settings.getString(MYSQL_HOST), settings.getString(MYSQL_DATABASE), settings.getInt(MYSQL_PORT), settings.getString(MYSQL_USERNAME), settings.getString(MYSQL_PASSWORD));
+            core = new MySQLCore(settings.getString(MYSQL_HOST), settings.getString(MYSQL_DATABASE), settings.getInt(MYSQL_PORT),
+                    settings.getString(MYSQL_USERNAME), settings.getString(MYSQL_PASSWORD), settings.getInt(MYSQL_POOL_SIZE),
+                    settings.getInt(MYSQL_POOL_CONNECTION_TIMEOUT), settings.getInt(MYSQL_POOL_VALIDATION_TIMEOUT),
+                    settings.getInt(MYSQL_POOL_STATEMENT_CACHE_SIZE));
 
             if (core.checkConnection()) {
                 plugin.getLogger().info(lang("mysql.connection.successful"));
@@ -161,6 +190,12 @@ public final class StorageManager {
 
             	plugin.getLogger().info(lang("sqlite.connection.successful"));
 
+                upsertSupported = ((SQLiteCore) core).supportsUpsert();
+                if (!upsertSupported) {
+                    plugin.getLogger().warning(String.format("SQLite %s is older than 3.24.0, kill counts are updated " +
+                            "with separate statements", ((SQLiteCore) core).getVersion()));
+                }
+
                 if (!core.existsTable(getPrefixedTable("clans"))) {
                     plugin.getLogger().info("Creating table: " + getPrefixedTable("clans"));
 
@@ -242,6 +277,32 @@ public final class StorageManager {
         core.close();
     }
 
+    /**
+     * Stops accepting queued writes and waits for the pending ones to be executed.
+     * Writes made after this run on the caller's thread.
+     */
+    public void drainWrites() {
+        core.getWriter().shutdown(plugin.getSettingsManager().getInt(PERFORMANCE_WRITER_SHUTDOWN_TIMEOUT) * 1000L);
+    }
+
+    /**
+     * Returns the connection pool, which exposes wait times, active connections and query latency
+     *
+     * @return the connection pool
+     */
+    public ConnectionPool getConnectionPool() {
+        return core.getPool();
+    }
+
+    /**
+     * Returns the writer that executes updates off the main thread, which exposes queue depth and coalesced writes
+     *
+     * @return the storage writer
+     */
+    public StorageWriter getStorageWriter() {
+        return core.getWriter();
+    }
+
     /**
      * Import all data from database to memory
      */
@@ -725,7 +786,7 @@ public final class StorageManager {
         							+ Helper.escapeQuotes(String.valueOf(clan.getBalance())) + "');";
         
         // Execute with callback to notify other servers AFTER the insert is complete
-        core.executeUpdateWithCallback(query + values, () -> {
+        core.executeUpdate(query + values, clanShard(clan), () -> {
             // Notify other servers via Redis about new clan (after DB insert completes)
             if (plugin.getRedisManager() != null && plugin.getRedisManager().isInitialized()) {
                 plugin.getRedisManager().invalidate("clan:new", clan.getTag());
@@ -743,12 +804,7 @@ public final class StorageManager {
      */
     @Deprecated
     public void updateClanAsync(final Clan clan) {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                updateClan(clan);
-            }
-        }.runTaskAsynchronously(plugin);
+        updateClan(clan, true, true);
     }
 
     /**
@@ -757,12 +813,7 @@ public final class StorageManager {
      * @param cp to update
      */
     public void updatePlayerNameAsync(final @NotNull ClanPlayer cp) {
-    	new BukkitRunnable() {
-			@Override
-			public void run() {
-                updatePlayerName(cp);
-			}
-		}.runTaskAsynchronously(plugin);
+        updatePlayerName(cp, true);
     }
 
     /**
@@ -771,10 +822,18 @@ public final class StorageManager {
      * @param cp to update
      */
     public void updatePlayerName(final @NotNull ClanPlayer cp) {
+        updatePlayerName(cp, false);
+    }
+
+    private void updatePlayerName(@NotNull ClanPlayer cp, boolean async) {
         String query = "UPDATE `" + getPrefixedTable("players") + "` SET `name` = '" + cp.getName() + "' WHERE uuid = '" + cp.getUniqueId() + "';";
-        core.executeUpdateWithCallback(query, () -> {
-            plugin.getProxyManager().sendUpdate(cp);
-        });
+        Runnable notify = plugin.getProxyManager().prepareUpdate(cp);
+        Runnable update = () -> core.executeUpdate(query, playerShard(cp), notify);
+        if (async && !plugin.getSettingsManager().is(PERFORMANCE_USE_THREADS)) {
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, update);
+            return;
+        }
+        update.run();
     }
 
     /**
@@ -793,6 +852,10 @@ public final class StorageManager {
      * @param updateLastUsed should the clan's last used time be updated as well?
      */
     public void updateClan(Clan clan, boolean updateLastUsed) {
+        updateClan(clan, updateLastUsed, false);
+    }
+
+    private void updateClan(Clan clan, boolean updateLastUsed, boolean async) {
         if (updateLastUsed) {
             clan.updateLastUsed();
         }
@@ -804,14 +867,84 @@ public final class StorageManager {
             modifiedClans.add(clan);
             return;
         }
-        try (PreparedStatement st = prepareUpdateClanStatement(core.getConnection())) {
-            setValues(st, clan);
-            st.executeUpdate();
+        // the values and the update are read here, the clan's lists are not safe to iterate from the writer thread
+        Object[] values = getValues(clan);
+        String tag = clan.getTag();
+        updateRow(clanShard(clan), connection -> {
+            BooleanSupplier guard = clanGuards.get(tag);
+            if (guard != null && !guard.getAsBoolean()) {
+                // not notified either, the other servers keep the values of the new holder
+                throw new SQLException(String.format("Clan %s was changed under a lock that was lost", tag));
+            }
+            try (PreparedStatement st = prepareUpdateClanStatement(connection)) {
+                setValues(st, values);
+                st.executeUpdate();
+            }
+        }, plugin.getProxyManager().prepareUpdate(clan), async, String.format("Error updating Clan %s", clan.getTag()));
+    }
+
+    /**
+     * Executes an update whose values were already read: through the writer if threads are enabled, where queued
+     * updates of the same row are coalesced, otherwise on this thread or on an async task
+     *
+     * @param notify runs after the update succeeds
+     */
+    private void updateRow(String shard, StorageWriter.SQLOperation operation, Runnable notify, boolean async,
+                           String error) {
+        if (plugin.getSettingsManager().is(PERFORMANCE_USE_THREADS)) {
+            core.getWriter().submit(shard, "update", operation, notify);
+            return;
+        }
+        Runnable update = () -> {
+            try (Connection connection = core.getPool().getConnection()) {
+                operation.execute(connection);
+            } catch (SQLException ex) {
+                plugin.getLogger().log(Level.SEVERE, error, ex);
+                return;
+            }
             // Notify AFTER saving to database
-            plugin.getProxyManager().sendUpdate(clan);
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, String.format("Error updating Clan %s", clan.getTag()), ex);
+            notify.run();
+        };
+        if (async) {
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, update);
+            return;
+        }
+        update.run();
+    }
+
+    /**
+     * Makes the clan's updates check the guard right before they are written, and drop the write if it fails.
+     * Used while the clan is changed under a distributed lock, so the changes are not saved once the lock was lost.
+     *
+     * @param clan  the clan
+     * @param guard checked by each update, or null to remove the guard
+     */
+    public void guardClan(@NotNull Clan clan, @Nullable BooleanSupplier guard) {
+        if (guard == null) {
+            clanGuards.remove(clan.getTag());
+        } else {
+            clanGuards.put(clan.getTag(), guard);
+        }
+    }
+
+    /**
+     * Waits for the queued writes of the clan to reach the database.
+     * Writes made while holding a lock call this before releasing it, so the next holder reads them.
+     *
+     * @param clan          the clan
+     * @param timeoutMillis how long to wait
+     * @return false if the writes did not complete in time
+     */
+    public boolean flushClan(@NotNull Clan clan, long timeoutMillis) {
+        if (!plugin.getSettingsManager().is(PERFORMANCE_USE_THREADS)) {
+            return true;
+        }
+        if (core.getWriter().flush(clanShard(clan), timeoutMillis)) {
+            return true;
         }
+        plugin.getLogger().warning(String.format("The writes of Clan %s did not complete in %d ms", clan.getTag(),
+                timeoutMillis));
+        return false;
     }
 
     private PreparedStatement prepareUpdateClanStatement(Connection connection) throws SQLException {
@@ -822,24 +955,36 @@ public final class StorageManager {
     }
 
     private void setValues(PreparedStatement statement, Clan clan) throws SQLException {
-        statement.setString(1, Helper.ranksToJson(clan.getRanks(), clan.getDefaultRank()));
-        statement.setString(2, YAMLSerializer.serialize(clan.getBanner()));
-        statement.setString(3, clan.getDescription());
-        statement.setInt(4, clan.isMemberFeeEnabled() ? 1 : 0);
-        statement.setDouble(5, clan.getMemberFee());
-        statement.setInt(6, clan.isVerified() ? 1 : 0);
-        statement.setString(7, clan.getTag());
-        statement.setString(8, clan.getColorTag());
-        statement.setString(9, clan.getName());
-        statement.setInt(10, clan.isFriendlyFire() ? 1 : 0);
-        statement.setLong(11, clan.getFounded());
-        statement.setLong(12, clan.getLastUsed());
-        statement.setString(13, clan.getPackedAllies());
-        statement.setString(14, clan.getPackedRivals());
-        statement.setString(15, clan.getPackedBb());
-        statement.setDouble(16, clan.getBalance());
-        statement.setString(17, clan.getFlags());
-        statement.setString(18, clan.getTag());
+        setValues(statement, getValues(clan));
+    }
+
+    private Object[] getValues(Clan clan) {
+        return new Object[]{
+                Helper.ranksToJson(clan.getRanks(), clan.getDefaultRank()),
+                YAMLSerializer.serialize(clan.getBanner()),
+                clan.getDescription(),
+                clan.isMemberFeeEnabled() ? 1 : 0,
+                clan.getMemberFee(),
+                clan.isVerified() ? 1 : 0,
+                clan.getTag(),
+                clan.getColorTag(),
+                clan.getName(),
+                clan.isFriendlyFire() ? 1 : 0,
+                clan.getFounded(),
+                clan.getLastUsed(),
+                clan.getPackedAllies(),
+                clan.getPackedRivals(),
+                clan.getPackedBb(),
+                clan.getBalance(),
+                clan.getFlags(),
+                clan.getTag()
+        };
+    }
+
+    private void setValues(PreparedStatement statement, Object[] values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            statement.setObject(i + 1, values[i]);
+        }
     }
 
     /**
@@ -847,9 +992,7 @@ public final class StorageManager {
      */
     public void deleteClan(Clan clan) {
         String query = "DELETE FROM `" + getPrefixedTable("clans") + "` WHERE tag = '" + clan.getTag() + "';";
-        core.executeUpdateWithCallback(query, () -> {
-            plugin.getProxyManager().sendDelete(clan);
-        });
+        core.executeUpdate(query, clanShard(clan), () -> plugin.getProxyManager().sendDelete(clan));
     }
 
     /**
@@ -861,9 +1004,7 @@ public final class StorageManager {
         String table = getPrefixedTable("players");
         
         // Callback to notify via ProxyManager AFTER the insert completes
-        Runnable notifyOtherServers = () -> {
-            plugin.getProxyManager().sendUpdate(cp);
-        };
+        Runnable notifyOtherServers = plugin.getProxyManager().prepareUpdate(cp);
         
         if (core instanceof MySQLCore) {
             // MySQL: Use INSERT ... ON DUPLICATE KEY UPDATE to handle race conditions in multi-server
@@ -876,7 +1017,7 @@ public final class StorageManager {
                     cp.getJoinDate() + "','" + Helper.escapeQuotes(cp.getPackedPastClans()) + "','" +
                     Helper.escapeQuotes(cp.getFlags()) + "') " +
                     "ON DUPLICATE KEY UPDATE `name` = VALUES(`name`), `last_seen` = VALUES(`last_seen`);";
-            core.executeUpdateWithCallback(query, notifyOtherServers);
+            core.executeUpdate(query, playerShard(cp), notifyOtherServers);
         } else {
             // SQLite: Use INSERT OR IGNORE (simpler, doesn't update on conflict)
             String query = "INSERT OR IGNORE INTO `" + table + "` (`uuid`, `name`, `leader`, `tag`, `friendly_fire`, `neutral_kills`, " +
@@ -887,7 +1028,7 @@ public final class StorageManager {
                     "," + cp.getCivilianKills() + "," + cp.getDeaths() + ",'" + cp.getLastSeen() + "',' " +
                     cp.getJoinDate() + "','" + Helper.escapeQuotes(cp.getPackedPastClans()) + "','" +
                     Helper.escapeQuotes(cp.getFlags()) + "');";
-            core.executeUpdateWithCallback(query, notifyOtherServers);
+            core.executeUpdate(query, playerShard(cp), notifyOtherServers);
         }
     }
 
@@ -897,12 +1038,7 @@ public final class StorageManager {
      */
     @Deprecated
     public void updateClanPlayerAsync(final ClanPlayer cp) {
-    	new BukkitRunnable() {
-			@Override
-			public void run() {
-                updateClanPlayer(cp);
-			}
-		}.runTaskAsynchronously(plugin);
+        updateClanPlayer(cp, true);
     }
 
     /**
@@ -910,6 +1046,10 @@ public final class StorageManager {
      *
      */
     public void updateClanPlayer(ClanPlayer cp) {
+        updateClanPlayer(cp, false);
+    }
+
+    private void updateClanPlayer(ClanPlayer cp, boolean async) {
         cp.updateLastSeen();
         
         // When Redis is enabled, always save immediately to ensure data is in DB before notifying other servers
@@ -919,14 +1059,14 @@ public final class StorageManager {
             modifiedClanPlayers.add(cp);
             return;
         }
-        try (PreparedStatement st = prepareUpdateClanPlayerStatement(core.getConnection())) {
-            setValues(st, cp);
-            st.executeUpdate();
-            // Notify AFTER saving to database
-            plugin.getProxyManager().sendUpdate(cp);
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, String.format("Error updating ClanPlayer %s", cp.getName()), ex);
-        }
+        // the values and the update are read here, the player's collections are not safe to iterate from the writer thread
+        Object[] values = getValues(cp);
+        updateRow(playerShard(cp), connection -> {
+            try (PreparedStatement st = prepareUpdateClanPlayerStatement(connection)) {
+                setValues(st, values);
+                st.executeUpdate();
+            }
+        }, plugin.getProxyManager().prepareUpdate(cp), async, String.format("Error updating ClanPlayer %s", cp.getName()));
     }
 
     private PreparedStatement prepareUpdateClanPlayerStatement(Connection connection) throws SQLException {
@@ -937,22 +1077,28 @@ public final class StorageManager {
     }
 
     private void setValues(PreparedStatement statement, ClanPlayer cp) throws SQLException {
-        statement.setString(1, Helper.toLanguageTag(cp.getLocale()));
-        statement.setString(2, Helper.resignTimesToJson(cp.getResignTimes()));
-        statement.setInt(3, cp.isLeader() ? 1 : 0);
-        statement.setString(4, cp.getTag());
-        statement.setInt(5, cp.isFriendlyFire() ? 1 : 0);
-        statement.setInt(6, cp.getNeutralKills());
-        statement.setInt(7, cp.getAllyKills());
-        statement.setInt(8, cp.getRivalKills());
-        statement.setInt(9, cp.getCivilianKills());
-        statement.setInt(10, cp.getDeaths());
-        statement.setLong(11, cp.getLastSeen());
-        statement.setString(12, cp.getPackedPastClans());
-        statement.setInt(13, cp.isTrusted() ? 1 : 0);
-        statement.setString(14, cp.getFlags());
-        statement.setString(15, cp.getName());
-        statement.setString(16, cp.getUniqueId().toString());
+        setValues(statement, getValues(cp));
+    }
+
+    private Object[] getValues(ClanPlayer cp) {
+        return new Object[]{
+                Helper.toLanguageTag(cp.getLocale()),
+                Helper.resignTimesToJson(cp.getResignTimes()),
+                cp.isLeader() ? 1 : 0,
+                cp.getTag(),
+                cp.isFriendlyFire() ? 1 : 0,
+                cp.getNeutralKills(),
+                cp.getAllyKills(),
+                cp.getRivalKills(),
+                cp.getCivilianKills(),
+                cp.getDeaths(),
+                cp.getLastSeen(),
+                cp.getPackedPastClans(),
+                cp.isTrusted() ? 1 : 0,
+                cp.getFlags(),
+                cp.getName(),
+                cp.getUniqueId().toString()
+        };
     }
 
     /**
@@ -966,9 +1112,7 @@ public final class StorageManager {
         }
         
         String query = "DELETE FROM `" + getPrefixedTable("players") + "` WHERE uuid = '" + cp.getUniqueId() + "';";
-        core.executeUpdateWithCallback(query, () -> {
-            plugin.getProxyManager().sendDelete(cp);
-        });
+        core.executeUpdate(query, playerShard(cp), () -> plugin.getProxyManager().sendDelete(cp));
         deleteKills(cp.getUniqueId());
     }
 
@@ -978,24 +1122,280 @@ public final class StorageManager {
      */
     @Deprecated
     public void insertKill(Player attacker, String attackerTag, Player victim, String victimTag, String type) {
-        String query = "INSERT INTO `" + getPrefixedTable("kills") + "` (  `attacker_uuid`, `attacker`, `attacker_tag`, `victim_uuid`, `victim`, `victim_tag`, `kill_type`) ";
-    	String values = "VALUES ( '" + attacker.getUniqueId() + "','" + attacker.getName() + "','" + attackerTag + "','" + victim.getUniqueId() + "','" + victim.getName() + "','" + victimTag + "','" + type + "');";
-    	core.executeUpdate(query + values);
+        insertKill(new PendingKill(attacker.getUniqueId().toString(), attacker.getName(), attackerTag,
+                victim.getUniqueId().toString(), victim.getName(), victimTag, type, LocalDateTime.now()));
     }
 
     /**
-     * Insert a kill into the database
+     * Insert a kill into the database.
+     * Kills are queued and written in batches, so kills that happen while a batch is waiting share its insert.
      *
      * @param attacker the attacker
      * @param victim the victim
      * @param type the kill type
      */
     public void insertKill(@NotNull ClanPlayer attacker, @NotNull ClanPlayer victim, @NotNull String type, @NotNull LocalDateTime time) {
-        String query = "INSERT INTO `" + getPrefixedTable("kills") + "` (  `attacker_uuid`, `attacker`, `attacker_tag`, `victim_uuid`, " +
-                "`victim`, `victim_tag`, `kill_type`, `created_at`) ";
-        String values = "VALUES ( '" + attacker.getUniqueId() + "','" + attacker.getName() + "','" + attacker.getTag()
-                + "','" + victim.getUniqueId() + "','" + victim.getName() + "','" + victim.getTag() + "','" + type + "','" + time + "');";
-        core.executeUpdate(query + values);
+        insertKill(new PendingKill(attacker.getUniqueId().toString(), attacker.getName(), attacker.getTag(),
+                victim.getUniqueId().toString(), victim.getName(), victim.getTag(), type, time));
+    }
+
+    private void insertKill(PendingKill kill) {
+        if (pendingKillCount.incrementAndGet() > MAX_PENDING_KILLS) {
+            pendingKillCount.decrementAndGet();
+            if (killsOverflowing.compareAndSet(false, true)) {
+                plugin.getLogger().severe(String.format("%d kills are waiting to be written, new kills are dropped " +
+                        "until the database catches up", MAX_PENDING_KILLS));
+            }
+            return;
+        }
+        pendingKills.add(kill);
+        if (plugin.getSettingsManager().is(PERFORMANCE_USE_THREADS)) {
+            // the batch drains every pending kill when it runs, so a waiting batch absorbs the new kill
+            core.getWriter().submit(KILLS_SHARD, "insert", this::insertPendingKills, null);
+            return;
+        }
+        try (Connection connection = core.getPool().getConnection()) {
+            insertPendingKills(connection);
+        } catch (SQLException ex) {
+            plugin.getLogger().log(Level.SEVERE, "Error inserting kills", ex);
+        }
+    }
+
+    private void insertPendingKills(Connection connection) throws SQLException {
+        List<PendingKill> batch = new ArrayList<>();
+        PendingKill kill;
+        while ((kill = pendingKills.poll()) != null) {
+            pendingKillCount.decrementAndGet();
+            batch.add(kill);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        killsOverflowing.set(false);
+        try {
+            insertKills(connection, batch);
+        } catch (SQLException | RuntimeException ex) {
+            List<PendingKill> failed = batch;
+            if (isUsable(connection, ex)) {
+                // the database works, so some kill is broken: written one by one, the others get through
+                if (batch.size() > 1) {
+                    failed = insertEach(connection, batch);
+                } else {
+                    batch.removeIf(this::giveUp);
+                }
+            }
+            requeueKills(failed);
+            if (!failed.isEmpty()) {
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * @return the kills that could not be written and are retried later
+     */
+    private List<PendingKill> insertEach(Connection connection, List<PendingKill> batch) {
+        List<PendingKill> failed = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            PendingKill kill = batch.get(i);
+            try {
+                insertKills(connection, Collections.singletonList(kill));
+            } catch (SQLException | RuntimeException ex) {
+                if (!isUsable(connection, ex)) {
+                    failed.addAll(batch.subList(i, batch.size()));
+                    break;
+                }
+                if (!giveUp(kill)) {
+                    failed.add(kill);
+                }
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Rolls the failed transaction back
+     *
+     * @return false if the failure is not caused by the data, e.g. the connection was lost
+     */
+    private boolean isUsable(Connection connection, Exception ex) {
+        if (ex instanceof SQLTransientException || ex instanceof SQLRecoverableException) {
+            return false;
+        }
+        try {
+            connection.rollback();
+            return connection.isValid(2);
+        } catch (SQLException rollbackEx) {
+            return false;
+        }
+    }
+
+    private boolean giveUp(PendingKill kill) {
+        if (++kill.attempts < MAX_KILL_ATTEMPTS) {
+            return false;
+        }
+        plugin.getLogger().severe(String.format("Dropping a kill that failed to be written %d times: %s killed %s " +
+                "(%s, %s)", kill.attempts, kill.attackerUniqueId, kill.victimUniqueId, kill.type, kill.time));
+        return true;
+    }
+
+    /**
+     * Puts the kills back in front of the queue, so they are still written before the newer ones
+     */
+    private void requeueKills(List<PendingKill> kills) {
+        for (int i = kills.size() - 1; i >= 0; i--) {
+            pendingKills.addFirst(kills.get(i));
+            pendingKillCount.incrementAndGet();
+        }
+    }
+
+    private void insertKills(Connection connection, List<PendingKill> batch) throws SQLException {
+        // the raw rows and the aggregate are written together, the pool rolls back if the batch fails
+        connection.setAutoCommit(false);
+        String sql = "INSERT INTO `" + getPrefixedTable("kills") + "` (`attacker_uuid`, `attacker`, `attacker_tag`, " +
+                "`victim_uuid`, `victim`, `victim_tag`, `kill_type`, `created_at`) VALUES (?, ?, ?, ?, ?, ?, ?, ?);";
+        try (PreparedStatement pst = connection.prepareStatement(sql)) {
+            for (PendingKill pending : batch) {
+                pst.setString(1, pending.attackerUniqueId);
+                pst.setString(2, pending.attacker);
+                pst.setString(3, pending.attackerTag);
+                pst.setString(4, pending.victimUniqueId);
+                pst.setString(5, pending.victim);
+                pst.setString(6, pending.victimTag);
+                pst.setString(7, pending.type);
+                pst.setString(8, pending.time);
+                pst.addBatch();
+            }
+            pst.executeBatch();
+        }
+        updateKillStats(connection, batch);
+        connection.commit();
+    }
+
+    private void updateKillStats(Connection connection, List<PendingKill> kills) throws SQLException {
+        Map<String, PendingKill> latest = new LinkedHashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (PendingKill kill : kills) {
+            String key = kill.attackerUniqueId + ' ' + kill.victimUniqueId + ' ' + kill.type;
+            latest.put(key, kill);
+            counts.merge(key, 1, Integer::sum);
+        }
+        if (!upsertSupported) {
+            updateKillStatsSeparately(connection, latest, counts);
+            return;
+        }
+        String sql = "INSERT INTO `" + getPrefixedTable("kill_stats") + "` (`attacker_uuid`, `attacker`, `victim_uuid`, " +
+                "`victim`, `kill_type`, `kills`) VALUES (?, ?, ?, ?, ?, ?) ";
+        if (plugin.getSettingsManager().is(MYSQL_ENABLE)) {
+            sql += "ON DUPLICATE KEY UPDATE `kills` = `kills` + VALUES(`kills`), `attacker` = VALUES(`attacker`), " +
+                    "`victim` = VALUES(`victim`);";
+        } else {
+            sql += "ON CONFLICT (`attacker_uuid`, `victim_uuid`, `kill_type`) DO UPDATE SET " +
+                    "`kills` = `kills` + excluded.`kills`, `attacker` = excluded.`attacker`, `victim` = excluded.`victim`;";
+        }
+        try (PreparedStatement pst = connection.prepareStatement(sql)) {
+            for (Map.Entry<String, PendingKill> entry : latest.entrySet()) {
+                PendingKill kill = entry.getValue();
+                pst.setString(1, kill.attackerUniqueId);
+                pst.setString(2, kill.attacker);
+                pst.setString(3, kill.victimUniqueId);
+                pst.setString(4, kill.victim);
+                pst.setString(5, kill.type);
+                pst.setInt(6, counts.get(entry.getKey()));
+                pst.addBatch();
+            }
+            pst.executeBatch();
+        }
+    }
+
+    /**
+     * Updates the counts for SQLite versions without upserts, inserting the ones that don't exist yet.
+     * Kills are written by a single writer, so no other insert can happen in between.
+     */
+    private void updateKillStatsSeparately(Connection connection, Map<String, PendingKill> latest,
+                                           Map<String, Integer> counts) throws SQLException {
+        String table = getPrefixedTable("kill_stats");
+        String update = "UPDATE `" + table + "` SET `kills` = `kills` + ?, `attacker` = ?, `victim` = ? " +
+                "WHERE `attacker_uuid` = ? AND `victim_uuid` = ? AND `kill_type` = ?;";
+        String insert = "INSERT INTO `" + table + "` (`attacker_uuid`, `attacker`, `victim_uuid`, `victim`, " +
+                "`kill_type`, `kills`) VALUES (?, ?, ?, ?, ?, ?);";
+        try (PreparedStatement updatePst = connection.prepareStatement(update);
+             PreparedStatement insertPst = connection.prepareStatement(insert)) {
+            for (Map.Entry<String, PendingKill> entry : latest.entrySet()) {
+                PendingKill kill = entry.getValue();
+                int kills = counts.get(entry.getKey());
+                updatePst.setInt(1, kills);
+                updatePst.setString(2, kill.attacker);
+                updatePst.setString(3, kill.victim);
+                updatePst.setString(4, kill.attackerUniqueId);
+                updatePst.setString(5, kill.victimUniqueId);
+                updatePst.setString(6, kill.type);
+                if (updatePst.executeUpdate() > 0) {
+                    continue;
+                }
+                insertPst.setString(1, kill.attackerUniqueId);
+                insertPst.setString(2, kill.attacker);
+                insertPst.setString(3, kill.victimUniqueId);
+                insertPst.setString(4, kill.victim);
+                insertPst.setString(5, kill.type);
+                insertPst.setInt(6, kills);
+                insertPst.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Deletes, in chunks, the kills older than the cutoff. Their counts are kept in the kill_stats table.
+     * Kills without a date were recorded before dates were saved and are deleted as well.
+     *
+     * @param cutoff    kills before this moment are deleted
+     * @param batchSize the maximum amount of kills deleted per statement
+     * @param cancelled checked between chunks, stops the purge when true
+     * @return the amount of deleted kills
+     */
+    public int purgeKills(@NotNull LocalDateTime cutoff, int batchSize, @NotNull BooleanSupplier cancelled) {
+        String table = getPrefixedTable("kills");
+        String query;
+        if (plugin.getSettingsManager().is(MYSQL_ENABLE)) {
+            query = "DELETE FROM `" + table + "` WHERE `created_at` IS NULL OR `created_at` < ? LIMIT ?;";
+        } else {
+            query = "DELETE FROM `" + table + "` WHERE rowid IN (SELECT rowid FROM `" + table +
+                    "` WHERE `created_at` IS NULL OR `created_at` < ? LIMIT ?);";
+        }
+        int total = 0;
+        int deleted;
+        do {
+            // a connection per chunk, so queued writes are not held back until the purge ends
+            try (Connection connection = core.getPool().getConnection();
+                 PreparedStatement pst = connection.prepareStatement(query)) {
+                pst.setString(1, cutoff.toString());
+                pst.setInt(2, batchSize);
+                deleted = pst.executeUpdate();
+            } catch (SQLException ex) {
+                plugin.getLogger().log(Level.SEVERE, "Error purging old kills", ex);
+                break;
+            }
+            total += deleted;
+        } while (deleted >= batchSize && !cancelled.getAsBoolean());
+        return total;
+    }
+
+    /**
+     * Partitions the MySQL kills table by month, if needed, and drops the partitions older than the cutoff
+     *
+     * @param cutoff kills before this day are dropped
+     * @return the amount of dropped partitions
+     */
+    public int dropKillPartitions(@NotNull LocalDate cutoff) {
+        if (!plugin.getSettingsManager().is(MYSQL_ENABLE)) {
+            return 0;
+        }
+        try {
+            return new KillPartitioning(core.getPool(), plugin.getLogger(), getPrefixedTable("kills")).maintain(cutoff);
+        } catch (SQLException ex) {
+            plugin.getLogger().log(Level.SEVERE, "Error maintaining the kills partitions", ex);
+            return 0;
+        }
     }
 
     /**
@@ -1005,7 +1405,9 @@ public final class StorageManager {
     @Deprecated
     public void deleteKills(String playerName) {
         String query = "DELETE FROM `" + getPrefixedTable("kills") + "` WHERE `attacker` = '" + playerName + "'";
-        core.executeUpdate(query);
+        core.executeUpdate(query, KILLS_SHARD, null);
+        query = "DELETE FROM `" + getPrefixedTable("kill_stats") + "` WHERE `attacker` = '" + playerName + "'";
+        core.executeUpdate(query, KILLS_SHARD, null);
     }
 
     /**
@@ -1014,7 +1416,10 @@ public final class StorageManager {
      */
     public void deleteKills(UUID playerUniqueId) {
         String query = "DELETE FROM `" + getPrefixedTable("kills") + "` WHERE `attacker_uuid` = '" + playerUniqueId + "'";
-        core.executeUpdate(query);
+        core.executeUpdate(query, KILLS_SHARD, null);
+        query = "DELETE FROM `" + getPrefixedTable("kill_stats") + "` WHERE `attacker_uuid` = '" + playerUniqueId + "'";
+        core.executeUpdate(query, KILLS_SHARD, null);
+        plugin.getClanManager().clearKillCounts(playerUniqueId);
     }
 
     /**
@@ -1026,31 +1431,22 @@ public final class StorageManager {
      *
      */
     public Map<String, Integer> getKillsPerPlayer(String playerName) {
-        HashMap<String, Integer> out = new HashMap<>();
-
-        String query = "SELECT victim, count(victim) AS kills FROM `" + getPrefixedTable("kills") + "` WHERE attacker = '" + playerName + "' GROUP BY victim ORDER BY count(victim) DESC;";
-        ResultSet res = core.select(query);
-
-        if (res != null) {
-            try {
-                while (res.next()) {
-                    try {
-                        String victim = res.getString("victim");
-                        int kills = res.getInt("kills");
-                        out.put(victim, kills);
-                    } catch (Exception ex) {
-                        plugin.getLogger().info(ex.getMessage());
-
-
-                    }
-                }
-            } catch (SQLException ex) {
-                plugin.getLogger().severe(String.format("An Error occurred: %s", ex.getErrorCode()));
-                plugin.getLogger().log(Level.SEVERE, null, ex);
-            }
-        }
+        String query = "SELECT MAX(victim) AS victim, SUM(kills) AS kills FROM `" + getPrefixedTable("kill_stats") +
+                "` WHERE attacker = ? GROUP BY victim_uuid ORDER BY 2 DESC;";
+        return selectKills(query, playerName, false);
+    }
 
-        return out;
+    /**
+     * Returns a map of victim-{@literal >}count of all kills that specific player did
+     *
+     * @param playerUniqueId the attacker UUID
+     *
+     * @return a map of kills per victim
+     */
+    public Map<String, Integer> getKillsPerPlayer(@NotNull UUID playerUniqueId) {
+        String query = "SELECT MAX(victim) AS victim, SUM(kills) AS kills FROM `" + getPrefixedTable("kill_stats") +
+                "` WHERE attacker_uuid = ? GROUP BY victim_uuid ORDER BY 2 DESC;";
+        return selectKills(query, playerUniqueId.toString(), false);
     }
 
     /**
@@ -1059,31 +1455,28 @@ public final class StorageManager {
      * @return a map of kills per attacker+victim
      */
     public Map<String, Integer> getMostKilled() {
-        HashMap<String, Integer> out = new HashMap<>();
-
-        String query = "SELECT attacker, victim, count(victim) AS kills FROM `" + getPrefixedTable("kills") + "` GROUP BY attacker, victim ORDER BY 3 DESC;";
-        ResultSet res = core.select(query);
+        String query = "SELECT MAX(attacker) AS attacker, MAX(victim) AS victim, SUM(kills) AS kills FROM `" +
+                getPrefixedTable("kill_stats") + "` GROUP BY attacker_uuid, victim_uuid ORDER BY 3 DESC;";
+        return selectKills(query, null, true);
+    }
 
-        if (res != null) {
-            try {
+    private Map<String, Integer> selectKills(String query, @Nullable String parameter, boolean withAttacker) {
+        HashMap<String, Integer> out = new HashMap<>();
+        try (Connection connection = core.getReadPool().getConnection();
+             PreparedStatement pst = connection.prepareStatement(query)) {
+            if (parameter != null) {
+                pst.setString(1, parameter);
+            }
+            try (ResultSet res = pst.executeQuery()) {
                 while (res.next()) {
-                    try {
-                        String attacker = res.getString("attacker");
-                        String victim = res.getString("victim");
-                        int kills = res.getInt("kills");
-                        out.put(attacker + " " + victim, kills);
-                    } catch (Exception ex) {
-                        plugin.getLogger().info(ex.getMessage());
-
-
-                    }
+                    String victim = res.getString("victim");
+                    String key = withAttacker ? res.getString("attacker") + " " + victim : victim;
+                    out.put(key, res.getInt("kills"));
                 }
-            } catch (SQLException ex) {
-                plugin.getLogger().severe(String.format("An Error occurred: %s", ex.getErrorCode()));
-                plugin.getLogger().log(Level.SEVERE, null, ex);
             }
+        } catch (SQLException ex) {
+            plugin.getLogger().log(Level.SEVERE, String.format("Error executing query: %s", query), ex);
         }
-
         return out;
     }
 
@@ -1115,6 +1508,19 @@ public final class StorageManager {
 		}.runTaskAsynchronously(plugin);
     }
 
+    /**
+     * Gets, asynchronously, a map of victim-{@literal >}count of all kills that specific player did and notifies via callback when it's ready
+     *
+     */
+    public void getKillsPerPlayer(final @NotNull UUID playerUniqueId, final DataCallback<Map<String, Integer>> callback) {
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                callback.onResultReady(getKillsPerPlayer(playerUniqueId));
+            }
+        }.runTaskAsynchronously(plugin);
+    }
+
     /**
      * Callback that returns some data
      *
@@ -1129,6 +1535,33 @@ public final class StorageManager {
     	void onResultReady(T data);
     }
 
+    /**
+     * A kill waiting to be inserted, with the names and tags the players had when it happened
+     */
+    private static final class PendingKill {
+        private final String attackerUniqueId;
+        private final String attacker;
+        private final String attackerTag;
+        private final String victimUniqueId;
+        private final String victim;
+        private final String victimTag;
+        private final String type;
+        private final String time;
+        private int attempts;
+
+        private PendingKill(String attackerUniqueId, String attacker, String attackerTag, String victimUniqueId,
+                            String victim, String victimTag, String type, LocalDateTime time) {
+            this.attackerUniqueId = attackerUniqueId;
+            this.attacker = attacker;
+            this.attackerTag = attackerTag;
+            this.victimUniqueId = victimUniqueId;
+            this.victim = victim;
+            this.victimTag = victimTag;
+            this.type = type;
+            this.time = time.toString();
+        }
+    }
+
     /**
      * Updates the database to the latest version
      *
@@ -1239,6 +1672,47 @@ public final class StorageManager {
             query = "ALTER TABLE `" + getPrefixedTable("kills") + "` ADD `created_at` datetime NULL;";
             core.execute(query);
         }
+
+        // Kills aggregate
+        createIndex("kills", "idx_kills_attacker_uuid", "`attacker_uuid`");
+        createIndex("kills", "idx_kills_created_at", "`created_at`");
+        if (!core.existsTable(getPrefixedTable("kill_stats"))) {
+            createKillStats();
+        }
+    }
+
+    private void createIndex(String table, String index, String columns) {
+        if (core.existsIndex(getPrefixedTable(table), index)) {
+            return;
+        }
+        plugin.getLogger().info(String.format("Creating index %s on table %s", index, getPrefixedTable(table)));
+        core.execute("CREATE INDEX `" + index + "` ON `" + getPrefixedTable(table) + "` (" + columns + ");");
+    }
+
+    /**
+     * Creates the kill_stats table, which keeps the amount of kills per attacker, victim and kill type,
+     * and fills it with the kills already recorded
+     */
+    private void createKillStats() {
+        plugin.getLogger().info("Creating table: " + getPrefixedTable("kill_stats"));
+        core.execute("CREATE TABLE IF NOT EXISTS `" + getPrefixedTable("kill_stats") + "` ("
+                + " `attacker_uuid` varchar(36) NOT NULL,"
+                + " `attacker` varchar(16) NOT NULL,"
+                + " `victim_uuid` varchar(36) NOT NULL,"
+                + " `victim` varchar(16) NOT NULL,"
+                + " `kill_type` varchar(1) NOT NULL,"
+                + " `kills` int(11) NOT NULL default '0',"
+                + " PRIMARY KEY (`attacker_uuid`, `victim_uuid`, `kill_type`));");
+        createIndex("kill_stats", "idx_kill_stats_attacker", "`attacker`");
+        createIndex("kill_stats", "idx_kill_stats_kills", "`kills`");
+
+        // kills recorded before the UUID migration have no UUIDs and cannot be aggregated
+        plugin.getLogger().info("Aggregating recorded kills, this may take a while...");
+        core.execute("INSERT INTO `" + getPrefixedTable("kill_stats") + "` (`attacker_uuid`, `attacker`, " +
+                "`victim_uuid`, `victim`, `kill_type`, `kills`) SELECT `attacker_uuid`, MAX(`attacker`), " +
+                "`victim_uuid`, MAX(`victim`), `kill_type`, COUNT(*) FROM `" + getPrefixedTable("kills") + "` " +
+                "WHERE `attacker_uuid` IS NOT NULL AND `victim_uuid` IS NOT NULL " +
+                "GROUP BY `attacker_uuid`, `victim_uuid`, `kill_type`;");
     }
 
     /**
@@ -1326,6 +1800,14 @@ public final class StorageManager {
         return plugin.getSettingsManager().getString(MYSQL_TABLE_PREFIX) + name;
     }
 
+    private String clanShard(Clan clan) {
+        return "clan:" + clan.getTag();
+    }
+
+    private String playerShard(ClanPlayer cp) {
+        return "player:" + cp.getUniqueId();
+    }
+
 	/**
 	 * Saves modified Clans and ClanPlayers to the database
      * @since 2.10.2
@@ -1335,7 +1817,8 @@ public final class StorageManager {
      * </p>
 	 */
 	public void saveModified() {
-        try (PreparedStatement pst = prepareUpdateClanPlayerStatement(core.getConnection())) {
+        try (Connection connection = core.getPool().getConnection();
+             PreparedStatement pst = prepareUpdateClanPlayerStatement(connection)) {
             //removing purged players
             modifiedClanPlayers.retainAll(plugin.getClanManager().getAllClanPlayers());
             for (ClanPlayer cp : modifiedClanPlayers) {
@@ -1348,7 +1831,8 @@ public final class StorageManager {
         } catch (SQLException ex) {
             plugin.getLogger().log(Level.SEVERE, "Error saving modified ClanPlayers:", ex);
         }
-        try (PreparedStatement pst = prepareUpdateClanStatement(core.getConnection())) {
+        try (Connection connection = core.getPool().getConnection();
+             PreparedStatement pst = prepareUpdateClanStatement(connection)) {
             //removing disbanded clans
             modifiedClans.retainAll(plugin.getClanManager().getClans());
             for (Clan clan : modifiedClans) {
@@ -1404,6 +1888,29 @@ public final class StorageManager {
         reloadClanMembers(existingClan);
     }
 
+    /**
+     * Reads the balance of a clan from the database, it may be called from any thread
+     *
+     * @param tag the clan's tag
+     * @return the balance, or null if the clan was not found or an error occurred
+     */
+    @Nullable
+    public Double retrieveClanBalance(@NotNull String tag) {
+        String query = "SELECT balance FROM `" + getPrefixedTable("clans") + "` WHERE tag = ?;";
+        try (Connection connection = core.getReadPool().getConnection();
+             PreparedStatement pst = connection.prepareStatement(query)) {
+            pst.setString(1, tag);
+            try (ResultSet res = pst.executeQuery()) {
+                if (res.next()) {
+                    return res.getDouble("balance");
+                }
+            }
+        } catch (SQLException ex) {
+            plugin.getLogger().log(Level.SEVERE, String.format("Error executing query: %s", query), ex);
+        }
+        return null;
+    }
+
     /**
      * Reloads all members of a clan from the database.
      * Called after reloading a clan to ensure member list is up-to-date.
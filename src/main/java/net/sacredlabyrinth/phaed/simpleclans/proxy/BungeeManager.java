@@ -191,6 +191,18 @@ public final class BungeeManager implements ProxyManager, PluginMessageListener
         forwardToAllServers(UPDATE_CLANPLAYER_CHANNEL, gson.toJson(cp));
     }
 
+    @Override
+    public Runnable prepareUpdate(Clan clan) {
+        String json = gson.toJson(clan);
+        return () -> forwardToAllServers(UPDATE_CLAN_CHANNEL, json);
+    }
+
+    @Override
+    public Runnable prepareUpdate(ClanPlayer cp) {
+        String json = gson.toJson(cp);
+        return () -> forwardToAllServers(UPDATE_CLANPLAYER_CHANNEL, json);
+    }
+
     public SimpleClans getPlugin() {
         return plugin;
     }
@@ -18,6 +18,20 @@ public interface ProxyManager {
 
     void sendUpdate(ClanPlayer cp);
 
+    /**
+     * Reads the clan on the calling thread, the returned task sends the update, e.g. once the clan is saved
+     */
+    default Runnable prepareUpdate(Clan clan) {
+        return () -> sendUpdate(clan);
+    }
+
+    /**
+     * Reads the player on the calling thread, the returned task sends the update, e.g. once the player is saved
+     */
+    default Runnable prepareUpdate(ClanPlayer cp) {
+        return () -> sendUpdate(cp);
+    }
+
     void sendDelete(Clan clan);
 
     void sendDelete(ClanPlayer cp);
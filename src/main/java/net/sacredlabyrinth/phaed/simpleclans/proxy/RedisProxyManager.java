@@ -1,21 +1,22 @@
 package net.sacredlabyrinth.phaed.simpleclans.proxy;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import net.sacredlabyrinth.phaed.simpleclans.Clan;
 import net.sacredlabyrinth.phaed.simpleclans.ClanPlayer;
 import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
 import net.sacredlabyrinth.phaed.simpleclans.chat.SCMessage;
 import net.sacredlabyrinth.phaed.simpleclans.redis.RedisManager;
+import net.sacredlabyrinth.phaed.simpleclans.redis.codec.PayloadCodec;
+import net.sacredlabyrinth.phaed.simpleclans.redis.presence.PresenceRegistry;
+import net.sacredlabyrinth.phaed.simpleclans.redis.sync.DeltaSync;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.HashSet;
-import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import static net.sacredlabyrinth.phaed.simpleclans.ClanPlayer.Channel;
 
@@ -31,15 +32,12 @@ import static net.sacredlabyrinth.phaed.simpleclans.ClanPlayer.Channel;
  */
 public class RedisProxyManager implements ProxyManager {
 
-    private static final Gson GSON = new Gson();
-    
     private final SimpleClans plugin;
     private final RedisManager redisManager;
     private final String serverId;
     
-    // Cache of online players across all servers (updated via Pub/Sub)
-    // Key: lowercase name for case-insensitive lookup, Value: PlayerInfo with name and server
-    private final Map<String, PlayerInfo> globalOnlinePlayers = new ConcurrentHashMap<>();
+    // Online players across all servers, mirrored from Redis
+    private final PresenceRegistry presence;
     
     /**
      * Holds information about a remote player.
@@ -66,6 +64,7 @@ public class RedisProxyManager implements ProxyManager {
         this.plugin = plugin;
         this.redisManager = redisManager;
         this.serverId = redisManager.getServerId();
+        this.presence = Objects.requireNonNull(redisManager.getPresence());
         
         plugin.getLogger().info("[Redis] RedisProxyManager initialized with server-id: " + serverId);
     }
@@ -77,12 +76,8 @@ public class RedisProxyManager implements ProxyManager {
 
     @Override
     public boolean isOnline(String playerName) {
-        // Check local first
-        if (Bukkit.getOnlinePlayers().stream().anyMatch(p -> p.getName().equalsIgnoreCase(playerName))) {
-            return true;
-        }
-        // Check global cache
-        return globalOnlinePlayers.containsKey(playerName.toLowerCase());
+        // Players of every server, including the players not registered here, e.g. in blacklisted worlds
+        return presence.isOnline(playerName) || Bukkit.getPlayerExact(playerName) != null;
     }
 
     @Override
@@ -111,7 +106,7 @@ public class RedisProxyManager implements ProxyManager {
         json.addProperty("message", formattedMessage);
         json.addProperty("rawMessage", message.getContent());
         
-        redisManager.publish(RedisManager.CHANNEL_CHAT, GSON.toJson(json));
+        redisManager.publish(redisManager.getChatChannel(sender.getClan().getTag()), encode(json));
     }
 
     @Override
@@ -143,8 +138,8 @@ public class RedisProxyManager implements ProxyManager {
         if (!redisManager.isInitialized()) {
             return;
         }
-        // Invalidate cache on other servers
-        redisManager.invalidate("clan", clan.getTag());
+        // Send the changed fields, other servers reload the clan if they can't apply them
+        redisManager.getDeltaSync().publish(clan);
     }
 
     @Override
@@ -152,8 +147,26 @@ public class RedisProxyManager implements ProxyManager {
         if (!redisManager.isInitialized()) {
             return;
         }
-        // Invalidate cache on other servers
-        redisManager.invalidate("player", cp.getUniqueId().toString());
+        // Send the changed fields, other servers reload the player if they can't apply them
+        redisManager.getDeltaSync().publish(cp);
+    }
+
+    @Override
+    public Runnable prepareUpdate(Clan clan) {
+        if (!redisManager.isInitialized()) {
+            return () -> {};
+        }
+        DeltaSync.Update update = redisManager.getDeltaSync().prepare(clan);
+        return () -> redisManager.getDeltaSync().publish(update);
+    }
+
+    @Override
+    public Runnable prepareUpdate(ClanPlayer cp) {
+        if (!redisManager.isInitialized()) {
+            return () -> {};
+        }
+        DeltaSync.Update update = redisManager.getDeltaSync().prepare(cp);
+        return () -> redisManager.getDeltaSync().publish(update);
     }
 
     @Override
@@ -162,6 +175,7 @@ public class RedisProxyManager implements ProxyManager {
             return;
         }
         // Invalidate cache on other servers
+        redisManager.getDeltaSync().forget(DeltaSync.CLAN, clan.getTag());
         redisManager.invalidate("clan:delete", clan.getTag());
     }
 
@@ -171,6 +185,7 @@ public class RedisProxyManager implements ProxyManager {
             return;
         }
         // Invalidate cache on other servers
+        redisManager.getDeltaSync().forget(DeltaSync.PLAYER, cp.getUniqueId().toString());
         redisManager.invalidate("player:delete", cp.getUniqueId().toString());
     }
 
@@ -183,7 +198,11 @@ public class RedisProxyManager implements ProxyManager {
         json.addProperty("targetName", playerName);
         json.addProperty("message", message);
         
-        redisManager.publish(RedisManager.CHANNEL_CHAT, GSON.toJson(json));
+        redisManager.publish(RedisManager.CHANNEL_CHAT, encode(json));
+    }
+
+    private String encode(JsonObject json) {
+        return PayloadCodec.encode(json, redisManager.getConfig().isCompactPayloads());
     }
 
     /**
@@ -194,14 +213,17 @@ public class RedisProxyManager implements ProxyManager {
      * @param serverName the server the player is on
      */
     public void addGlobalPlayer(@NotNull String playerName, @NotNull String serverName) {
-        globalOnlinePlayers.put(playerName.toLowerCase(), new PlayerInfo(playerName, serverName));
+        presence.apply(serverName, playerName, true, -1);
     }
 
     /**
      * Removes a player from the global online set.
      */
     public void removeGlobalPlayer(@NotNull String playerName) {
-        globalOnlinePlayers.remove(playerName.toLowerCase());
+        String serverName = presence.getServer(playerName);
+        if (serverName != null) {
+            presence.apply(serverName, playerName, false, -1);
+        }
     }
 
     /**
@@ -211,22 +233,18 @@ public class RedisProxyManager implements ProxyManager {
      * @param serverName the server to clear players from
      */
     public void clearPlayersFromServer(@NotNull String serverName) {
-        globalOnlinePlayers.entrySet().removeIf(entry -> serverName.equals(entry.getValue().getServer()));
+        presence.remove(serverName);
     }
 
     /**
      * Gets all globally online player names (from other servers only).
      * Does not include players on the local server.
      * 
-     * @return set of player names from other servers (with correct capitalization)
+     * @return unmodifiable set of player names from other servers (with correct capitalization)
      */
     @NotNull
     public Set<String> getGlobalOnlinePlayers() {
-        Set<String> names = new HashSet<>();
-        for (PlayerInfo info : globalOnlinePlayers.values()) {
-            names.add(info.getName());
-        }
-        return names;
+        return presence.getRemotePlayers();
     }
     
     /**
@@ -237,8 +255,7 @@ public class RedisProxyManager implements ProxyManager {
      */
     @Nullable
     public String getPlayerServer(@NotNull String playerName) {
-        PlayerInfo info = globalOnlinePlayers.get(playerName.toLowerCase());
-        return info != null ? info.getServer() : null;
+        return presence.getServer(playerName);
     }
 
     /**
@@ -249,16 +266,23 @@ public class RedisProxyManager implements ProxyManager {
      */
     @NotNull
     public Set<String> getAllOnlinePlayers() {
-        Set<String> all = new HashSet<>();
-        for (PlayerInfo info : globalOnlinePlayers.values()) {
-            all.add(info.getName());
-        }
+        Set<String> all = new HashSet<>(presence.getRemotePlayers());
         for (Player p : Bukkit.getOnlinePlayers()) {
             all.add(p.getName());
         }
         return all;
     }
     
+    /**
+     * Gets the online players of the network.
+     * 
+     * @return the presence registry
+     */
+    @NotNull
+    public PresenceRegistry getPresence() {
+        return presence;
+    }
+    
     /**
      * Gets the local server ID.
      * 
@@ -1,10 +1,14 @@
 package net.sacredlabyrinth.phaed.simpleclans.redis;
 
 import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
+import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.OverflowPolicy;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -36,6 +40,22 @@ public class RedisConfiguration {
     private int clanCacheTtl;
     private int playerCacheTtl;
     
+    // Updates
+    private int updateFlushWindow;
+    
+    // Payloads
+    private boolean compactPayloads;
+    
+    // Chat
+    private int chatShards;
+    
+    // Dispatch
+    private int dispatchQueueSize;
+    private OverflowPolicy dispatchOverflow;
+    private int dispatchTickBudget;
+    private final Map<String, Integer> channelQueueSizes = new HashMap<>();
+    private final Map<String, OverflowPolicy> channelOverflows = new HashMap<>();
+    
     // Locks
     private int lockBankTimeout;
     private int lockDisbandTimeout;
@@ -43,8 +63,13 @@ public class RedisConfiguration {
     
     // Data TTL
     private int requestTtl;
+    private boolean requestExpiryEvents;
     private int voteTtl;
     
+    // Presence
+    private int presenceHeartbeatInterval;
+    private int presenceTimeout;
+    
     // Reconnection
     private int reconnectDelay;
     private int reconnectMaxAttempts;
@@ -87,6 +112,34 @@ public class RedisConfiguration {
         clanCacheTtl = config.getInt("redis.cache.clan-ttl", 300);
         playerCacheTtl = config.getInt("redis.cache.player-ttl", 300);
         
+        // Updates (in milliseconds)
+        updateFlushWindow = config.getInt("redis.updates.flush-window", 50);
+        
+        // Payloads
+        compactPayloads = "binary".equalsIgnoreCase(config.getString("redis.payload-format", "json"));
+        
+        // Chat
+        chatShards = config.getInt("redis.chat.shards", 0);
+        
+        // Dispatch
+        dispatchQueueSize = config.getInt("redis.dispatch.queue-size", 1000);
+        dispatchOverflow = OverflowPolicy.parse(config.getString("redis.dispatch.overflow"), OverflowPolicy.BLOCK);
+        dispatchTickBudget = config.getInt("redis.dispatch.tick-budget", 10);
+        channelQueueSizes.clear();
+        channelOverflows.clear();
+        ConfigurationSection channels = config.getConfigurationSection("redis.dispatch.channels");
+        if (channels != null) {
+            for (String channel : channels.getKeys(false)) {
+                if (channels.isInt(channel + ".queue-size")) {
+                    channelQueueSizes.put(channel, channels.getInt(channel + ".queue-size"));
+                }
+                if (channels.isString(channel + ".overflow")) {
+                    channelOverflows.put(channel, OverflowPolicy.parse(channels.getString(channel + ".overflow"),
+                            dispatchOverflow));
+                }
+            }
+        }
+        
         // Locks (in milliseconds)
         lockBankTimeout = config.getInt("redis.locks.bank-timeout", 5000);
         lockDisbandTimeout = config.getInt("redis.locks.disband-timeout", 30000);
@@ -94,8 +147,13 @@ public class RedisConfiguration {
         
         // Data TTL (in seconds)
         requestTtl = config.getInt("redis.requests.ttl", 300);
+        requestExpiryEvents = config.getBoolean("redis.requests.expiry-events", false);
         voteTtl = config.getInt("redis.votes.ttl", 120);
         
+        // Presence (in seconds)
+        presenceHeartbeatInterval = config.getInt("redis.presence.heartbeat-interval", 5);
+        presenceTimeout = config.getInt("redis.presence.timeout", 15);
+        
         // Reconnection
         reconnectDelay = config.getInt("redis.reconnect.delay", 5000);
         reconnectMaxAttempts = config.getInt("redis.reconnect.max-attempts", 10);
@@ -159,6 +217,55 @@ public class RedisConfiguration {
         return playerCacheTtl;
     }
 
+    /**
+     * Returns how long, in milliseconds, clan and player updates are collected before they are sent together.
+     */
+    public int getUpdateFlushWindow() {
+        return updateFlushWindow;
+    }
+
+    /**
+     * Returns whether updates, chat and stored requests are written in the compact binary form instead of JSON.
+     */
+    public boolean isCompactPayloads() {
+        return compactPayloads;
+    }
+
+    /**
+     * Returns how many channels clan and ally chat is spread over, 0 means a single channel.
+     */
+    public int getChatShards() {
+        return chatShards;
+    }
+
+    /**
+     * Returns how many messages of a channel may wait to be handled.
+     */
+    public int getDispatchQueueSize(@NotNull String channel) {
+        return channelQueueSizes.getOrDefault(channelName(channel), dispatchQueueSize);
+    }
+
+    /**
+     * Returns what happens to the messages of a channel when its queue is full.
+     * Background channels drop their oldest message unless configured otherwise.
+     */
+    @NotNull
+    public OverflowPolicy getDispatchOverflow(@NotNull String channel, boolean background) {
+        return channelOverflows.getOrDefault(channelName(channel),
+                background ? OverflowPolicy.DROP_OLDEST : dispatchOverflow);
+    }
+
+    /**
+     * Returns the time, in milliseconds, the background channels may use each tick.
+     */
+    public int getDispatchTickBudget() {
+        return dispatchTickBudget;
+    }
+
+    private static String channelName(String channel) {
+        return channel.startsWith("simpleclans:") ? channel.substring("simpleclans:".length()) : channel;
+    }
+
     public int getLockBankTimeout() {
         return lockBankTimeout;
     }
@@ -175,10 +282,28 @@ public class RedisConfiguration {
         return requestTtl;
     }
 
+    /**
+     * Returns whether Redis is asked to notify expired keys, to remove expired requests right away.
+     */
+    public boolean isRequestExpiryEvents() {
+        return requestExpiryEvents;
+    }
+
     public int getVoteTtl() {
         return voteTtl;
     }
 
+    public int getPresenceHeartbeatInterval() {
+        return presenceHeartbeatInterval;
+    }
+
+    /**
+     * Returns the seconds without a heartbeat before the players of a server are considered offline.
+     */
+    public int getPresenceTimeout() {
+        return presenceTimeout;
+    }
+
     public int getReconnectDelay() {
         return reconnectDelay;
     }
@@ -4,7 +4,12 @@ import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
 import net.sacredlabyrinth.phaed.simpleclans.redis.cache.ClanCache;
 import net.sacredlabyrinth.phaed.simpleclans.redis.cache.PlayerCache;
 import net.sacredlabyrinth.phaed.simpleclans.redis.lock.DistributedLock;
+import net.sacredlabyrinth.phaed.simpleclans.redis.lock.LockManager;
 import net.sacredlabyrinth.phaed.simpleclans.redis.lock.RedisLock;
+import net.sacredlabyrinth.phaed.simpleclans.redis.presence.PresenceRegistry;
+import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.ChannelStats;
+import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.ChatSubscriptions;
+import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.MessageDispatcher;
 import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.MessageHandler;
 import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.RedisPublisher;
 import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.RedisSubscriber;
@@ -13,8 +18,11 @@ import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.handlers.BroadcastHand
 import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.handlers.ChatHandler;
 import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.handlers.InvalidateHandler;
 import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.handlers.OnlinePlayersHandler;
+import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.handlers.RequestExpiryHandler;
 import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.handlers.RequestHandler;
+import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.handlers.UpdateHandler;
 import net.sacredlabyrinth.phaed.simpleclans.redis.request.RedisRequestStorage;
+import net.sacredlabyrinth.phaed.simpleclans.redis.sync.DeltaSync;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -24,8 +32,9 @@ import redis.clients.jedis.JedisClientConfig;
 import redis.clients.jedis.DefaultJedisClientConfig;
 import redis.clients.jedis.JedisPool;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 /**
@@ -42,6 +51,9 @@ public class RedisManager {
     public static final String CHANNEL_REQUEST = "simpleclans:request";
     public static final String CHANNEL_ONLINE = "simpleclans:online";
     public static final String CHANNEL_BAN = "simpleclans:ban";
+    public static final String CHANNEL_LOCK = "simpleclans:lock";
+    // Keyspace notification of expired keys (database 0)
+    public static final String CHANNEL_EXPIRED = "__keyevent@0__:expired";
 
     private final SimpleClans plugin;
     private final RedisConfiguration config;
@@ -58,7 +70,19 @@ public class RedisManager {
     // Request storage
     private RedisRequestStorage requestStorage;
     
-    private final Map<String, MessageHandler> messageHandlers = new ConcurrentHashMap<>();
+    // Field level updates
+    private DeltaSync deltaSync;
+    
+    // Locks held and awaited by this server
+    private LockManager lockManager;
+    
+    private MessageDispatcher dispatcher;
+    
+    // Chat channels of the local clans, null if chat uses a single channel
+    private ChatSubscriptions chatSubscriptions;
+    
+    // Online players of the network
+    private PresenceRegistry presence;
     
     private volatile boolean initialized = false;
 
@@ -130,6 +154,8 @@ public class RedisManager {
             
             // Initialize publisher
             publisher = new RedisPublisher(this, config.getServerId());
+            lockManager = new LockManager();
+            lockManager.setForeground(Bukkit::isPrimaryThread);
             
             // Initialize caches
             clanCache = new ClanCache(this);
@@ -139,13 +165,25 @@ public class RedisManager {
             
             // Initialize request storage
             requestStorage = new RedisRequestStorage(this, plugin);
+            if (config.isRequestExpiryEvents()) {
+                requestStorage.enableExpiryEvents();
+            }
             plugin.getLogger().info("[Redis] Initialized request storage (TTL: " + requestStorage.getTtlSeconds() + "s)");
             
+            deltaSync = new DeltaSync(plugin, this);
+            presence = new PresenceRegistry(this, config.getPresenceHeartbeatInterval(), config.getPresenceTimeout());
+            
             // Register message handlers
+            dispatcher = new MessageDispatcher(plugin, config.getDispatchTickBudget());
             registerDefaultHandlers();
+            dispatcher.start();
             
             // Initialize subscriber and start thread
-            subscriber = new RedisSubscriber(this, plugin, config.getServerId(), messageHandlers);
+            subscriber = new RedisSubscriber(this, plugin, config.getServerId(), dispatcher);
+            if (config.getChatShards() > 0) {
+                chatSubscriptions = new ChatSubscriptions(plugin, this, subscriber, config.getChatShards());
+                chatSubscriptions.start();
+            }
             subscriberThread = new Thread(subscriber, "SimpleClans-RedisSubscriber");
             subscriberThread.setDaemon(true);
             subscriberThread.start();
@@ -169,11 +207,37 @@ public class RedisManager {
         
         plugin.getLogger().info("[Redis] Shutting down...");
         
+        // Send the updates still waiting for the flush window
+        if (deltaSync != null) {
+            deltaSync.shutdown();
+        }
+        
+        // Remove this server's players from the network
+        if (presence != null) {
+            presence.shutdown();
+        }
+        
+        // Stop handling messages, releases the subscriber if it waits for room in a queue
+        if (dispatcher != null) {
+            for (Map.Entry<String, ChannelStats> entry : dispatcher.getStats().entrySet()) {
+                plugin.getLogger().info("[Redis] Channel " + entry.getKey() + " - " + entry.getValue());
+            }
+            dispatcher.shutdown();
+        }
+        
         // Stop subscriber
+        if (chatSubscriptions != null) {
+            chatSubscriptions.shutdown();
+        }
         if (subscriber != null) {
             subscriber.shutdown();
         }
         
+        // Stop renewing leases and wake up threads waiting for a lock
+        if (lockManager != null) {
+            lockManager.shutdown();
+        }
+        
         // Interrupt subscriber thread
         if (subscriberThread != null && subscriberThread.isAlive()) {
             subscriberThread.interrupt();
@@ -239,7 +303,20 @@ public class RedisManager {
      * @param handler the handler
      */
     public void registerHandler(@NotNull String channel, @NotNull MessageHandler handler) {
-        messageHandlers.put(channel, handler);
+        registerHandler(channel, handler, false);
+    }
+
+    /**
+     * Registers a message handler for a channel.
+     * 
+     * @param channel the channel to handle
+     * @param handler the handler
+     * @param background whether its messages may wait behind the interactive channels, e.g. if they reload from the
+     *                   database
+     */
+    public void registerHandler(@NotNull String channel, @NotNull MessageHandler handler, boolean background) {
+        dispatcher.register(channel, handler, background, config.getDispatchQueueSize(channel),
+                config.getDispatchOverflow(channel, background));
     }
 
     /**
@@ -247,7 +324,10 @@ public class RedisManager {
      */
     private void registerDefaultHandlers() {
         // Cache invalidation handler - processes clan/player cache updates
-        registerHandler(CHANNEL_INVALIDATE, new InvalidateHandler(plugin));
+        registerHandler(CHANNEL_INVALIDATE, new InvalidateHandler(plugin), true);
+        
+        // Update handler - applies changed fields of clans/players in place
+        registerHandler(CHANNEL_UPDATE, new UpdateHandler(plugin, deltaSync), true);
         
         // Chat handler - processes cross-server clan/ally chat
         registerHandler(CHANNEL_CHAT, new ChatHandler(plugin));
@@ -258,13 +338,32 @@ public class RedisManager {
         // Request handler - processes cross-server request notifications
         registerHandler(CHANNEL_REQUEST, new RequestHandler(plugin));
         
+        // Request expiry handler - removes expired requests locally and from the request indexes
+        registerHandler(CHANNEL_EXPIRED, new RequestExpiryHandler(plugin), true);
+        
         // Online players handler - synchronizes online players across servers
         registerHandler(CHANNEL_ONLINE, new OnlinePlayersHandler(plugin));
         
         // Ban handler - synchronizes bans across servers
         registerHandler(CHANNEL_BAN, new BanHandler(plugin));
         
-        plugin.getLogger().info("[Redis] Registered " + messageHandlers.size() + " message handlers");
+        plugin.getLogger().info("[Redis] Registered " + dispatcher.getStats().size() + " message handlers");
+    }
+
+    /**
+     * Gets the channel of a clan's chat.
+     * The clans are spread over the configured number of channels, so servers only receive the chat of their clans.
+     * 
+     * @param clanTag the tag of the sender's clan
+     * @return the channel to publish clan and ally chat on
+     */
+    @NotNull
+    public String getChatChannel(@NotNull String clanTag) {
+        int shards = config.getChatShards();
+        if (shards <= 0) {
+            return CHANNEL_CHAT;
+        }
+        return CHANNEL_CHAT + ":" + Math.floorMod(clanTag.toLowerCase().hashCode(), shards);
     }
 
     /**
@@ -279,6 +378,19 @@ public class RedisManager {
         return new RedisLock(this, resource, timeoutMs);
     }
 
+    /**
+     * Acquires a distributed lock whose lease is renewed until it is released.
+     * For operations that may take longer than the timeout, e.g. collecting fees.
+     * 
+     * @param resource the resource to lock
+     * @param timeoutMs the lock timeout in milliseconds
+     * @return the lock (must be released/closed)
+     */
+    @NotNull
+    public DistributedLock acquireRenewedLock(@NotNull String resource, long timeoutMs) {
+        return new RedisLock(this, resource, timeoutMs, true);
+    }
+
     /**
      * Acquires a lock for bank operations.
      * Uses the configured bank timeout.
@@ -359,8 +471,61 @@ public class RedisManager {
         return requestStorage;
     }
 
+    /**
+     * Gets the local state of the distributed locks.
+     * 
+     * @return the lock manager, or null if not initialized
+     */
+    @Nullable
+    public LockManager getLockManager() {
+        return lockManager;
+    }
+
+    /**
+     * Gets the field level update sender.
+     * 
+     * @return the delta sync, or null if not initialized
+     */
+    @Nullable
+    public DeltaSync getDeltaSync() {
+        return deltaSync;
+    }
+
+    /**
+     * Gets the subscriptions to the chat channels of the clans.
+     * 
+     * @return the chat subscriptions, or null if not initialized or chat uses a single channel
+     */
+    @Nullable
+    public ChatSubscriptions getChatSubscriptions() {
+        return chatSubscriptions;
+    }
+
+    /**
+     * Gets the online players of the network.
+     * 
+     * @return the presence registry, or null if not initialized
+     */
+    @Nullable
+    public PresenceRegistry getPresence() {
+        return presence;
+    }
+
     // ==================== Online Players Sync ====================
 
+    /**
+     * Registers the local players in the presence registry and reads the players of the other servers.
+     * Called when this server starts.
+     */
+    public void startPresence() {
+        if (!initialized) return;
+        List<String> players = new ArrayList<>();
+        for (org.bukkit.entity.Player p : org.bukkit.Bukkit.getOnlinePlayers()) {
+            players.add(p.getName());
+        }
+        presence.start(players);
+    }
+
     /**
      * Publishes a player join event to other servers.
      * 
@@ -368,7 +533,7 @@ public class RedisManager {
      */
     public void publishPlayerJoin(@NotNull String playerName) {
         if (!initialized) return;
-        publish(CHANNEL_ONLINE, "{\"type\":\"join\",\"player\":\"" + playerName + "\",\"server\":\"" + config.getServerId() + "\"}");
+        presence.join(playerName);
     }
 
     /**
@@ -378,12 +543,12 @@ public class RedisManager {
      */
     public void publishPlayerQuit(@NotNull String playerName) {
         if (!initialized) return;
-        publish(CHANNEL_ONLINE, "{\"type\":\"quit\",\"player\":\"" + playerName + "\",\"server\":\"" + config.getServerId() + "\"}");
+        presence.quit(playerName);
     }
 
     /**
      * Publishes the local server's player list to other servers.
-     * Called when a server starts or when another server requests sync.
+     * Only sent when a server without the presence registry requests it.
      */
     public void publishLocalPlayersSync() {
         if (!initialized) return;
@@ -402,8 +567,10 @@ public class RedisManager {
 
     /**
      * Requests all servers to send their player lists.
-     * Called when this server starts.
+     * 
+     * @deprecated the players of the other servers are read from the presence registry, see {@link #startPresence()}
      */
+    @Deprecated
     public void requestPlayersSync() {
         if (!initialized) return;
         publish(CHANNEL_ONLINE, "{\"type\":\"request_sync\"}");
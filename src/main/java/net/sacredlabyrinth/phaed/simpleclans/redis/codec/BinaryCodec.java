@@ -0,0 +1,236 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary framing of values sent through Redis.
+ * <p>
+ * The first byte tells how the body is stored: {@link #BINARY} as is, or {@link #DEFLATE} when it was compressed.
+ * </p>
+ */
+public final class BinaryCodec {
+
+    public static final byte BINARY = 1;
+    public static final byte DEFLATE = 2;
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Adds the header, compressing the body if it is at least the threshold long and gets smaller
+     *
+     * @param threshold the minimum body size to compress, 0 or less never compresses
+     */
+    @NotNull
+    public static byte[] frame(@NotNull byte[] body, int threshold) {
+        if (threshold > 0 && body.length >= threshold) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(body);
+                deflater.finish();
+                Output out = new Output();
+                out.writeByte(DEFLATE);
+                out.writeVarInt(body.length);
+                byte[] buffer = new byte[Math.max(64, body.length / 2)];
+                while (!deflater.finished()) {
+                    int length = deflater.deflate(buffer);
+                    out.write(buffer, length);
+                }
+                byte[] compressed = out.toByteArray();
+                if (compressed.length < body.length + 1) {
+                    return compressed;
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+        byte[] framed = new byte[body.length + 1];
+        framed[0] = BINARY;
+        System.arraycopy(body, 0, framed, 1, body.length);
+        return framed;
+    }
+
+    /**
+     * @return the body of a framed value
+     * @throws IOException if the value is not a valid framed value
+     */
+    @NotNull
+    public static Input unframe(@NotNull byte[] data) throws IOException {
+        if (data.length == 0) {
+            throw new EOFException();
+        }
+        if (data[0] == BINARY) {
+            return new Input(data, 1);
+        }
+        if (data[0] != DEFLATE) {
+            throw new IOException("Unknown format " + data[0]);
+        }
+        Input header = new Input(data, 1);
+        int length = header.readVarInt();
+        int offset = header.position;
+        if (length < 0) {
+            throw new IOException("Invalid length " + length);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, data.length - offset);
+            byte[] body = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int count = inflater.inflate(body, read, length - read);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException();
+                }
+                read += count;
+            }
+            if (read < length) {
+                throw new EOFException();
+            }
+            return new Input(body, 0);
+        } catch (DataFormatException ex) {
+            throw new IOException(ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public static final class Output {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+
+        public void writeByte(int value) {
+            bytes.write(value);
+        }
+
+        public void writeVarInt(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        public void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                bytes.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            bytes.write((int) value);
+        }
+
+        /**
+         * Writes a long that may be negative, small values of both signs take one byte
+         */
+        public void writeSignedVarLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        public void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes.write((int) (value >>> shift));
+            }
+        }
+
+        public void writeDouble(double value) {
+            writeLong(Double.doubleToRawLongBits(value));
+        }
+
+        public void writeString(@Nullable String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length + 1);
+            write(utf8, utf8.length);
+        }
+
+        public void write(byte[] data, int length) {
+            bytes.write(data, 0, length);
+        }
+
+        @NotNull
+        public byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    public static final class Input {
+        private final byte[] data;
+        private int position;
+
+        Input(@NotNull byte[] data, int offset) {
+            this.data = data;
+            this.position = offset;
+        }
+
+        public boolean hasMore() {
+            return position < data.length;
+        }
+
+        public int readByte() throws IOException {
+            if (position >= data.length) {
+                throw new EOFException();
+            }
+            return data[position++] & 0xFF;
+        }
+
+        public int readVarInt() throws IOException {
+            long value = readVarLong();
+            if (value > 0xFFFFFFFFL) {
+                throw new IOException("Malformed varint");
+            }
+            return (int) value;
+        }
+
+        public long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        public long readSignedVarLong() throws IOException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        public long readLong() throws IOException {
+            if (8 > data.length - position) {
+                throw new EOFException();
+            }
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (data[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        public double readDouble() throws IOException {
+            return Double.longBitsToDouble(readLong());
+        }
+
+        @Nullable
+        public String readString() throws IOException {
+            int length = readVarInt() - 1;
+            if (length == -1) {
+                return null;
+            }
+            if (length < 0 || length > data.length - position) {
+                throw new EOFException();
+            }
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
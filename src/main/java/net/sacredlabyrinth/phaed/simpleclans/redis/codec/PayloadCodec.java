@@ -0,0 +1,252 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.codec;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes the JSON payloads sent through Redis (updates, chat, stored requests) either as JSON or in a compact binary
+ * form, and reads both.
+ * <p>
+ * Compact payloads start with {@link #MARKER}, which JSON never starts with, followed by the Base64 of a
+ * {@link BinaryCodec} frame, as pub/sub messages and stored values are handled as text. The frame holds the schema
+ * version, then the JSON tree: known keys are written as one byte, numbers as varints, UUIDs as two longs, and big
+ * payloads are compressed.
+ * </p>
+ */
+public final class PayloadCodec {
+
+    public static final char MARKER = '#';
+    private static final int SCHEMA = 1;
+    private static final int COMPRESS_THRESHOLD = 512;
+    private static final int MAX_DEPTH = 32;
+
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte INTEGER = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte UUID_STRING = 6;
+    private static final byte ARRAY = 7;
+    private static final byte OBJECT = 8;
+    private static final byte NUMBER = 9;
+
+    // Append only: the index of a key is its code, changing it needs a new schema
+    private static final List<String> KEYS = Arrays.asList(
+            // updates
+            "origin", "updates", "type", "id", "version", "full", "fields",
+            "balance", "flags", "verified", "friendlyFire", "fee", "feeEnabled", "lastUsed", "bb",
+            "rivalKills", "neutralKills", "civilianKills", "allyKills", "deaths", "leader", "trusted", "lastSeen",
+            // chat
+            "clanTag", "senderName", "senderUuid", "message", "rawMessage", "spyMessage", "targetName",
+            // requests
+            "target", "requesterName", "requesterUuid", "acceptors", "uuid", "name", "vote");
+    private static final Map<String, Integer> KEY_CODES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < KEYS.size(); i++) {
+            KEY_CODES.put(KEYS.get(i), i);
+        }
+    }
+
+    private PayloadCodec() {
+    }
+
+    /**
+     * @param compact whether to write the compact form, which older versions can't read
+     * @return the payload
+     */
+    @NotNull
+    public static String encode(@NotNull JsonObject json, boolean compact) {
+        if (!compact) {
+            return json.toString();
+        }
+        BinaryCodec.Output out = new BinaryCodec.Output();
+        out.writeByte(SCHEMA);
+        write(out, json);
+        byte[] framed = BinaryCodec.frame(out.toByteArray(), COMPRESS_THRESHOLD);
+        return MARKER + Base64.getEncoder().encodeToString(framed);
+    }
+
+    /**
+     * Reads a payload in either form
+     *
+     * @throws JsonSyntaxException if the payload is malformed
+     */
+    @NotNull
+    public static JsonObject decode(@NotNull String payload) {
+        if (payload.isEmpty() || payload.charAt(0) != MARKER) {
+            JsonElement json = JsonParser.parseString(payload);
+            if (!json.isJsonObject()) {
+                throw new JsonSyntaxException("Not a JSON object: " + payload);
+            }
+            return json.getAsJsonObject();
+        }
+        try {
+            byte[] framed = Base64.getDecoder().decode(payload.substring(1));
+            BinaryCodec.Input in = BinaryCodec.unframe(framed);
+            int schema = in.readByte();
+            if (schema != SCHEMA) {
+                throw new JsonSyntaxException("Unsupported payload schema " + schema);
+            }
+            JsonElement json = read(in, 0);
+            if (!json.isJsonObject() || in.hasMore()) {
+                throw new JsonSyntaxException("Malformed compact payload");
+            }
+            return json.getAsJsonObject();
+        } catch (IOException | IllegalArgumentException ex) {
+            throw new JsonSyntaxException("Malformed compact payload", ex);
+        }
+    }
+
+    private static void write(BinaryCodec.Output out, JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            out.writeByte(NULL);
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            out.writeByte(OBJECT);
+            out.writeVarInt(object.entrySet().size());
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                Integer code = KEY_CODES.get(entry.getKey());
+                if (code != null) {
+                    out.writeVarInt(code + 1);
+                } else {
+                    out.writeVarInt(0);
+                    out.writeString(entry.getKey());
+                }
+                write(out, entry.getValue());
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            out.writeByte(ARRAY);
+            out.writeVarInt(array.size());
+            for (JsonElement item : array) {
+                write(out, item);
+            }
+        } else {
+            writePrimitive(out, element.getAsJsonPrimitive());
+        }
+    }
+
+    private static void writePrimitive(BinaryCodec.Output out, JsonPrimitive primitive) {
+        if (primitive.isBoolean()) {
+            out.writeByte(primitive.getAsBoolean() ? TRUE : FALSE);
+        } else if (primitive.isNumber()) {
+            Number number = primitive.getAsNumber();
+            if (number instanceof Integer || number instanceof Long || number instanceof Short
+                    || number instanceof Byte) {
+                out.writeByte(INTEGER);
+                out.writeSignedVarLong(number.longValue());
+            } else if (number instanceof Double || number instanceof Float) {
+                out.writeByte(DOUBLE);
+                out.writeDouble(number.doubleValue());
+            } else {
+                // e.g. parsed from JSON, kept as written
+                out.writeByte(NUMBER);
+                out.writeString(number.toString());
+            }
+        } else {
+            String value = primitive.getAsString();
+            UUID uuid = toUuid(value);
+            if (uuid != null) {
+                out.writeByte(UUID_STRING);
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+            } else {
+                out.writeByte(STRING);
+                out.writeString(value);
+            }
+        }
+    }
+
+    /**
+     * @return the UUID, if the value is one in its canonical form
+     */
+    private static UUID toUuid(String value) {
+        if (value.length() != 36 || value.charAt(8) != '-' || value.charAt(13) != '-' || value.charAt(18) != '-'
+                || value.charAt(23) != '-') {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(value);
+            return uuid.toString().equals(value) ? uuid : null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private static JsonElement read(BinaryCodec.Input in, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("Too deep");
+        }
+        int tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return JsonNull.INSTANCE;
+            case FALSE:
+                return new JsonPrimitive(false);
+            case TRUE:
+                return new JsonPrimitive(true);
+            case INTEGER:
+                return new JsonPrimitive(in.readSignedVarLong());
+            case DOUBLE:
+                return new JsonPrimitive(in.readDouble());
+            case NUMBER:
+                return new JsonPrimitive(new BigDecimal(requireString(in)));
+            case STRING:
+                return new JsonPrimitive(requireString(in));
+            case UUID_STRING:
+                return new JsonPrimitive(new UUID(in.readLong(), in.readLong()).toString());
+            case ARRAY: {
+                int size = in.readVarInt();
+                JsonArray array = new JsonArray();
+                for (int i = 0; i < size; i++) {
+                    array.add(read(in, depth + 1));
+                }
+                return array;
+            }
+            case OBJECT: {
+                int size = in.readVarInt();
+                JsonObject object = new JsonObject();
+                for (int i = 0; i < size; i++) {
+                    int code = in.readVarInt();
+                    String key;
+                    if (code == 0) {
+                        key = requireString(in);
+                    } else if (code <= KEYS.size()) {
+                        key = KEYS.get(code - 1);
+                    } else {
+                        throw new IOException("Unknown key " + code);
+                    }
+                    object.add(key, read(in, depth + 1));
+                }
+                return object;
+            }
+            default:
+                throw new IOException("Unknown tag " + tag);
+        }
+    }
+
+    private static String requireString(BinaryCodec.Input in) throws IOException {
+        String value = in.readString();
+        if (value == null) {
+            throw new IOException("Missing string");
+        }
+        return value;
+    }
+}
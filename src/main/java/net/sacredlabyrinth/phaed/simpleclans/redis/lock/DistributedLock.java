@@ -37,6 +37,16 @@ public interface DistributedLock extends Closeable {
      */
     boolean isLocked();
 
+    /**
+     * Checks with the lock's store that this instance still holds the lock, which may have been lost meanwhile,
+     * e.g. when its lease expired during a long pause.
+     *
+     * @return true if still held
+     */
+    default boolean isHeld() {
+        return isLocked();
+    }
+
     /**
      * Returns the resource being locked.
      * 
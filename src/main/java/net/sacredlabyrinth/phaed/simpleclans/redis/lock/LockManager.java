@@ -0,0 +1,122 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.lock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Local state shared by the {@link RedisLock}s of this server.
+ * <p>
+ * Keeps the leases held by this server, so a thread that already holds a lock acquires it again without going to
+ * Redis, wakes up the threads waiting for a lock when it is released, and renews the leases of long operations.
+ * </p>
+ */
+public class LockManager {
+
+    private final Map<String, RedisLock.Lease> leases = new ConcurrentHashMap<>();
+    private final Map<String, Long> releases = new ConcurrentHashMap<>();
+    private final Object monitor = new Object();
+    private volatile BooleanSupplier foreground = () -> false;
+    private final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "SimpleClans-RedisLocks");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Sets how to tell the thread that must not wait for locks held by other threads of this server, e.g. the main
+     * thread, which they may be waiting for
+     */
+    public void setForeground(@NotNull BooleanSupplier foreground) {
+        this.foreground = foreground;
+    }
+
+    /**
+     * Called when a lock was released, here or on another server
+     *
+     * @param lockKey the key of the lock
+     */
+    public void signal(@NotNull String lockKey) {
+        releases.merge(lockKey, 1L, Long::sum);
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Stops renewing the leases and wakes up the waiting threads
+     */
+    public void shutdown() {
+        renewer.shutdownNow();
+        leases.clear();
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+
+    boolean isForeground() {
+        return foreground.getAsBoolean();
+    }
+
+    /**
+     * @return how many times the lock was released, to be read before trying to acquire it
+     */
+    long releases(@NotNull String lockKey) {
+        return releases.getOrDefault(lockKey, 0L);
+    }
+
+    /**
+     * Waits until the lock is released after {@code seen} was read, or the time is up
+     *
+     * @return false if the thread was interrupted
+     */
+    boolean await(@NotNull String lockKey, long seen, long millis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        synchronized (monitor) {
+            while (releases(lockKey) == seen) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    monitor.wait(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    RedisLock.Lease getLease(@NotNull String lockKey) {
+        return leases.get(lockKey);
+    }
+
+    void putLease(@NotNull String lockKey, @NotNull RedisLock.Lease lease) {
+        leases.put(lockKey, lease);
+    }
+
+    void removeLease(@NotNull String lockKey, @NotNull RedisLock.Lease lease) {
+        leases.remove(lockKey, lease);
+    }
+
+    @Nullable
+    ScheduledFuture<?> scheduleRenewal(@NotNull Runnable renewal, long periodMs) {
+        try {
+            return renewer.scheduleAtFixedRate(renewal, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // shutting down
+            return null;
+        }
+    }
+}
@@ -2,92 +2,162 @@ package net.sacredlabyrinth.phaed.simpleclans.redis.lock;
 
 import net.sacredlabyrinth.phaed.simpleclans.redis.RedisManager;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.params.SetParams;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
 import java.util.logging.Level;
 
 /**
  * Distributed lock implementation using Redis.
  * Uses the Redlock algorithm (simplified single-node version).
- * 
+ *
  * <p>Lock key format: simpleclans:lock:{resource}</p>
  * <p>Lock value: unique identifier (UUID) to ensure only the owner can release</p>
+ *
+ * <p>A waiting thread does not poll: it sleeps until the lock is released, which is published on
+ * {@link RedisManager#CHANNEL_LOCK}, or until the lease of the holder expires. A thread that already holds the lock
+ * acquires it again without going to Redis, it is released when every acquisition was released. The main thread
+ * doesn't wait for a lock held by another thread of this server, which may itself be waiting for the main thread.</p>
  */
 public class RedisLock implements DistributedLock {
 
     private static final String PREFIX = "simpleclans:lock:";
-    private static final int RETRY_DELAY_MS = 50;
-    
-    // Lua script for atomic unlock (only if we still own the lock)
-    private static final String UNLOCK_SCRIPT = 
+    // Waits are bounded in case a release notification is missed, e.g. while the subscriber reconnects
+    private static final long MAX_WAIT_MS = 500;
+
+    // Lua script for atomic lock: returns -1 if acquired, otherwise the remaining lease of the holder
+    private static final String LOCK_SCRIPT =
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+            "   return -1 " +
+            "else " +
+            "   return redis.call('pttl', KEYS[1]) " +
+            "end";
+
+    // Lua script for atomic unlock (only if we still own the lock), wakes up the waiting servers
+    private static final String UNLOCK_SCRIPT =
             "if redis.call('get', KEYS[1]) == ARGV[1] then " +
-            "   return redis.call('del', KEYS[1]) " +
+            "   redis.call('del', KEYS[1]) " +
+            "   redis.call('publish', ARGV[2], ARGV[3]) " +
+            "   return 1 " +
             "else " +
             "   return 0 " +
             "end";
-    
+
+    private static final String EXTEND_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "   return redis.call('pexpire', KEYS[1], ARGV[2]) " +
+            "else " +
+            "   return 0 " +
+            "end";
+
     private final RedisManager redis;
+    private final LockManager locks;
     private final String resource;
     private final String lockKey;
-    private final String lockId;
     private final long defaultTimeoutMs;
-    
-    private volatile boolean locked = false;
+    private final boolean renew;
+
+    @Nullable
+    private volatile Lease lease;
 
     /**
      * Creates a new distributed lock.
-     * 
+     *
      * @param redis the Redis manager
      * @param resource the resource to lock (e.g., "bank:ABC")
-     * @param defaultTimeoutMs default timeout for tryAcquire()
+     * @param defaultTimeoutMs default timeout for tryAcquire(), also the lease of the lock
      */
     public RedisLock(@NotNull RedisManager redis, @NotNull String resource, long defaultTimeoutMs) {
+        this(redis, resource, defaultTimeoutMs, false);
+    }
+
+    /**
+     * Creates a new distributed lock.
+     *
+     * @param redis the Redis manager
+     * @param resource the resource to lock (e.g., "bank:ABC")
+     * @param defaultTimeoutMs default timeout for tryAcquire(), also the lease of the lock
+     * @param renew whether the lease is renewed until the lock is released, for operations that may outlast it
+     */
+    public RedisLock(@NotNull RedisManager redis, @NotNull String resource, long defaultTimeoutMs, boolean renew) {
         this.redis = redis;
+        this.locks = redis.getLockManager();
         this.resource = resource;
         this.lockKey = PREFIX + resource;
-        this.lockId = UUID.randomUUID().toString();
         this.defaultTimeoutMs = defaultTimeoutMs;
+        this.renew = renew;
     }
 
     @Override
     public boolean tryAcquire(long timeoutMs) {
-        if (locked) {
+        if (lease != null) {
             return true; // Already locked by us
         }
-        
+
+        // Reentrant acquisition by the thread holding the lock
+        Lease held = locks.getLease(lockKey);
+        if (held != null && held.owner == Thread.currentThread()) {
+            held.holds++;
+            lease = held;
+            return true;
+        }
+        if (held != null && locks.isForeground()) {
+            return false;
+        }
+
         long deadline = System.currentTimeMillis() + timeoutMs;
-        
-        while (System.currentTimeMillis() < deadline) {
+        String lockId = redis.getServerId() + ":" + UUID.randomUUID();
+
+        while (true) {
+            long seen = locks.releases(lockKey);
+            long remainingLease;
             try (Jedis jedis = redis.getConnection()) {
                 // SET NX PX - Set if Not eXists with eXpiration
                 // The lock expires automatically to prevent deadlocks if the holder crashes
-                String result = jedis.set(lockKey, lockId,
-                        SetParams.setParams().nx().px(defaultTimeoutMs));
-                
-                if ("OK".equals(result)) {
-                    locked = true;
+                Long result = (Long) jedis.eval(LOCK_SCRIPT,
+                        Collections.singletonList(lockKey),
+                        Arrays.asList(lockId, String.valueOf(defaultTimeoutMs)));
+
+                if (result == -1L) {
+                    acquired(lockId);
                     return true;
                 }
+                remainingLease = result;
             } catch (Exception e) {
                 redis.getPlugin().getLogger().log(Level.WARNING,
                         "[Redis] Error acquiring lock for " + resource, e);
                 return false;
             }
-            
-            // Wait before retrying
-            try {
-                Thread.sleep(RETRY_DELAY_MS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                // Timeout reached
+                return false;
+            }
+
+            // Wait for the release, or the expiration of the holder's lease
+            long wait = Math.min(remaining, MAX_WAIT_MS);
+            if (remainingLease > 0) {
+                wait = Math.min(wait, remainingLease);
+            }
+            if (!locks.await(lockKey, seen, wait)) {
                 return false;
             }
         }
-        
-        // Timeout reached
-        return false;
+    }
+
+    private void acquired(String lockId) {
+        Lease acquired = new Lease(lockId);
+        if (renew) {
+            acquired.renewal = locks.scheduleRenewal(() -> renew(acquired), Math.max(1, defaultTimeoutMs / 3));
+        }
+        lease = acquired;
+        locks.putLease(lockKey, acquired);
     }
 
     @Override
@@ -97,27 +167,52 @@ public class RedisLock implements DistributedLock {
 
     @Override
     public void release() {
-        if (!locked) {
+        Lease current = lease;
+        if (current == null) {
+            return;
+        }
+        lease = null;
+
+        if (--current.holds > 0) {
             return;
         }
-        
+        if (current.renewal != null) {
+            current.renewal.cancel(false);
+        }
+        locks.removeLease(lockKey, current);
+
         try (Jedis jedis = redis.getConnection()) {
             // Use Lua script for atomic check-and-delete
             // This ensures we only delete the lock if we still own it
-            jedis.eval(UNLOCK_SCRIPT, 
+            jedis.eval(UNLOCK_SCRIPT,
                     Collections.singletonList(lockKey),
-                    Collections.singletonList(lockId));
-            
-            locked = false;
+                    Arrays.asList(current.lockId, RedisManager.CHANNEL_LOCK, redis.getServerId() + "|" + lockKey));
         } catch (Exception e) {
             redis.getPlugin().getLogger().log(Level.WARNING,
                     "[Redis] Error releasing lock for " + resource, e);
         }
+        // The notification is not delivered to this server
+        locks.signal(lockKey);
     }
 
     @Override
     public boolean isLocked() {
-        return locked;
+        return lease != null;
+    }
+
+    @Override
+    public boolean isHeld() {
+        Lease current = lease;
+        if (current == null) {
+            return false;
+        }
+        try (Jedis jedis = redis.getConnection()) {
+            return current.lockId.equals(jedis.get(lockKey));
+        } catch (Exception e) {
+            redis.getPlugin().getLogger().log(Level.WARNING,
+                    "[Redis] Error checking lock for " + resource, e);
+            return false;
+        }
     }
 
     @Override
@@ -128,27 +223,24 @@ public class RedisLock implements DistributedLock {
     /**
      * Extends the lock's TTL.
      * Useful for long-running operations.
-     * 
+     *
      * @param additionalMs additional milliseconds to add to the TTL
      * @return true if the lock was extended, false if not owned or error
      */
     public boolean extend(long additionalMs) {
-        if (!locked) {
+        Lease current = lease;
+        if (current == null) {
             return false;
         }
-        
-        String extendScript = 
-                "if redis.call('get', KEYS[1]) == ARGV[1] then " +
-                "   return redis.call('pexpire', KEYS[1], ARGV[2]) " +
-                "else " +
-                "   return 0 " +
-                "end";
-        
+        return extend(current, additionalMs);
+    }
+
+    private boolean extend(Lease current, long additionalMs) {
         try (Jedis jedis = redis.getConnection()) {
-            Object result = jedis.eval(extendScript,
+            Object result = jedis.eval(EXTEND_SCRIPT,
                     Collections.singletonList(lockKey),
-                    java.util.Arrays.asList(lockId, String.valueOf(additionalMs)));
-            
+                    Arrays.asList(current.lockId, String.valueOf(additionalMs)));
+
             return result != null && ((Long) result) == 1L;
         } catch (Exception e) {
             redis.getPlugin().getLogger().log(Level.WARNING,
@@ -157,12 +249,35 @@ public class RedisLock implements DistributedLock {
         }
     }
 
+    private void renew(Lease current) {
+        if (!extend(current, defaultTimeoutMs) && current.renewal != null) {
+            redis.getPlugin().getLogger().warning("[Redis] Lost the lock for " + resource);
+            current.renewal.cancel(false);
+        }
+    }
+
     @Override
     public String toString() {
+        Lease current = lease;
         return "RedisLock{" +
                 "resource='" + resource + '\'' +
-                ", lockId='" + lockId + '\'' +
-                ", locked=" + locked +
+                ", lockId='" + (current != null ? current.lockId : null) + '\'' +
+                ", locked=" + (current != null) +
                 '}';
     }
+
+    /**
+     * An acquisition of a lock in Redis, shared by the reentrant acquisitions of its thread
+     */
+    static final class Lease {
+        private final Thread owner = Thread.currentThread();
+        private final String lockId;
+        private int holds = 1;
+        @Nullable
+        private volatile ScheduledFuture<?> renewal;
+
+        private Lease(String lockId) {
+            this.lockId = lockId;
+        }
+    }
 }
@@ -0,0 +1,417 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.presence;
+
+import com.google.gson.JsonObject;
+import net.sacredlabyrinth.phaed.simpleclans.proxy.RedisProxyManager.PlayerInfo;
+import net.sacredlabyrinth.phaed.simpleclans.redis.RedisManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Keeps track of the players online on every server of the network.
+ * <p>
+ * Each server keeps its players in a hash in Redis, {@code simpleclans:presence:{serverId}}, whose TTL is refreshed
+ * by a heartbeat. A server that stops sending heartbeats, e.g. because it crashed, expires with its players.
+ * </p>
+ * <p>
+ * Every change to a hash increments its sequence, stored in the hash, and is published on
+ * {@link RedisManager#CHANNEL_ONLINE} with it. The other servers apply the changes to a local mirror, and read a
+ * server's hash again when they missed a change, when they don't know the server yet, or when the heartbeat shows a
+ * sequence they didn't see. So a server never has to publish its whole player list to the network.
+ * </p>
+ */
+public class PresenceRegistry {
+
+    private static final String PREFIX = "simpleclans:presence:";
+    private static final String SERVERS_KEY = PREFIX + "servers";
+    // Player names never start with @
+    private static final String SEQ_FIELD = "@seq";
+
+    // Replaces the players of a server, its sequence goes on: returns the sequence
+    private static final String RESET_SCRIPT =
+            "local seq = redis.call('hincrby', KEYS[1], '@seq', 1) " +
+            "redis.call('del', KEYS[1]) " +
+            "redis.call('hset', KEYS[1], '@seq', seq) " +
+            "for i = 3, #ARGV, 2 do " +
+            "   redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) " +
+            "end " +
+            "redis.call('pexpire', KEYS[1], ARGV[1]) " +
+            "redis.call('sadd', KEYS[2], ARGV[2]) " +
+            "return seq";
+
+    // Adds (ARGV[2] is the name) or removes (ARGV[2] is empty) a player: returns the sequence, or -1 if the hash
+    // expired and must be reset
+    private static final String CHANGE_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 then " +
+            "   return -1 " +
+            "end " +
+            "if ARGV[2] == '' then " +
+            "   redis.call('hdel', KEYS[1], ARGV[1]) " +
+            "else " +
+            "   redis.call('hset', KEYS[1], ARGV[1], ARGV[2]) " +
+            "end " +
+            "redis.call('pexpire', KEYS[1], ARGV[3]) " +
+            "return redis.call('hincrby', KEYS[1], '@seq', 1)";
+
+    // Refreshes the TTL of this server, then returns {refreshed, server, sequence, server, sequence...} of the live
+    // servers, forgetting the expired ones
+    private static final String HEARTBEAT_SCRIPT =
+            "local result = {redis.call('pexpire', KEYS[1], ARGV[1])} " +
+            "for _, server in ipairs(redis.call('smembers', KEYS[2])) do " +
+            "   local seq = redis.call('hget', ARGV[2] .. server, '@seq') " +
+            "   if seq then " +
+            "       table.insert(result, server) " +
+            "       table.insert(result, seq) " +
+            "   else " +
+            "       redis.call('srem', KEYS[2], server) " +
+            "   end " +
+            "end " +
+            "return result";
+
+    private final RedisManager redis;
+    private final String serverId;
+    private final String key;
+    private final long intervalMs;
+    private final long ttlMs;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "SimpleClans-Presence");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Players on this server: lowercase name -> name
+    private final Map<String, String> local = new ConcurrentHashMap<>();
+    // Players on other servers: lowercase name -> info
+    private final Map<String, PlayerInfo> remote = new ConcurrentHashMap<>();
+    // Other servers, only used by the executor
+    private final Map<String, Peer> peers = new HashMap<>();
+    // Incremented on every change to the mirror
+    private volatile int version;
+    @Nullable
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param intervalSeconds the time between heartbeats
+     * @param timeoutSeconds  the time without heartbeats before a server is considered offline
+     */
+    public PresenceRegistry(@NotNull RedisManager redis, int intervalSeconds, int timeoutSeconds) {
+        this.redis = redis;
+        this.serverId = redis.getServerId();
+        this.key = PREFIX + serverId;
+        this.intervalMs = TimeUnit.SECONDS.toMillis(Math.max(1, intervalSeconds));
+        this.ttlMs = Math.max(intervalMs * 2, TimeUnit.SECONDS.toMillis(timeoutSeconds));
+    }
+
+    /**
+     * Registers the players of this server, reads the players of the others and starts the heartbeat
+     *
+     * @param players the players online on this server
+     */
+    public void start(@NotNull Collection<String> players) {
+        for (String player : players) {
+            local.put(player.toLowerCase(), player);
+        }
+        execute(this::reset);
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                heartbeat();
+            } catch (Exception e) {
+                redis.getPlugin().getLogger().log(Level.WARNING, "[Redis] Error sending the presence heartbeat", e);
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Removes this server from the registry, the other servers forget its players right away
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        try (Jedis jedis = redis.getConnection()) {
+            jedis.del(key);
+            jedis.srem(SERVERS_KEY, serverId);
+        } catch (Exception e) {
+            redis.getPlugin().getLogger().log(Level.WARNING, "[Redis] Error removing the online players", e);
+        }
+        JsonObject json = new JsonObject();
+        json.addProperty("type", "offline");
+        json.addProperty("server", serverId);
+        redis.publish(RedisManager.CHANNEL_ONLINE, json.toString());
+    }
+
+    /**
+     * Called when a player joins this server
+     */
+    public void join(@NotNull String player) {
+        local.put(player.toLowerCase(), player);
+        execute(() -> change(player, true));
+    }
+
+    /**
+     * Called when a player quits this server
+     */
+    public void quit(@NotNull String player) {
+        local.remove(player.toLowerCase());
+        execute(() -> change(player, false));
+    }
+
+    /**
+     * Applies a change published by another server
+     *
+     * @param seq the sequence of the change, or -1 if the server doesn't send it
+     */
+    public void apply(@NotNull String server, @NotNull String player, boolean online, long seq) {
+        execute(() -> {
+            Peer peer = peers.get(server);
+            if (seq >= 0 && (peer == null || seq > peer.seq + 1)) {
+                // missed a change, or a server we don't know yet
+                load(server);
+                return;
+            }
+            if (peer == null) {
+                peer = new Peer();
+                peers.put(server, peer);
+            } else if (seq >= 0) {
+                if (seq <= peer.seq) {
+                    // already read from its hash
+                    return;
+                }
+                peer.seq = seq;
+            }
+            if (online) {
+                add(peer, server, player);
+            } else {
+                remove(peer, player);
+            }
+        });
+    }
+
+    /**
+     * Replaces the players of a server that publishes its whole list
+     */
+    public void replace(@NotNull String server, @NotNull Collection<String> players) {
+        execute(() -> {
+            Peer peer = evict(server);
+            for (String player : players) {
+                add(peer, server, player);
+            }
+            peers.put(server, peer);
+        });
+    }
+
+    /**
+     * Forgets the players of a server that went offline
+     */
+    public void remove(@NotNull String server) {
+        execute(() -> evict(server));
+    }
+
+    /**
+     * @return whether the player is online on any server
+     */
+    public boolean isOnline(@NotNull String player) {
+        String name = player.toLowerCase();
+        return local.containsKey(name) || remote.containsKey(name);
+    }
+
+    /**
+     * @return the server of a player online on another server
+     */
+    @Nullable
+    public String getServer(@NotNull String player) {
+        PlayerInfo info = remote.get(player.toLowerCase());
+        return info != null ? info.getServer() : null;
+    }
+
+    /**
+     * @return the names of the players online on the other servers
+     */
+    @NotNull
+    public Set<String> getRemotePlayers() {
+        Snapshot current = snapshot;
+        int version = this.version;
+        if (current == null || current.version != version) {
+            Set<String> names = new HashSet<>();
+            for (PlayerInfo info : remote.values()) {
+                names.add(info.getName());
+            }
+            current = new Snapshot(version, Collections.unmodifiableSet(names));
+            snapshot = current;
+        }
+        return current.names;
+    }
+
+    private void reset() {
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(ttlMs));
+        args.add(serverId);
+        for (Map.Entry<String, String> entry : local.entrySet()) {
+            args.add(entry.getKey());
+            args.add(entry.getValue());
+        }
+        try (Jedis jedis = redis.getConnection()) {
+            jedis.eval(RESET_SCRIPT, Arrays.asList(key, SERVERS_KEY), args);
+        } catch (Exception e) {
+            redis.getPlugin().getLogger().log(Level.WARNING, "[Redis] Error registering the online players", e);
+        }
+    }
+
+    private void change(String player, boolean online) {
+        long seq;
+        try (Jedis jedis = redis.getConnection()) {
+            seq = (Long) jedis.eval(CHANGE_SCRIPT, Collections.singletonList(key),
+                    Arrays.asList(player.toLowerCase(), online ? player : "", String.valueOf(ttlMs)));
+        } catch (Exception e) {
+            redis.getPlugin().getLogger().log(Level.WARNING, "[Redis] Error updating the online players", e);
+            return;
+        }
+        if (seq < 0) {
+            // the other servers read the whole hash again, the sequence changed
+            reset();
+            return;
+        }
+        JsonObject json = new JsonObject();
+        json.addProperty("type", online ? "join" : "quit");
+        json.addProperty("player", player);
+        json.addProperty("server", serverId);
+        json.addProperty("seq", seq);
+        redis.publish(RedisManager.CHANNEL_ONLINE, json.toString());
+    }
+
+    private void heartbeat() {
+        List<?> result;
+        try (Jedis jedis = redis.getConnection()) {
+            result = (List<?>) jedis.eval(HEARTBEAT_SCRIPT, Arrays.asList(key, SERVERS_KEY),
+                    Arrays.asList(String.valueOf(ttlMs), PREFIX));
+        } catch (Exception e) {
+            redis.getPlugin().getLogger().log(Level.WARNING, "[Redis] Error sending the presence heartbeat", e);
+            return;
+        }
+        if ((Long) result.get(0) == 0L) {
+            // expired, e.g. the server was frozen or Redis restarted
+            reset();
+        }
+
+        Set<String> alive = new HashSet<>();
+        for (int i = 1; i + 1 < result.size(); i += 2) {
+            String server = String.valueOf(result.get(i));
+            if (server.equals(serverId)) {
+                continue;
+            }
+            alive.add(server);
+            Peer peer = peers.get(server);
+            if (peer == null || peer.seq != Long.parseLong(String.valueOf(result.get(i + 1)))) {
+                load(server);
+            }
+        }
+        for (Map.Entry<String, Peer> entry : new ArrayList<>(peers.entrySet())) {
+            String server = entry.getKey();
+            // servers that don't send a sequence don't send heartbeats either
+            if (!alive.contains(server) && entry.getValue().seq >= 0) {
+                evict(server);
+                redis.getPlugin().getLogger().fine("[Redis] Server " + server + " is offline");
+            }
+        }
+    }
+
+    /**
+     * Reads the players of a server from its hash
+     */
+    private void load(String server) {
+        Map<String, String> hash;
+        try (Jedis jedis = redis.getConnection()) {
+            hash = jedis.hgetAll(PREFIX + server);
+        } catch (Exception e) {
+            redis.getPlugin().getLogger().log(Level.WARNING, "[Redis] Error reading the players of " + server, e);
+            return;
+        }
+        Peer peer = evict(server);
+        String seq = hash.remove(SEQ_FIELD);
+        if (seq == null) {
+            // expired
+            return;
+        }
+        peer.seq = Long.parseLong(seq);
+        for (String player : hash.values()) {
+            add(peer, server, player);
+        }
+        peers.put(server, peer);
+    }
+
+    /**
+     * Removes the players of a server from the mirror
+     *
+     * @return a new peer for the server
+     */
+    private Peer evict(String server) {
+        Peer peer = peers.remove(server);
+        if (peer != null) {
+            for (String name : peer.players) {
+                PlayerInfo info = remote.get(name);
+                if (info != null && info.getServer().equals(server)) {
+                    remote.remove(name, info);
+                }
+            }
+            version++;
+        }
+        return new Peer();
+    }
+
+    private void add(Peer peer, String server, String player) {
+        String name = player.toLowerCase();
+        peer.players.add(name);
+        PlayerInfo previous = remote.put(name, new PlayerInfo(player, server));
+        if (previous != null && !previous.getServer().equals(server)) {
+            // moved without its quit being seen yet
+            Peer other = peers.get(previous.getServer());
+            if (other != null) {
+                other.players.remove(name);
+            }
+        }
+        version++;
+    }
+
+    private void remove(Peer peer, String player) {
+        String name = player.toLowerCase();
+        if (peer.players.remove(name)) {
+            remote.remove(name);
+            version++;
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    redis.getPlugin().getLogger().log(Level.WARNING, "[Redis] Error updating the online players", e);
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // shutting down
+        }
+    }
+
+    private static final class Snapshot {
+        private final int version;
+        private final Set<String> names;
+
+        private Snapshot(int version, Set<String> names) {
+            this.version = version;
+            this.names = names;
+        }
+    }
+
+    private static final class Peer {
+        private long seq = -1;
+        private final Set<String> players = new HashSet<>();
+    }
+}
@@ -0,0 +1,97 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.pubsub;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Queue and handler metrics of a Pub/Sub channel.
+ */
+public class ChannelStats {
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder handled = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder handleNanos = new LongAdder();
+    private final LongAccumulator maxHandleNanos = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    private volatile int depth;
+
+    void recordReceived(int depth) {
+        received.increment();
+        setDepth(depth);
+    }
+
+    void recordDropped() {
+        dropped.increment();
+    }
+
+    void recordHandled(long waitNanos, long handleNanos) {
+        handled.increment();
+        this.waitNanos.add(waitNanos);
+        this.handleNanos.add(handleNanos);
+        maxHandleNanos.accumulate(handleNanos);
+    }
+
+    void setDepth(int depth) {
+        this.depth = depth;
+        maxDepth.accumulate(depth);
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * @return the messages dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getHandled() {
+        return handled.sum();
+    }
+
+    /**
+     * @return the messages currently waiting to be handled
+     */
+    public int getQueueDepth() {
+        return depth;
+    }
+
+    public long getMaxQueueDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * @return the average time between receiving a message and handling it, in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        return average(waitNanos.sum());
+    }
+
+    /**
+     * @return the average time the handler took, in milliseconds
+     */
+    public double getAverageHandleMillis() {
+        return average(handleNanos.sum());
+    }
+
+    public double getMaxHandleMillis() {
+        return maxHandleNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private double average(long totalNanos) {
+        long count = handled.sum();
+        return count == 0 ? 0 : totalNanos / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("received=%d, handled=%d, dropped=%d, depth=%d (max %d), wait=%.2fms, " +
+                        "handler=%.2fms (max %.2fms)", getReceived(), getHandled(), getDropped(), getQueueDepth(),
+                getMaxQueueDepth(), getAverageWaitMillis(), getAverageHandleMillis(), getMaxHandleMillis());
+    }
+}
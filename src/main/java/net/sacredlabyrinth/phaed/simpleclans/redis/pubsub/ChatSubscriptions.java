@@ -0,0 +1,138 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.pubsub;
+
+import net.sacredlabyrinth.phaed.simpleclans.Clan;
+import net.sacredlabyrinth.phaed.simpleclans.ClanPlayer;
+import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
+import net.sacredlabyrinth.phaed.simpleclans.events.PlayerJoinedClanEvent;
+import net.sacredlabyrinth.phaed.simpleclans.redis.RedisManager;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides which chat channels this server listens to.
+ * <p>
+ * Clan and ally chat is published on the channel of the sender's clan, see {@link RedisManager#getChatChannel}.
+ * This server only subscribes to the channels of the clans with members online on it, and of their allies, so it
+ * doesn't receive the chat of the rest of the network. If a player who can spy on chat is online, every channel is
+ * subscribed.
+ * </p>
+ * <p>
+ * The channels are checked every second, and on the next tick after a player joins the server or a clan. They are
+ * compared with the channels Redis confirmed, so the subscriptions lost on a reconnection are made again.
+ * </p>
+ */
+public class ChatSubscriptions implements Listener {
+
+    private static final String SPY_PERMISSION = "simpleclans.admin.all-seeing-eye";
+
+    private final SimpleClans plugin;
+    private final RedisManager redis;
+    private final RedisSubscriber subscriber;
+    private final int shards;
+    // read by the subscriber thread when it reconnects
+    private volatile Set<String> wanted = Collections.emptySet();
+    private BukkitTask task;
+    private boolean refreshQueued;
+
+    public ChatSubscriptions(@NotNull SimpleClans plugin, @NotNull RedisManager redis,
+                             @NotNull RedisSubscriber subscriber, int shards) {
+        this.plugin = plugin;
+        this.redis = redis;
+        this.subscriber = subscriber;
+        this.shards = shards;
+    }
+
+    /**
+     * Starts checking the channels, must be called on the main thread
+     */
+    public void start() {
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::refresh, 20L, 20L);
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+    }
+
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+        }
+        HandlerList.unregisterAll(this);
+    }
+
+    /**
+     * @return the chat channels this server should listen to
+     */
+    @NotNull
+    public Set<String> getWanted() {
+        return wanted;
+    }
+
+    /**
+     * @return whether the channel is one of the chat channels of the clans
+     */
+    public static boolean isChatChannel(@NotNull String channel) {
+        return channel.startsWith(RedisManager.CHANNEL_CHAT + ":");
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        queueRefresh();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onMemberJoin(PlayerJoinedClanEvent event) {
+        queueRefresh();
+    }
+
+    private void queueRefresh() {
+        if (!refreshQueued) {
+            refreshQueued = true;
+            Bukkit.getScheduler().runTask(plugin, this::refresh);
+        }
+    }
+
+    private void refresh() {
+        refreshQueued = false;
+        Set<String> channels = new HashSet<>();
+        Set<String> seen = new HashSet<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            if (plugin.getPermissionsManager().has(player, SPY_PERMISSION)) {
+                for (int shard = 0; shard < shards; shard++) {
+                    channels.add(RedisManager.CHANNEL_CHAT + ":" + shard);
+                }
+                break;
+            }
+            ClanPlayer cp = plugin.getClanManager().getClanPlayer(player.getUniqueId());
+            Clan clan = cp != null ? cp.getClan() : null;
+            if (clan == null || !seen.add(clan.getTag())) {
+                continue;
+            }
+            channels.add(redis.getChatChannel(clan.getTag()));
+            for (String ally : clan.getAllies()) {
+                channels.add(redis.getChatChannel(ally));
+            }
+        }
+        wanted = Collections.unmodifiableSet(channels);
+
+        Set<String> active = subscriber.getActiveChannels();
+        Set<String> subscribe = new HashSet<>(channels);
+        subscribe.removeAll(active);
+        Set<String> unsubscribe = new HashSet<>();
+        for (String channel : active) {
+            if (isChatChannel(channel) && !channels.contains(channel)) {
+                unsubscribe.add(channel);
+            }
+        }
+        subscriber.subscribeChannels(subscribe);
+        subscriber.unsubscribeChannels(unsubscribe);
+    }
+}
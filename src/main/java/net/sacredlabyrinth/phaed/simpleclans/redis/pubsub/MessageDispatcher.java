@@ -0,0 +1,231 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.pubsub;
+
+import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Queues the messages of each channel and hands them to their handlers on the main thread.
+ * <p>
+ * Every channel has its own bounded queue, so a burst on one channel doesn't hold back the others, and the messages
+ * of a channel, and so of each clan or player, are handled in the order they were received.
+ * </p>
+ * <p>
+ * Each tick, the interactive channels (chat, broadcasts...) are handled first. Background channels (invalidations,
+ * updates), whose handlers may reload rows from the database, share what is left of the tick budget and continue on
+ * the next tick; each of them handles at least one message per tick. The subscriber never waits for room in a
+ * background queue: when one is full its oldest message is dropped, and its handler is told once the queue is drained.
+ * </p>
+ */
+public class MessageDispatcher {
+
+    private final SimpleClans plugin;
+    private final long budgetNanos;
+    private final Map<String, ChannelQueue> channels = new ConcurrentHashMap<>();
+    private final List<ChannelQueue> interactive = new CopyOnWriteArrayList<>();
+    private final List<ChannelQueue> background = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+    private BukkitTask task;
+    private int nextBackground;
+
+    /**
+     * @param budgetMillis the time per tick given to the background channels
+     */
+    public MessageDispatcher(@NotNull SimpleClans plugin, long budgetMillis) {
+        this.plugin = plugin;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, budgetMillis));
+    }
+
+    /**
+     * Registers the handler of a channel, replacing the previous one
+     *
+     * @param background whether the handler may wait behind the interactive channels
+     * @param capacity   how many messages may wait in the queue
+     * @param overflow   what happens when the queue is full
+     */
+    public void register(@NotNull String channel, @NotNull MessageHandler handler, boolean background, int capacity,
+                         @NotNull OverflowPolicy overflow) {
+        if (background && overflow == OverflowPolicy.BLOCK) {
+            plugin.getLogger().warning("[Redis] Channel " + channel + " can't block the subscriber, using drop-oldest");
+            overflow = OverflowPolicy.DROP_OLDEST;
+        }
+        ChannelQueue queue = new ChannelQueue(channel, handler, capacity, overflow);
+        ChannelQueue previous = channels.put(channel, queue);
+        if (previous != null) {
+            interactive.remove(previous);
+            this.background.remove(previous);
+        }
+        (background ? this.background : interactive).add(queue);
+    }
+
+    /**
+     * Queues a message, may block if the channel's queue is full and its policy is {@link OverflowPolicy#BLOCK}
+     *
+     * @return false if the channel has no handler
+     */
+    public boolean dispatch(@NotNull String channel, @NotNull String payload) {
+        ChannelQueue queue = channels.get(channel);
+        if (queue == null) {
+            return false;
+        }
+        queue.offer(payload);
+        return true;
+    }
+
+    /**
+     * Starts handling the queued messages every tick, must be called on the main thread
+     */
+    public void start() {
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::drain, 1L, 1L);
+    }
+
+    /**
+     * Stops handling messages and releases a subscriber waiting for room
+     */
+    public void shutdown() {
+        running = false;
+        if (task != null) {
+            task.cancel();
+        }
+        for (ChannelQueue queue : channels.values()) {
+            queue.messages.clear();
+        }
+    }
+
+    /**
+     * @return the metrics of each channel
+     */
+    @NotNull
+    public Map<String, ChannelStats> getStats() {
+        Map<String, ChannelStats> stats = new LinkedHashMap<>();
+        for (ChannelQueue queue : interactive) {
+            stats.put(queue.channel, queue.stats);
+        }
+        for (ChannelQueue queue : background) {
+            stats.put(queue.channel, queue.stats);
+        }
+        return stats;
+    }
+
+    private void drain() {
+        for (ChannelQueue queue : interactive) {
+            queue.drain(false, 0);
+        }
+        int size = background.size();
+        if (size == 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+        // the first channel changes every tick, so none keeps the whole budget
+        int first = nextBackground++ % size;
+        for (int i = 0; i < size; i++) {
+            background.get((first + i) % size).drain(true, deadline);
+        }
+    }
+
+    private final class ChannelQueue {
+        private final String channel;
+        private final MessageHandler handler;
+        private final BlockingQueue<Queued> messages;
+        private final OverflowPolicy overflow;
+        private final ChannelStats stats = new ChannelStats();
+        private volatile boolean overflowed;
+
+        private ChannelQueue(String channel, MessageHandler handler, int capacity, OverflowPolicy overflow) {
+            this.channel = channel;
+            this.handler = handler;
+            this.messages = new ArrayBlockingQueue<>(Math.max(1, capacity));
+            this.overflow = overflow;
+        }
+
+        /**
+         * Called by the subscriber thread
+         */
+        private void offer(String payload) {
+            Queued message = new Queued(payload, System.nanoTime());
+            switch (overflow) {
+                case DROP_NEWEST:
+                    if (!messages.offer(message)) {
+                        stats.recordDropped();
+                        overflowed = true;
+                        return;
+                    }
+                    break;
+                case DROP_OLDEST:
+                    while (!messages.offer(message)) {
+                        if (messages.poll() != null) {
+                            stats.recordDropped();
+                            overflowed = true;
+                        }
+                    }
+                    break;
+                default:
+                    try {
+                        while (!messages.offer(message, 100, TimeUnit.MILLISECONDS)) {
+                            if (!running) {
+                                return;
+                            }
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+            }
+            stats.recordReceived(messages.size());
+        }
+
+        /**
+         * Called on the main thread, handles the messages queued so far, at least one even past the deadline
+         */
+        private void drain(boolean limited, long deadline) {
+            int count = messages.size();
+            for (int i = 0; i < count; i++) {
+                if (limited && i > 0 && System.nanoTime() - deadline >= 0) {
+                    break;
+                }
+                Queued message = messages.poll();
+                if (message == null) {
+                    break;
+                }
+                long start = System.nanoTime();
+                try {
+                    handler.handle(message.payload);
+                } catch (Exception e) {
+                    plugin.getLogger().log(Level.WARNING, "[Redis] Error handling message on channel " + channel, e);
+                }
+                stats.recordHandled(start - message.received, System.nanoTime() - start);
+            }
+            stats.setDepth(messages.size());
+            if (overflowed && messages.isEmpty()) {
+                overflowed = false;
+                try {
+                    handler.overflowed();
+                } catch (Exception e) {
+                    plugin.getLogger().log(Level.WARNING, "[Redis] Error recovering dropped messages on channel " +
+                            channel, e);
+                }
+            }
+        }
+    }
+
+    private static final class Queued {
+        private final String payload;
+        private final long received;
+
+        private Queued(String payload, long received) {
+            this.payload = payload;
+            this.received = received;
+        }
+    }
+}
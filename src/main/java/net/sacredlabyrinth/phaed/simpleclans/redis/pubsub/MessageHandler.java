@@ -10,9 +10,16 @@ public interface MessageHandler {
     
     /**
      * Handles a message received from Redis.
-     * This method is called on the main Bukkit thread.
+     * This method is called on the main Bukkit thread, in the order the messages of the channel were received.
      * 
      * @param payload the message payload (without server-id prefix)
      */
     void handle(@NotNull String payload);
+
+    /**
+     * Called on the main Bukkit thread once the channel's queue is drained, if messages were dropped because it was
+     * full.
+     */
+    default void overflowed() {
+    }
 }
@@ -0,0 +1,40 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.pubsub;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+
+/**
+ * What happens to a message received while its channel's queue is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * The subscriber waits for room, Redis buffers the following messages
+     */
+    BLOCK,
+    /**
+     * The oldest queued message is dropped
+     */
+    DROP_OLDEST,
+    /**
+     * The received message is dropped
+     */
+    DROP_NEWEST;
+
+    /**
+     * @param name the name as written in the config, e.g. "drop-oldest"
+     * @param def  the policy to use if the name is unknown
+     */
+    @NotNull
+    public static OverflowPolicy parse(@Nullable String name, @NotNull OverflowPolicy def) {
+        if (name == null) {
+            return def;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException ex) {
+            return def;
+        }
+    }
+}
@@ -2,17 +2,25 @@ package net.sacredlabyrinth.phaed.simpleclans.redis.pubsub;
 
 import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
 import net.sacredlabyrinth.phaed.simpleclans.redis.RedisManager;
-import org.bukkit.Bukkit;
+import net.sacredlabyrinth.phaed.simpleclans.redis.lock.LockManager;
+import net.sacredlabyrinth.phaed.simpleclans.redis.request.RedisRequestStorage;
 import org.jetbrains.annotations.NotNull;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPubSub;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 /**
  * Subscribes to Redis Pub/Sub channels and dispatches messages to handlers.
  * Runs in a separate thread and automatically reconnects on failure.
+ * Messages are queued per channel by the {@link MessageDispatcher}, which hands them to the handlers.
  */
 public class RedisSubscriber extends JedisPubSub implements Runnable {
 
@@ -21,24 +29,34 @@ public class RedisSubscriber extends JedisPubSub implements Runnable {
     private final RedisManager redis;
     private final SimpleClans plugin;
     private final String serverId;
-    private final Map<String, MessageHandler> handlers;
+    private final MessageDispatcher dispatcher;
     
     private volatile boolean running = true;
     private int reconnectAttempts = 0;
+    // Channels Redis confirmed, updated by the subscriber thread
+    private final Set<String> active = ConcurrentHashMap.newKeySet();
 
     public RedisSubscriber(@NotNull RedisManager redis, 
                            @NotNull SimpleClans plugin,
                            @NotNull String serverId,
-                           @NotNull Map<String, MessageHandler> handlers) {
+                           @NotNull MessageDispatcher dispatcher) {
         this.redis = redis;
         this.plugin = plugin;
         this.serverId = serverId;
-        this.handlers = handlers;
+        this.dispatcher = dispatcher;
     }
 
     @Override
     public void onMessage(String channel, String message) {
         try {
+            // Every expired key is notified, only requests are handled
+            if (RedisManager.CHANNEL_EXPIRED.equals(channel)) {
+                if (RedisRequestStorage.isRequestKey(message)) {
+                    dispatcher.dispatch(channel, message);
+                }
+                return;
+            }
+            
             // Check if message is from this server
             if (isFromThisServer(message)) {
                 return;
@@ -47,19 +65,22 @@ public class RedisSubscriber extends JedisPubSub implements Runnable {
             // Extract payload (remove server-id prefix)
             String payload = extractPayload(message);
             
-            // Find handler for this channel
-            MessageHandler handler = handlers.get(channel);
-            if (handler != null) {
-                // Execute on main Bukkit thread
-                Bukkit.getScheduler().runTask(plugin, () -> {
-                    try {
-                        handler.handle(payload);
-                    } catch (Exception e) {
-                        plugin.getLogger().log(Level.WARNING,
-                                "[Redis] Error handling message on channel " + channel, e);
-                    }
-                });
+            // Wake up the threads waiting for the lock right away, they may be blocking the main thread
+            if (RedisManager.CHANNEL_LOCK.equals(channel)) {
+                LockManager locks = redis.getLockManager();
+                if (locks != null) {
+                    locks.signal(payload);
+                }
+                return;
+            }
+            
+            // The chat channels of the clans share the chat queue, a clan is always on the same channel
+            if (ChatSubscriptions.isChatChannel(channel)) {
+                channel = RedisManager.CHANNEL_CHAT;
             }
+            
+            // Queue for the channel's handler, it runs on the main Bukkit thread
+            dispatcher.dispatch(channel, payload);
         } catch (Exception e) {
             plugin.getLogger().log(Level.WARNING,
                     "[Redis] Error processing message from channel " + channel, e);
@@ -68,12 +89,60 @@ public class RedisSubscriber extends JedisPubSub implements Runnable {
 
     @Override
     public void onSubscribe(String channel, int subscribedChannels) {
-        plugin.getLogger().info("[Redis] Subscribed to channel: " + channel);
+        active.add(channel);
+        if (ChatSubscriptions.isChatChannel(channel)) {
+            plugin.getLogger().fine("[Redis] Subscribed to channel: " + channel);
+        } else {
+            plugin.getLogger().info("[Redis] Subscribed to channel: " + channel);
+        }
     }
 
     @Override
     public void onUnsubscribe(String channel, int subscribedChannels) {
-        plugin.getLogger().info("[Redis] Unsubscribed from channel: " + channel);
+        active.remove(channel);
+        if (ChatSubscriptions.isChatChannel(channel)) {
+            plugin.getLogger().fine("[Redis] Unsubscribed from channel: " + channel);
+        } else {
+            plugin.getLogger().info("[Redis] Unsubscribed from channel: " + channel);
+        }
+    }
+
+    /**
+     * @return the channels Redis confirmed this subscriber listens to
+     */
+    @NotNull
+    public Set<String> getActiveChannels() {
+        return Collections.unmodifiableSet(active);
+    }
+
+    /**
+     * Subscribes to more channels while connected.
+     * After a reconnection, only the channels wanted by {@link ChatSubscriptions} are subscribed again.
+     */
+    public void subscribeChannels(@NotNull Collection<String> channels) {
+        if (channels.isEmpty() || !isSubscribed()) {
+            return;
+        }
+        try {
+            subscribe(channels.toArray(new String[0]));
+        } catch (Exception e) {
+            // Disconnected, the channels are subscribed when reconnecting
+            plugin.getLogger().log(Level.FINE, "[Redis] Could not subscribe to " + channels, e);
+        }
+    }
+
+    /**
+     * Unsubscribes from some channels while connected
+     */
+    public void unsubscribeChannels(@NotNull Collection<String> channels) {
+        if (channels.isEmpty() || !isSubscribed()) {
+            return;
+        }
+        try {
+            unsubscribe(channels.toArray(new String[0]));
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.FINE, "[Redis] Could not unsubscribe from " + channels, e);
+        }
     }
 
     /**
@@ -87,18 +156,26 @@ public class RedisSubscriber extends JedisPubSub implements Runnable {
                 
                 plugin.getLogger().info("[Redis] Subscribing to channels...");
                 
-                // Subscribe to all channels (this blocks until unsubscribed)
-                jedis.subscribe(this,
+                // Subscribe to all channels, and the chat channels of the local clans (this blocks until unsubscribed)
+                List<String> channels = new ArrayList<>(Arrays.asList(
                         RedisManager.CHANNEL_INVALIDATE,
                         RedisManager.CHANNEL_UPDATE,
                         RedisManager.CHANNEL_CHAT,
                         RedisManager.CHANNEL_BROADCAST,
                         RedisManager.CHANNEL_REQUEST,
                         RedisManager.CHANNEL_ONLINE,
-                        RedisManager.CHANNEL_BAN
-                );
+                        RedisManager.CHANNEL_BAN,
+                        RedisManager.CHANNEL_LOCK,
+                        RedisManager.CHANNEL_EXPIRED
+                ));
+                ChatSubscriptions chatSubscriptions = redis.getChatSubscriptions();
+                if (chatSubscriptions != null) {
+                    channels.addAll(chatSubscriptions.getWanted());
+                }
+                jedis.subscribe(this, channels.toArray(new String[0]));
                 
             } catch (Exception e) {
+                active.clear();
                 if (running) {
                     reconnectAttempts++;
                     int maxAttempts = redis.getConfig().getReconnectMaxAttempts();
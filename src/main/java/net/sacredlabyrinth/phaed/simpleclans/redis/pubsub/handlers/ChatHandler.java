@@ -1,12 +1,12 @@
 package net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.handlers;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
 import net.sacredlabyrinth.phaed.simpleclans.Clan;
 import net.sacredlabyrinth.phaed.simpleclans.ClanPlayer;
 import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
 import net.sacredlabyrinth.phaed.simpleclans.chat.SCMessage;
+import net.sacredlabyrinth.phaed.simpleclans.redis.codec.PayloadCodec;
 import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.MessageHandler;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
@@ -21,7 +21,7 @@ import java.util.logging.Level;
  * Handles chat messages from other servers.
  * Supports clan chat, ally chat, and private messages.
  * 
- * <p>Message format (JSON):</p>
+ * <p>Message format (JSON, or its compact form, see {@link PayloadCodec}):</p>
  * <pre>
  * {
  *   "type": "clan|ally|private",
@@ -39,17 +39,15 @@ public class ChatHandler implements MessageHandler {
     private static final String SPY_PERMISSION = "simpleclans.admin.all-seeing-eye";
     
     private final SimpleClans plugin;
-    private final Gson gson;
 
     public ChatHandler(@NotNull SimpleClans plugin) {
         this.plugin = plugin;
-        this.gson = new Gson();
     }
 
     @Override
     public void handle(@NotNull String payload) {
         try {
-            JsonObject json = gson.fromJson(payload, JsonObject.class);
+            JsonObject json = PayloadCodec.decode(payload);
             String type = json.has("type") ? json.get("type").getAsString() : "clan";
             
             switch (type) {
@@ -55,6 +55,15 @@ public class InvalidateHandler implements MessageHandler {
         }
     }
 
+    /**
+     * Some invalidations were lost while the queue was full, everything is reloaded instead
+     */
+    @Override
+    public void overflowed() {
+        plugin.getLogger().warning("[Redis] Invalidations were dropped, reloading every clan and player");
+        handleFullInvalidation();
+    }
+
     private void handleClanInvalidation(String[] parts) {
         if (parts.length < 2) {
             return;
@@ -6,9 +6,12 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
 import net.sacredlabyrinth.phaed.simpleclans.proxy.RedisProxyManager;
+import net.sacredlabyrinth.phaed.simpleclans.redis.presence.PresenceRegistry;
 import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.MessageHandler;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 
 /**
@@ -16,11 +19,14 @@ import java.util.logging.Level;
  * 
  * <p>Message formats:</p>
  * <ul>
- *   <li>{"type":"join","player":"PlayerName"} - Player joined a server</li>
- *   <li>{"type":"quit","player":"PlayerName"} - Player left a server</li>
- *   <li>{"type":"sync","players":["Player1","Player2",...]} - Full player list sync</li>
- *   <li>{"type":"request_sync"} - Request all servers to send their player lists</li>
+ *   <li>{"type":"join","player":"PlayerName","server":"id","seq":1} - Player joined a server</li>
+ *   <li>{"type":"quit","player":"PlayerName","server":"id","seq":2} - Player left a server</li>
+ *   <li>{"type":"offline","server":"id"} - Server shut down</li>
+ *   <li>{"type":"sync","players":["Player1","Player2",...]} - Full player list sync (older versions)</li>
+ *   <li>{"type":"request_sync"} - Request all servers to send their player lists (older versions)</li>
  * </ul>
+ * <p>The sequence of a change lets the {@link PresenceRegistry} notice missed changes, older versions don't send
+ * it.</p>
  */
 public class OnlinePlayersHandler implements MessageHandler {
 
@@ -45,6 +51,9 @@ public class OnlinePlayersHandler implements MessageHandler {
                 case "quit":
                     handleQuit(json);
                     break;
+                case "offline":
+                    handleOffline(json);
+                    break;
                 case "sync":
                     handleSync(json);
                     break;
@@ -62,36 +71,50 @@ public class OnlinePlayersHandler implements MessageHandler {
     private void handleJoin(JsonObject json) {
         String playerName = json.get("player").getAsString();
         String serverName = json.has("server") ? json.get("server").getAsString() : "unknown";
-        RedisProxyManager proxyManager = getProxyManager();
-        if (proxyManager != null) {
-            proxyManager.addGlobalPlayer(playerName, serverName);
+        PresenceRegistry presence = getPresence();
+        if (presence != null) {
+            presence.apply(serverName, playerName, true, getSequence(json));
             plugin.getLogger().fine("[Redis] Player joined on server " + serverName + ": " + playerName);
         }
     }
 
     private void handleQuit(JsonObject json) {
         String playerName = json.get("player").getAsString();
-        RedisProxyManager proxyManager = getProxyManager();
-        if (proxyManager != null) {
-            proxyManager.removeGlobalPlayer(playerName);
+        String serverName = json.has("server") ? json.get("server").getAsString() : "unknown";
+        PresenceRegistry presence = getPresence();
+        if (presence != null) {
+            presence.apply(serverName, playerName, false, getSequence(json));
             plugin.getLogger().fine("[Redis] Player quit on another server: " + playerName);
         }
     }
 
+    private void handleOffline(JsonObject json) {
+        String serverName = json.get("server").getAsString();
+        PresenceRegistry presence = getPresence();
+        if (presence != null) {
+            presence.remove(serverName);
+            plugin.getLogger().fine("[Redis] Server went offline: " + serverName);
+        }
+    }
+
     private void handleSync(JsonObject json) {
         JsonArray players = json.getAsJsonArray("players");
         String serverName = json.has("server") ? json.get("server").getAsString() : "unknown";
-        RedisProxyManager proxyManager = getProxyManager();
-        if (proxyManager != null) {
-            // Clear players from this server before re-adding (in case some disconnected)
-            proxyManager.clearPlayersFromServer(serverName);
+        PresenceRegistry presence = getPresence();
+        if (presence != null) {
+            List<String> names = new ArrayList<>(players.size());
             for (int i = 0; i < players.size(); i++) {
-                proxyManager.addGlobalPlayer(players.get(i).getAsString(), serverName);
+                names.add(players.get(i).getAsString());
             }
+            presence.replace(serverName, names);
             plugin.getLogger().fine("[Redis] Synced " + players.size() + " players from server " + serverName);
         }
     }
 
+    private static long getSequence(JsonObject json) {
+        return json.has("seq") ? json.get("seq").getAsLong() : -1;
+    }
+
     private void handleSyncRequest() {
         // Another server is requesting our player list - send it
         if (plugin.getRedisManager() != null && plugin.getRedisManager().isInitialized()) {
@@ -99,9 +122,9 @@ public class OnlinePlayersHandler implements MessageHandler {
         }
     }
 
-    private RedisProxyManager getProxyManager() {
+    private PresenceRegistry getPresence() {
         if (plugin.getProxyManager() instanceof RedisProxyManager) {
-            return (RedisProxyManager) plugin.getProxyManager();
+            return ((RedisProxyManager) plugin.getProxyManager()).getPresence();
         }
         return null;
     }
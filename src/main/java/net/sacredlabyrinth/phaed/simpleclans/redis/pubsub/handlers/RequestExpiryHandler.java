@@ -0,0 +1,38 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.handlers;
+
+import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
+import net.sacredlabyrinth.phaed.simpleclans.redis.RedisManager;
+import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.MessageHandler;
+import net.sacredlabyrinth.phaed.simpleclans.redis.request.RedisRequestStorage;
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Handles the expiration of requests stored in Redis.
+ * <p>
+ * Redis notifies every server when a request key expires: the request is removed from the local requests and from
+ * the request indexes.
+ * </p>
+ */
+public class RequestExpiryHandler implements MessageHandler {
+
+    private final SimpleClans plugin;
+
+    public RequestExpiryHandler(@NotNull SimpleClans plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void handle(@NotNull String payload) {
+        if (!RedisRequestStorage.isRequestKey(payload)) {
+            return;
+        }
+        plugin.getRequestManager().removeLocalRequest(payload.substring(payload.lastIndexOf(':') + 1));
+
+        RedisManager redis = plugin.getRedisManager();
+        RedisRequestStorage storage = redis != null ? redis.getRequestStorage() : null;
+        if (storage != null) {
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> storage.onExpired(payload));
+        }
+    }
+}
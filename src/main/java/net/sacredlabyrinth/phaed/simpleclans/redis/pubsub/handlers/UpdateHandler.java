@@ -0,0 +1,84 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.handlers;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
+import net.sacredlabyrinth.phaed.simpleclans.redis.RedisManager;
+import net.sacredlabyrinth.phaed.simpleclans.redis.codec.PayloadCodec;
+import net.sacredlabyrinth.phaed.simpleclans.redis.pubsub.MessageHandler;
+import net.sacredlabyrinth.phaed.simpleclans.redis.sync.DeltaSync;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Handles batches of field level updates of clans and players from other servers.
+ * <p>
+ * Updates that can't be applied in place are reloaded from the database once the whole batch was read, each clan
+ * and player only once, clans first so reloaded players find their clan.
+ * </p>
+ *
+ * @see DeltaSync
+ */
+public class UpdateHandler implements MessageHandler {
+
+    private final SimpleClans plugin;
+    private final DeltaSync sync;
+
+    public UpdateHandler(@NotNull SimpleClans plugin, @NotNull DeltaSync sync) {
+        this.plugin = plugin;
+        this.sync = sync;
+    }
+
+    @Override
+    public void handle(@NotNull String payload) {
+        try {
+            JsonObject message = PayloadCodec.decode(payload);
+            String origin = message.get("origin").getAsString();
+            RedisManager redis = plugin.getRedisManager();
+
+            Set<String> clansToReload = new LinkedHashSet<>();
+            Set<UUID> playersToReload = new LinkedHashSet<>();
+            for (JsonElement element : message.getAsJsonArray("updates")) {
+                JsonObject json = element.getAsJsonObject();
+                String type = json.get("type").getAsString();
+                String id = json.get("id").getAsString();
+
+                switch (type) {
+                    case DeltaSync.CLAN:
+                        if (!sync.apply(origin, json)) {
+                            clansToReload.add(id);
+                        }
+                        break;
+                    case DeltaSync.PLAYER:
+                        UUID uuid = UUID.fromString(id);
+                        if (redis != null && !origin.equals(redis.getServerId())) {
+                            // the player may have killed someone there, the counts are loaded again on the next kill
+                            plugin.getClanManager().clearKillCounts(uuid);
+                        }
+                        if (!sync.apply(origin, json)) {
+                            playersToReload.add(uuid);
+                        }
+                        break;
+                    default:
+                        plugin.getLogger().fine("[Redis] Unknown update type: " + type);
+                }
+            }
+
+            for (String tag : clansToReload) {
+                plugin.getClanManager().invalidateLocalClanCache(tag);
+            }
+            for (UUID uuid : playersToReload) {
+                plugin.getClanManager().invalidateLocalPlayerCache(uuid);
+            }
+        } catch (JsonSyntaxException | IllegalStateException | NullPointerException e) {
+            plugin.getLogger().log(Level.WARNING, "[Redis] Invalid update message format: " + payload, e);
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "[Redis] Error handling update: " + payload, e);
+        }
+    }
+}
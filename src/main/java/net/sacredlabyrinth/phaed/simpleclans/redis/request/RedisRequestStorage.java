@@ -1,5 +1,6 @@
 package net.sacredlabyrinth.phaed.simpleclans.redis.request;
 
+import net.sacredlabyrinth.phaed.simpleclans.ClanRequest;
 import net.sacredlabyrinth.phaed.simpleclans.Request;
 import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
 import net.sacredlabyrinth.phaed.simpleclans.managers.ClanManager;
@@ -17,12 +18,19 @@ import java.util.logging.Level;
  * This class provides persistent storage for requests across multiple servers.
  * Requests are stored with a TTL to automatically expire after a configurable time.
  * </p>
+ * <p>
+ * Requests are indexed by the clans involved, so looking them up doesn't depend on how many requests the network
+ * has. The indexes are updated atomically with the request, and cleaned of expired requests when they are read. If
+ * expiry events are enabled, an expired request is also removed from them as soon as Redis notifies its expiration.
+ * </p>
  * 
  * <p>
  * Key structure:
  * <ul>
  *   <li>{@code simpleclans:requests:{key}} - Individual request data</li>
- *   <li>{@code simpleclans:requests:index} - Set of all active request keys</li>
+ *   <li>{@code simpleclans:requests:index:{shard}} - Sets of the active request keys, sharded by key</li>
+ *   <li>{@code simpleclans:requests:clan:{tag}} - Keys of the requests of a clan, or targeting it</li>
+ *   <li>{@code simpleclans:requests:refs:{key}} - The indexes a request is in</li>
  * </ul>
  * 
  * @since 2.0
@@ -30,11 +38,55 @@ import java.util.logging.Level;
 public class RedisRequestStorage {
 
     private static final String KEY_PREFIX = "simpleclans:requests:";
-    private static final String INDEX_KEY = "simpleclans:requests:index";
+    private static final String INDEX_PREFIX = KEY_PREFIX + "index:";
+    private static final String CLAN_PREFIX = KEY_PREFIX + "clan:";
+    private static final String REFS_PREFIX = KEY_PREFIX + "refs:";
+    /** The single index set of older versions */
+    private static final String LEGACY_INDEX_KEY = KEY_PREFIX + "index";
+    private static final int INDEX_SHARDS = 16;
     
     /** Default TTL for requests: 5 minutes */
     private static final int DEFAULT_TTL_SECONDS = 300;
 
+    // Replaces the request and its index entries: KEYS = request, refs; ARGV = json, ttl, member, indexes...
+    private static final String STORE_SCRIPT =
+            "for _, index in ipairs(redis.call('smembers', KEYS[2])) do " +
+            "   redis.call('srem', index, ARGV[3]) " +
+            "end " +
+            "redis.call('del', KEYS[2]) " +
+            "redis.call('set', KEYS[1], ARGV[1], 'EX', ARGV[2]) " +
+            "for i = 4, #ARGV do " +
+            "   redis.call('sadd', ARGV[i], ARGV[3]) " +
+            "   redis.call('sadd', KEYS[2], ARGV[i]) " +
+            "end " +
+            // outlives the request, so its indexes can still be cleaned when it expires
+            "redis.call('expire', KEYS[2], tonumber(ARGV[2]) * 2) " +
+            "return 1";
+
+    // Removes the request's index entries: KEYS = request, refs; ARGV = member, "1" to delete the request
+    private static final String UNINDEX_SCRIPT =
+            "if ARGV[2] ~= '1' and redis.call('exists', KEYS[1]) == 1 then " +
+            "   return 0 " +
+            "end " +
+            "for _, index in ipairs(redis.call('smembers', KEYS[2])) do " +
+            "   redis.call('srem', index, ARGV[1]) " +
+            "end " +
+            "redis.call('del', KEYS[2]) " +
+            "redis.call('del', KEYS[1]) " +
+            "return 1";
+
+    // Returns the members of an index whose request still exists, removing the others: KEYS = index; ARGV = prefix
+    private static final String MEMBERS_SCRIPT =
+            "local live = {} " +
+            "for _, member in ipairs(redis.call('smembers', KEYS[1])) do " +
+            "   if redis.call('exists', ARGV[1] .. member) == 1 then " +
+            "       table.insert(live, member) " +
+            "   else " +
+            "       redis.call('srem', KEYS[1], member) " +
+            "   end " +
+            "end " +
+            "return live";
+
     private final RedisManager redisManager;
     private final SimpleClans plugin;
     private final int ttlSeconds;
@@ -48,8 +100,38 @@ public class RedisRequestStorage {
     public RedisRequestStorage(@NotNull RedisManager redisManager, @NotNull SimpleClans plugin) {
         this.redisManager = redisManager;
         this.plugin = plugin;
-        // Could be made configurable in the future
-        this.ttlSeconds = DEFAULT_TTL_SECONDS;
+        int configured = redisManager.getConfig().getRequestTtl();
+        this.ttlSeconds = configured > 0 ? configured : DEFAULT_TTL_SECONDS;
+    }
+
+    /**
+     * Asks Redis to notify expired keys, so expired requests leave the indexes right away.
+     * Managed Redis services may refuse it, the indexes are then cleaned when they are read.
+     */
+    public void enableExpiryEvents() {
+        try (Jedis jedis = redisManager.getResource()) {
+            if (jedis == null) {
+                return;
+            }
+            Map<String, String> current = jedis.configGet("notify-keyspace-events");
+            String flags = current.getOrDefault("notify-keyspace-events", "");
+            boolean allKeyspace = flags.contains("A");
+            if (flags.contains("E") && (flags.contains("x") || allKeyspace)) {
+                return;
+            }
+            StringBuilder updated = new StringBuilder(flags);
+            if (!flags.contains("E")) {
+                updated.append('E');
+            }
+            if (!flags.contains("x") && !allKeyspace) {
+                updated.append('x');
+            }
+            jedis.configSet("notify-keyspace-events", updated.toString());
+            plugin.getLogger().info("[Redis Request] Enabled expired key notifications");
+        } catch (Exception e) {
+            plugin.getLogger().info("[Redis Request] Could not enable expired key notifications (" + e.getMessage() +
+                    "), request indexes will be cleaned when read");
+        }
     }
 
     /**
@@ -61,8 +143,7 @@ public class RedisRequestStorage {
      */
     public boolean storeRequest(@NotNull String key, @NotNull Request request) {
         String normalizedKey = key.toLowerCase();
-        String redisKey = KEY_PREFIX + normalizedKey;
-        String json = RequestSerializer.serialize(request);
+        String json = RequestSerializer.serialize(request, redisManager.getConfig().isCompactPayloads());
 
         try (Jedis jedis = redisManager.getResource()) {
             if (jedis == null) {
@@ -70,11 +151,13 @@ public class RedisRequestStorage {
                 return false;
             }
             
-            // Store the request with TTL
-            jedis.setex(redisKey, ttlSeconds, json);
-            
-            // Add to index for listing
-            jedis.sadd(INDEX_KEY, normalizedKey);
+            // Store the request with TTL and replace its index entries
+            List<String> args = new ArrayList<>();
+            args.add(json);
+            args.add(String.valueOf(ttlSeconds));
+            args.add(normalizedKey);
+            args.addAll(getIndexes(normalizedKey, request));
+            jedis.eval(STORE_SCRIPT, Arrays.asList(KEY_PREFIX + normalizedKey, REFS_PREFIX + normalizedKey), args);
             
             return true;
         } catch (Exception e) {
@@ -83,6 +166,29 @@ public class RedisRequestStorage {
         }
     }
 
+    /**
+     * @return the indexes a request belongs to
+     */
+    @NotNull
+    private Set<String> getIndexes(@NotNull String normalizedKey, @NotNull Request request) {
+        Set<String> indexes = new LinkedHashSet<>();
+        indexes.add(getShard(normalizedKey));
+        if (request.getClan() != null) {
+            indexes.add(CLAN_PREFIX + request.getClan().getTag().toLowerCase());
+        }
+        ClanRequest type = request.getType();
+        if (request.getTarget() != null && (type == ClanRequest.CREATE_ALLY || type == ClanRequest.BREAK_RIVALRY ||
+                type == ClanRequest.START_WAR || type == ClanRequest.END_WAR)) {
+            indexes.add(CLAN_PREFIX + request.getTarget().toLowerCase());
+        }
+        return indexes;
+    }
+
+    @NotNull
+    private static String getShard(@NotNull String normalizedKey) {
+        return INDEX_PREFIX + Math.floorMod(normalizedKey.hashCode(), INDEX_SHARDS);
+    }
+
     /**
      * Retrieves a request from Redis.
      *
@@ -102,8 +208,6 @@ public class RedisRequestStorage {
             
             String json = jedis.get(redisKey);
             if (json == null) {
-                // Clean up index if key doesn't exist
-                jedis.srem(INDEX_KEY, normalizedKey);
                 plugin.getLogger().fine(() -> "[Redis Request] Request not found in Redis: " + key);
                 return null;
             }
@@ -159,8 +263,8 @@ public class RedisRequestStorage {
                 return false;
             }
             
-            jedis.del(redisKey);
-            jedis.srem(INDEX_KEY, normalizedKey);
+            jedis.eval(UNINDEX_SCRIPT, Arrays.asList(redisKey, REFS_PREFIX + normalizedKey),
+                    Arrays.asList(normalizedKey, "1"));
             return true;
         } catch (Exception e) {
             plugin.getLogger().log(Level.WARNING, "Failed to remove request from Redis: " + key, e);
@@ -168,6 +272,48 @@ public class RedisRequestStorage {
         }
     }
 
+    /**
+     * Removes an expired request from the indexes, unless it was stored again since.
+     *
+     * @param redisKey the expired key, as notified by Redis
+     */
+    public void onExpired(@NotNull String redisKey) {
+        if (!isRequestKey(redisKey)) {
+            return;
+        }
+        String normalizedKey = redisKey.substring(KEY_PREFIX.length());
+        try (Jedis jedis = redisManager.getResource()) {
+            if (jedis == null) {
+                return;
+            }
+            jedis.eval(UNINDEX_SCRIPT, Arrays.asList(redisKey, REFS_PREFIX + normalizedKey),
+                    Arrays.asList(normalizedKey, "0"));
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to unindex expired request: " + normalizedKey, e);
+        }
+    }
+
+    /**
+     * Checks whether a key is the key of a request, not of an index.
+     *
+     * @param redisKey the Redis key
+     * @return true if it is a request key
+     */
+    public static boolean isRequestKey(@NotNull String redisKey) {
+        return redisKey.startsWith(KEY_PREFIX) && redisKey.indexOf(':', KEY_PREFIX.length()) == -1;
+    }
+
+    /**
+     * Gets the keys of the requests of a clan, and of the requests targeting it.
+     *
+     * @param clanTag the clan tag
+     * @return set of request keys
+     */
+    @NotNull
+    public Set<String> getClanRequestKeys(@NotNull String clanTag) {
+        return getMembers(CLAN_PREFIX + clanTag.toLowerCase());
+    }
+
     /**
      * Gets all active request keys from Redis.
      *
@@ -175,29 +321,34 @@ public class RedisRequestStorage {
      */
     @NotNull
     public Set<String> getAllRequestKeys() {
+        Set<String> keys = new HashSet<>();
+        for (int shard = 0; shard < INDEX_SHARDS; shard++) {
+            keys.addAll(getMembers(INDEX_PREFIX + shard));
+        }
+        return keys;
+    }
+
+    /**
+     * @return the members of an index whose request did not expire
+     */
+    @NotNull
+    private Set<String> getMembers(@NotNull String index) {
         try (Jedis jedis = redisManager.getResource()) {
             if (jedis == null) {
                 return Collections.emptySet();
             }
             
-            Set<String> keys = jedis.smembers(INDEX_KEY);
-            if (keys == null) {
-                return Collections.emptySet();
-            }
-            
-            // Clean up expired entries from index
-            Set<String> validKeys = new HashSet<>();
-            for (String key : keys) {
-                if (jedis.exists(KEY_PREFIX + key)) {
-                    validKeys.add(key);
-                } else {
-                    jedis.srem(INDEX_KEY, key);
+            Object result = jedis.eval(MEMBERS_SCRIPT, Collections.singletonList(index),
+                    Collections.singletonList(KEY_PREFIX));
+            Set<String> keys = new HashSet<>();
+            if (result instanceof List) {
+                for (Object member : (List<?>) result) {
+                    keys.add(String.valueOf(member));
                 }
             }
-            
-            return validKeys;
+            return keys;
         } catch (Exception e) {
-            plugin.getLogger().log(Level.WARNING, "Failed to get request keys from Redis", e);
+            plugin.getLogger().log(Level.WARNING, "Failed to get request keys from Redis: " + index, e);
             return Collections.emptySet();
         }
     }
@@ -210,17 +361,26 @@ public class RedisRequestStorage {
     @NotNull
     public Map<String, Request> getAllRequests() {
         Map<String, Request> result = new HashMap<>();
+        List<String> keys = new ArrayList<>(getAllRequestKeys());
+        if (keys.isEmpty()) {
+            return result;
+        }
         
         try (Jedis jedis = redisManager.getResource()) {
             if (jedis == null) {
                 return result;
             }
             
-            Set<String> keys = getAllRequestKeys();
+            String[] redisKeys = new String[keys.size()];
+            for (int i = 0; i < redisKeys.length; i++) {
+                redisKeys[i] = KEY_PREFIX + keys.get(i);
+            }
+            List<String> values = jedis.mget(redisKeys);
             ClanManager clanManager = plugin.getClanManager();
             
-            for (String key : keys) {
-                String json = jedis.get(KEY_PREFIX + key);
+            for (int i = 0; i < keys.size(); i++) {
+                String key = keys.get(i);
+                String json = values.get(i);
                 if (json != null) {
                     RequestSerializer.SerializableRequest sr = RequestSerializer.deserialize(json);
                     if (sr != null) {
@@ -255,18 +415,20 @@ public class RedisRequestStorage {
      * Use with caution - this affects all servers.
      */
     public void clearAllRequests() {
+        Set<String> keys = getAllRequestKeys();
         try (Jedis jedis = redisManager.getResource()) {
             if (jedis == null) {
                 return;
             }
             
-            Set<String> keys = jedis.smembers(INDEX_KEY);
-            if (keys != null) {
-                for (String key : keys) {
-                    jedis.del(KEY_PREFIX + key);
-                }
+            for (String key : keys) {
+                jedis.eval(UNINDEX_SCRIPT, Arrays.asList(KEY_PREFIX + key, REFS_PREFIX + key),
+                        Arrays.asList(key, "1"));
+            }
+            for (int shard = 0; shard < INDEX_SHARDS; shard++) {
+                jedis.del(INDEX_PREFIX + shard);
             }
-            jedis.del(INDEX_KEY);
+            jedis.del(LEGACY_INDEX_KEY);
         } catch (Exception e) {
             plugin.getLogger().log(Level.WARNING, "Failed to clear requests from Redis", e);
         }
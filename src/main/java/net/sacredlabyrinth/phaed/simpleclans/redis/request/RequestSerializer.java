@@ -3,6 +3,7 @@ package net.sacredlabyrinth.phaed.simpleclans.redis.request;
 import com.google.gson.*;
 import net.sacredlabyrinth.phaed.simpleclans.*;
 import net.sacredlabyrinth.phaed.simpleclans.managers.ClanManager;
+import net.sacredlabyrinth.phaed.simpleclans.redis.codec.PayloadCodec;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -14,7 +15,8 @@ import java.util.stream.Collectors;
  * Serializes and deserializes Request objects to/from JSON for Redis storage.
  * <p>
  * This serializer converts Request objects into a compact JSON format that can be
- * stored in Redis and reconstructed on any server in the network.
+ * stored in Redis and reconstructed on any server in the network. Requests stored in the compact binary form of
+ * {@link PayloadCodec} are read as well.
  * </p>
  * 
  * @since 2.0
@@ -37,6 +39,18 @@ public final class RequestSerializer {
      */
     @NotNull
     public static String serialize(@NotNull Request request) {
+        return serialize(request, false);
+    }
+
+    /**
+     * Serializes a Request to JSON string, or its compact form.
+     *
+     * @param request the request to serialize
+     * @param compact whether to write the compact form, see {@link PayloadCodec}
+     * @return the serialized request
+     */
+    @NotNull
+    public static String serialize(@NotNull Request request, boolean compact) {
         SerializableRequest sr = new SerializableRequest();
         sr.type = request.getType().name();
         sr.target = request.getTarget();
@@ -55,7 +69,10 @@ public final class RequestSerializer {
             sr.acceptors.add(ad);
         }
         
-        return GSON.toJson(sr);
+        if (!compact) {
+            return GSON.toJson(sr);
+        }
+        return PayloadCodec.encode(GSON.toJsonTree(sr).getAsJsonObject(), true);
     }
 
     /**
@@ -65,14 +82,14 @@ public final class RequestSerializer {
      * to a proper Request object using the ClanManager to resolve entities.
      * </p>
      *
-     * @param json the JSON string
+     * @param json the JSON string, or its compact form
      * @return the deserialized SerializableRequest, or null if parsing fails
      */
     @Nullable
     public static SerializableRequest deserialize(@NotNull String json) {
         try {
-            return GSON.fromJson(json, SerializableRequest.class);
-        } catch (JsonSyntaxException e) {
+            return GSON.fromJson(PayloadCodec.decode(json), SerializableRequest.class);
+        } catch (JsonParseException e) {
             return null;
         }
     }
@@ -0,0 +1,315 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.sync;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import net.sacredlabyrinth.phaed.simpleclans.Clan;
+import net.sacredlabyrinth.phaed.simpleclans.ClanPlayer;
+import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
+import net.sacredlabyrinth.phaed.simpleclans.redis.RedisManager;
+import net.sacredlabyrinth.phaed.simpleclans.redis.codec.PayloadCodec;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Sends and applies field level updates of clans and players.
+ * <p>
+ * Each server numbers the updates it sends per clan or player. An update only carries the fields that changed since
+ * the previous one, so it can only be applied on top of it: a server that missed an update, or that never received
+ * one from that origin, reloads the row from the database instead.
+ * </p>
+ * <p>
+ * The state of a clan or player is read when the update is prepared, on the thread that changed it. Updates are
+ * collected during the flush window and sent as one message, a clan or player changed several times in the window is
+ * sent once, with its latest state.
+ * </p>
+ * <p>
+ * What was last sent or received about a clan or player is dropped once it was idle for a while, e.g. after the player
+ * quit or the clan was unloaded: its next update is then a full one.
+ * </p>
+ *
+ * <p>Message format (JSON, or its compact form, see {@link PayloadCodec}):</p>
+ * <pre>
+ * {
+ *   "origin": "server-id",
+ *   "updates": [
+ *     {
+ *       "type": "clan|player",
+ *       "id": "TAG|UUID",
+ *       "version": 12,
+ *       "full": false,   // true when a field that is not sent changed
+ *       "fields": {"deaths": 4, "flags": "{...}"}
+ *     }
+ *   ]
+ * }
+ * </pre>
+ */
+public class DeltaSync {
+
+    public static final String CLAN = "clan";
+    public static final String PLAYER = "player";
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    private final SimpleClans plugin;
+    private final RedisManager redis;
+    private final long flushWindow;
+    @Nullable
+    private final ScheduledExecutorService flusher;
+
+    private final Map<String, Update> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+    // guarded by itself, also keeps the versions in the order they are published
+    private final Map<String, Sent> sent = new HashMap<>();
+    private long sentSweep;
+    // only used on the main thread
+    private final Map<String, Received> received = new HashMap<>();
+    private long receivedSweep;
+
+    public DeltaSync(@NotNull SimpleClans plugin, @NotNull RedisManager redis) {
+        this.plugin = plugin;
+        this.redis = redis;
+        this.flushWindow = Math.max(0, redis.getConfig().getUpdateFlushWindow());
+        if (flushWindow > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "SimpleClans-RedisUpdates");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Reads the state of a clan, must be called on the thread that changes it
+     *
+     * @return the update to publish once the clan is saved
+     */
+    @NotNull
+    public Update prepare(@NotNull Clan clan) {
+        return new Update(CLAN, clan.getTag(), FieldSnapshot.of(clan));
+    }
+
+    /**
+     * Reads the state of a player, must be called on the thread that changes it
+     *
+     * @return the update to publish once the player is saved
+     */
+    @NotNull
+    public Update prepare(@NotNull ClanPlayer cp) {
+        return new Update(PLAYER, cp.getUniqueId().toString(), FieldSnapshot.of(cp));
+    }
+
+    /**
+     * Sends the changes of a clan, must be called after they are saved, on the thread that changes it
+     */
+    public void publish(@NotNull Clan clan) {
+        publish(prepare(clan));
+    }
+
+    /**
+     * Sends the changes of a player, must be called after they are saved, on the thread that changes it
+     */
+    public void publish(@NotNull ClanPlayer cp) {
+        publish(prepare(cp));
+    }
+
+    /**
+     * Forgets what was sent about a deleted clan or player, the next update will be a full one
+     */
+    public void forget(@NotNull String type, @NotNull String id) {
+        String key = type + ":" + id;
+        synchronized (pending) {
+            pending.remove(key);
+        }
+        synchronized (sent) {
+            sent.remove(key);
+        }
+    }
+
+    /**
+     * Sends the collected updates and stops the flusher
+     */
+    public void shutdown() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        flush();
+    }
+
+    /**
+     * Sends a prepared update, may be called from any thread
+     */
+    public void publish(@NotNull Update update) {
+        if (flusher == null) {
+            send(Collections.singletonList(update));
+            return;
+        }
+        synchronized (pending) {
+            pending.put(update.key, update);
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        try {
+            flusher.schedule(this::flush, flushWindow, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // shutting down
+            flush();
+        }
+    }
+
+    private void flush() {
+        List<Update> batch;
+        synchronized (pending) {
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+            flushScheduled = false;
+        }
+        if (!batch.isEmpty()) {
+            try {
+                send(batch);
+            } catch (Exception ex) {
+                plugin.getLogger().log(Level.WARNING, "[Redis] Error sending updates", ex);
+            }
+        }
+    }
+
+    private void send(List<Update> batch) {
+        synchronized (sent) {
+            long now = System.currentTimeMillis();
+            if (now - sentSweep >= IDLE_TIMEOUT) {
+                sentSweep = now;
+                sent.values().removeIf(state -> now - state.time >= IDLE_TIMEOUT);
+            }
+            JsonArray updates = new JsonArray();
+            for (Update update : batch) {
+                JsonObject json = toJson(update, now);
+                if (json != null) {
+                    updates.add(json);
+                }
+            }
+            if (updates.size() == 0) {
+                return;
+            }
+            JsonObject message = new JsonObject();
+            message.addProperty("origin", redis.getServerId());
+            message.add("updates", updates);
+            redis.publish(RedisManager.CHANNEL_UPDATE,
+                    PayloadCodec.encode(message, redis.getConfig().isCompactPayloads()));
+        }
+    }
+
+    /**
+     * @return the update, or null if nothing changed since the last one
+     */
+    @Nullable
+    private JsonObject toJson(Update update, long now) {
+        Sent state = sent.computeIfAbsent(update.key, k -> new Sent());
+        state.time = now;
+        FieldSnapshot current = update.snapshot;
+        FieldSnapshot previous = state.snapshot;
+        boolean full = previous == null || !current.isDeltaOf(previous);
+        JsonObject fields = full ? null : current.diff(previous);
+        if (fields != null && fields.size() == 0) {
+            return null;
+        }
+        state.snapshot = current;
+        state.version++;
+
+        JsonObject json = new JsonObject();
+        json.addProperty("type", update.type);
+        json.addProperty("id", update.id);
+        json.addProperty("version", state.version);
+        json.addProperty("full", full);
+        if (fields != null) {
+            json.add("fields", fields);
+        }
+        return json;
+    }
+
+    /**
+     * Applies an update in place. Must be called on the main thread.
+     *
+     * @param origin the server that sent the update
+     * @param json   the update
+     * @return false if it could not be applied and the clan or player must be reloaded
+     */
+    public boolean apply(@NotNull String origin, @NotNull JsonObject json) {
+        String type = json.get("type").getAsString();
+        String id = json.get("id").getAsString();
+        long version = json.get("version").getAsLong();
+        long now = System.currentTimeMillis();
+        if (now - receivedSweep >= IDLE_TIMEOUT) {
+            receivedSweep = now;
+            received.values().removeIf(state -> now - state.time >= IDLE_TIMEOUT);
+        }
+        Received state = received.computeIfAbsent(origin + "|" + type + ":" + id, k -> new Received());
+        long last = state.version;
+        state.version = version;
+        state.time = now;
+        if (last == 0 || last != version - 1 || json.get("full").getAsBoolean()) {
+            return false;
+        }
+
+        JsonObject fields = json.getAsJsonObject("fields");
+        if (CLAN.equals(type)) {
+            Clan clan = plugin.getClanManager().getClan(id);
+            if (clan == null) {
+                return false;
+            }
+            FieldSnapshot.apply(clan, fields);
+            return true;
+        }
+        if (PLAYER.equals(type)) {
+            ClanPlayer cp = plugin.getClanManager().getAnyClanPlayer(UUID.fromString(id));
+            if (cp == null) {
+                return false;
+            }
+            FieldSnapshot.apply(cp, fields);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The state of a clan or player, read when it was prepared
+     */
+    public static final class Update {
+        private final String type;
+        private final String id;
+        private final String key;
+        private final FieldSnapshot snapshot;
+
+        private Update(String type, String id, FieldSnapshot snapshot) {
+            this.type = type;
+            this.id = id;
+            this.key = type + ":" + id;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private static final class Sent {
+        private FieldSnapshot snapshot;
+        private long version;
+        private long time;
+    }
+
+    private static final class Received {
+        private long version;
+        private long time;
+    }
+}
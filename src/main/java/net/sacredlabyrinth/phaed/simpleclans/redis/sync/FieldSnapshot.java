@@ -0,0 +1,168 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.sync;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import net.sacredlabyrinth.phaed.simpleclans.Clan;
+import net.sacredlabyrinth.phaed.simpleclans.ClanPlayer;
+import net.sacredlabyrinth.phaed.simpleclans.Helper;
+import net.sacredlabyrinth.phaed.simpleclans.events.ClanBalanceUpdateEvent;
+import net.sacredlabyrinth.phaed.simpleclans.loggers.BankLogger;
+import net.sacredlabyrinth.phaed.simpleclans.loggers.BankOperator;
+import net.sacredlabyrinth.phaed.simpleclans.utils.YAMLSerializer;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+/**
+ * The state of a clan or player as seen by other servers.
+ * <p>
+ * Fields that change often (counters, rank, balance, flags...) are kept one by one, so an update only has to carry
+ * the ones that changed. The remaining columns are kept as a single signature: when it changes, the update can't be
+ * applied in place and other servers reload the row from the database.
+ * </p>
+ */
+final class FieldSnapshot {
+
+    private final JsonObject fields;
+    private final String signature;
+
+    private FieldSnapshot(@NotNull JsonObject fields, @NotNull String signature) {
+        this.fields = fields;
+        this.signature = signature;
+    }
+
+    @NotNull
+    static FieldSnapshot of(@NotNull Clan clan) {
+        JsonObject fields = new JsonObject();
+        fields.addProperty("balance", clan.getBalance());
+        fields.addProperty("flags", clan.getFlags());
+        fields.addProperty("verified", clan.isVerified());
+        fields.addProperty("friendlyFire", clan.isFriendlyFire());
+        fields.addProperty("fee", clan.getMemberFee());
+        fields.addProperty("feeEnabled", clan.isMemberFeeEnabled());
+        fields.addProperty("lastUsed", clan.getLastUsed());
+        fields.addProperty("bb", clan.getPackedBb());
+
+        String signature = join(clan.getTag(), clan.getColorTag(), clan.getName(), clan.getDescription(),
+                clan.getPackedAllies(), clan.getPackedRivals(), String.valueOf(clan.getFounded()),
+                Helper.ranksToJson(clan.getRanks(), clan.getDefaultRank()), YAMLSerializer.serialize(clan.getBanner()));
+        return new FieldSnapshot(fields, signature);
+    }
+
+    @NotNull
+    static FieldSnapshot of(@NotNull ClanPlayer cp) {
+        JsonObject fields = new JsonObject();
+        fields.addProperty("rivalKills", cp.getRivalKills());
+        fields.addProperty("neutralKills", cp.getNeutralKills());
+        fields.addProperty("civilianKills", cp.getCivilianKills());
+        fields.addProperty("allyKills", cp.getAllyKills());
+        fields.addProperty("deaths", cp.getDeaths());
+        fields.addProperty("leader", cp.isLeader());
+        fields.addProperty("trusted", cp.isTrusted());
+        fields.addProperty("friendlyFire", cp.isFriendlyFire());
+        fields.addProperty("lastSeen", cp.getLastSeen());
+        fields.addProperty("flags", cp.getFlags());
+
+        String signature = join(cp.getName(), cp.getTag(), cp.getPackedPastClans(), String.valueOf(cp.getJoinDate()),
+                Helper.toLanguageTag(cp.getLocale()), Helper.resignTimesToJson(cp.getResignTimes()));
+        return new FieldSnapshot(fields, signature);
+    }
+
+    /**
+     * @param previous the snapshot last sent
+     * @return whether only the tracked fields changed since the previous snapshot
+     */
+    boolean isDeltaOf(@NotNull FieldSnapshot previous) {
+        return signature.equals(previous.signature);
+    }
+
+    /**
+     * @param previous the snapshot last sent
+     * @return the fields that differ from the previous snapshot
+     */
+    @NotNull
+    JsonObject diff(@NotNull FieldSnapshot previous) {
+        JsonObject changed = new JsonObject();
+        for (Map.Entry<String, JsonElement> field : fields.entrySet()) {
+            if (!field.getValue().equals(previous.fields.get(field.getKey()))) {
+                changed.add(field.getKey(), field.getValue());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Applies fields produced by {@link #of(Clan)}, the clan is not saved
+     */
+    static void apply(@NotNull Clan clan, @NotNull JsonObject fields) {
+        if (fields.has("flags")) {
+            clan.setFlags(fields.get("flags").getAsString());
+        }
+        if (fields.has("verified")) {
+            clan.setVerified(fields.get("verified").getAsBoolean());
+        }
+        if (fields.has("friendlyFire")) {
+            clan.setFriendlyFire(fields.get("friendlyFire").getAsBoolean());
+        }
+        if (fields.has("fee")) {
+            clan.setMemberFee(fields.get("fee").getAsDouble());
+        }
+        if (fields.has("feeEnabled")) {
+            clan.setMemberFeeEnabled(fields.get("feeEnabled").getAsBoolean());
+        }
+        if (fields.has("lastUsed")) {
+            clan.setLastUsed(fields.get("lastUsed").getAsLong());
+        }
+        if (fields.has("bb")) {
+            clan.setPackedBb(fields.get("bb").getAsString());
+        }
+        if (fields.has("balance")) {
+            clan.setBalance(BankOperator.INTERNAL, ClanBalanceUpdateEvent.Cause.LOADING, BankLogger.Operation.SET,
+                    fields.get("balance").getAsDouble());
+        }
+    }
+
+    /**
+     * Applies fields produced by {@link #of(ClanPlayer)}, the player is not saved
+     */
+    static void apply(@NotNull ClanPlayer cp, @NotNull JsonObject fields) {
+        if (fields.has("flags")) {
+            cp.setFlags(fields.get("flags").getAsString());
+        }
+        if (fields.has("rivalKills")) {
+            cp.setRivalKills(fields.get("rivalKills").getAsInt());
+        }
+        if (fields.has("neutralKills")) {
+            cp.setNeutralKills(fields.get("neutralKills").getAsInt());
+        }
+        if (fields.has("civilianKills")) {
+            cp.setCivilianKills(fields.get("civilianKills").getAsInt());
+        }
+        if (fields.has("allyKills")) {
+            cp.setAllyKills(fields.get("allyKills").getAsInt());
+        }
+        if (fields.has("deaths")) {
+            cp.setDeaths(fields.get("deaths").getAsInt());
+        }
+        if (fields.has("leader")) {
+            cp.setLeader(fields.get("leader").getAsBoolean());
+        }
+        if (fields.has("trusted")) {
+            cp.setTrusted(fields.get("trusted").getAsBoolean());
+        }
+        if (fields.has("friendlyFire")) {
+            cp.setFriendlyFire(fields.get("friendlyFire").getAsBoolean());
+        }
+        if (fields.has("lastSeen")) {
+            cp.setLastSeen(fields.get("lastSeen").getAsLong());
+        }
+    }
+
+    private static String join(String... values) {
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            sb.append(value == null ? "" : value).append('\0');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,438 @@
+package net.sacredlabyrinth.phaed.simpleclans.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A small, dependency-free JDBC connection pool.
+ * <p>
+ * Connections handed out by {@link #getConnection()} are proxies: calling {@link Connection#close()} returns
+ * the underlying connection to the pool and closes every statement that was opened through it.
+ * Idle connections are validated before being handed out again, and wait times, active connections
+ * and query latency are tracked so they can be inspected at runtime.
+ * </p>
+ * <p>
+ * {@link #getSharedConnection()} keeps the contract of the single connection the cores had before the pool, for
+ * callers that never close it.
+ * </p>
+ */
+public final class ConnectionPool {
+
+    /**
+     * Connections that were returned less than this amount of time ago are not validated again
+     */
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final String name;
+    private final Logger log;
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final long connectionTimeoutNanos;
+    private final int validationTimeoutSeconds;
+    private final BlockingQueue<PooledEntry> idle = new LinkedBlockingQueue<>();
+    private Connection shared;
+
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+    private final AtomicLong maxQueryNanos = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * @param name                     the pool name, used in log messages
+     * @param log                      the logger
+     * @param maxSize                  the maximum amount of open connections
+     * @param connectionTimeoutMillis  how long a caller waits for a free connection before failing
+     * @param validationTimeoutSeconds the timeout passed to {@link Connection#isValid(int)}
+     * @param factory                  opens new physical connections
+     */
+    public ConnectionPool(@NotNull String name, @NotNull Logger log, int maxSize, long connectionTimeoutMillis,
+                          int validationTimeoutSeconds, @NotNull ConnectionFactory factory) {
+        this.name = name;
+        this.log = log;
+        this.maxSize = Math.max(1, maxSize);
+        this.connectionTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, connectionTimeoutMillis));
+        this.validationTimeoutSeconds = Math.max(0, validationTimeoutSeconds);
+        this.factory = factory;
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if the pool is not full.
+     * The caller must close the returned connection to give it back to the pool.
+     *
+     * @return a pooled connection
+     * @throws SQLException if a connection could not be opened or none became available in time
+     */
+    @NotNull
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + connectionTimeoutNanos;
+        while (true) {
+            if (closed) {
+                throw new SQLException(String.format("Connection pool %s is closed", name));
+            }
+            PooledEntry entry = idle.poll();
+            if (entry == null) {
+                entry = createIfAllowed();
+            }
+            if (entry == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    timeouts.increment();
+                    throw new SQLTimeoutException(String.format("Timed out waiting for a connection from pool %s " +
+                            "(active: %d, max: %d)", name, active.get(), maxSize));
+                }
+                try {
+                    entry = idle.poll(remaining, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a connection", ex);
+                }
+                if (entry == null) {
+                    continue;
+                }
+            }
+            if (!isValid(entry)) {
+                discard(entry);
+                continue;
+            }
+            recordWait(System.nanoTime() - start);
+            active.incrementAndGet();
+            return wrap(entry);
+        }
+    }
+
+    /**
+     * Returns a connection that is not part of the pool. It is shared by every caller, which must not close it, and
+     * is opened again if it was closed or is no longer valid. It is closed with the pool.
+     *
+     * @return the shared connection
+     * @throws SQLException if the pool is closed or the connection could not be opened
+     */
+    @NotNull
+    public synchronized Connection getSharedConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException(String.format("Connection pool %s is closed", name));
+        }
+        if (shared == null || shared.isClosed() || !shared.isValid(validationTimeoutSeconds)) {
+            closeShared();
+            shared = factory.create();
+            if (shared == null) {
+                throw new SQLException(String.format("Could not open a connection for pool %s", name));
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Closes every idle connection and prevents new ones from being borrowed.
+     * Connections currently in use are closed as soon as they are returned.
+     */
+    public void close() {
+        closed = true;
+        PooledEntry entry;
+        while ((entry = idle.poll()) != null) {
+            discard(entry);
+        }
+        synchronized (this) {
+            closeShared();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getTotalConnections() {
+        return total.get();
+    }
+
+    public int getActiveConnections() {
+        return active.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public long getBorrowCount() {
+        return borrows.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = borrows.sum();
+        return count == 0 ? 0 : waitNanos.sum() / (double) count / 1_000_000;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000D;
+    }
+
+    public long getQueryCount() {
+        return queries.sum();
+    }
+
+    public double getAverageQueryMillis() {
+        long count = queries.sum();
+        return count == 0 ? 0 : queryNanos.sum() / (double) count / 1_000_000;
+    }
+
+    public double getMaxQueryMillis() {
+        return maxQueryNanos.get() / 1_000_000D;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[active=%d, idle=%d, max=%d, borrows=%d, timeouts=%d, avgWait=%.2fms, " +
+                        "maxWait=%.2fms, queries=%d, avgQuery=%.2fms, maxQuery=%.2fms]", name, getActiveConnections(),
+                getIdleConnections(), maxSize, getBorrowCount(), getTimeoutCount(), getAverageWaitMillis(),
+                getMaxWaitMillis(), getQueryCount(), getAverageQueryMillis(), getMaxQueryMillis());
+    }
+
+    private PooledEntry createIfAllowed() throws SQLException {
+        int current;
+        do {
+            current = total.get();
+            if (current >= maxSize) {
+                return null;
+            }
+        } while (!total.compareAndSet(current, current + 1));
+
+        try {
+            Connection connection = factory.create();
+            if (connection == null) {
+                throw new SQLException(String.format("Could not open a connection for pool %s", name));
+            }
+            return new PooledEntry(connection);
+        } catch (SQLException | RuntimeException ex) {
+            total.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    private void closeShared() {
+        if (shared == null) {
+            return;
+        }
+        try {
+            shared.close();
+        } catch (SQLException ex) {
+            log.log(Level.FINE, "Error closing shared connection", ex);
+        }
+        shared = null;
+    }
+
+    private boolean isValid(PooledEntry entry) {
+        try {
+            if (entry.connection.isClosed()) {
+                return false;
+            }
+            if (System.nanoTime() - entry.lastUsed < VALIDATION_BYPASS_NANOS) {
+                return true;
+            }
+            return entry.connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private void discard(PooledEntry entry) {
+        total.decrementAndGet();
+        try {
+            entry.connection.close();
+        } catch (SQLException ex) {
+            log.log(Level.FINE, "Error closing pooled connection", ex);
+        }
+    }
+
+    private void release(PooledEntry entry) {
+        active.decrementAndGet();
+        entry.lastUsed = System.nanoTime();
+        try {
+            if (closed || entry.connection.isClosed()) {
+                discard(entry);
+                return;
+            }
+            if (!entry.connection.getAutoCommit()) {
+                entry.connection.rollback();
+                entry.connection.setAutoCommit(true);
+            }
+            entry.connection.clearWarnings();
+        } catch (SQLException ex) {
+            discard(entry);
+            return;
+        }
+        idle.offer(entry);
+    }
+
+    private void recordWait(long nanos) {
+        borrows.increment();
+        waitNanos.add(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private void recordQuery(long nanos) {
+        queries.increment();
+        queryNanos.add(nanos);
+        maxQueryNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private Connection wrap(PooledEntry entry) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[]{Connection.class},
+                new ConnectionHandler(entry));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Opens new physical connections for the pool
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private static final class PooledEntry {
+        private final Connection connection;
+        private volatile long lastUsed = System.nanoTime();
+
+        private PooledEntry(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+
+        private final PooledEntry entry;
+        private final List<Statement> statements = new ArrayList<>();
+        private boolean released;
+
+        private ConnectionHandler(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return released || entry.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + entry.connection;
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            Object result = ConnectionPool.invoke(entry.connection, method, args);
+            if (result instanceof Statement && method.getReturnType().isInterface()) {
+                Statement statement = (Statement) result;
+                synchronized (statements) {
+                    statements.add(statement);
+                }
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[]{method.getReturnType()},
+                        new StatementHandler(statement, (Connection) proxy));
+            }
+            return result;
+        }
+
+        private synchronized void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            synchronized (statements) {
+                for (Statement statement : statements) {
+                    try {
+                        statement.close();
+                    } catch (SQLException ignored) {
+                    }
+                }
+                statements.clear();
+            }
+            release(entry);
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+        private final Connection connection;
+
+        private StatementHandler(Statement statement, Connection connection) {
+            this.statement = statement;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            switch (methodName) {
+                case "getConnection":
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + statement;
+                default:
+                    break;
+            }
+            if (!methodName.startsWith("execute")) {
+                return ConnectionPool.invoke(statement, method, args);
+            }
+            long start = System.nanoTime();
+            try {
+                return ConnectionPool.invoke(statement, method, args);
+            } finally {
+                recordQuery(System.nanoTime() - start);
+            }
+        }
+    }
+}
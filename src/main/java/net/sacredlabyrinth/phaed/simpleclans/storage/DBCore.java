@@ -2,12 +2,17 @@ package net.sacredlabyrinth.phaed.simpleclans.storage;
 
 import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
 import net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField;
-import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.sql.RowSetMetaData;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -20,30 +25,98 @@ public interface DBCore {
     Logger log = plugin.getLogger();
 
     /**
-     * @return connection
+     * @return the pool backing this core
      */
-    Connection getConnection();
+    @NotNull ConnectionPool getPool();
+
+    /**
+     * @return the pool for queries that only read, which may have its own connections so reads don't wait for writes
+     */
+    default @NotNull ConnectionPool getReadPool() {
+        return getPool();
+    }
+
+    /**
+     * @return the writer that executes this core's updates off the main thread
+     */
+    @NotNull StorageWriter getWriter();
+
+    /**
+     * Returns a connection shared by every caller, it must not be closed
+     *
+     * @return connection or null if it could not be opened
+     * @deprecated borrow a connection with {@link #borrowConnection()} and close it when done
+     */
+    @Deprecated
+    default @Nullable Connection getConnection() {
+        try {
+            return getPool().getSharedConnection();
+        } catch (SQLException ex) {
+            log.log(Level.SEVERE, "Error obtaining a database connection", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool. The caller must close it (use try-with-resources) to return it.
+     *
+     * @return connection or null if none could be obtained
+     */
+    default @Nullable Connection borrowConnection() {
+        try {
+            return getPool().getConnection();
+        } catch (SQLException ex) {
+            log.log(Level.SEVERE, "Error obtaining a database connection", ex);
+            return null;
+        }
+    }
 
     /**
      * @return whether connection can be established
      */
     default boolean checkConnection() {
-        return getConnection() != null;
+        try (Connection connection = getPool().getConnection()) {
+            return connection != null;
+        } catch (SQLException ex) {
+            log.severe("Could not connect to the database: " + ex.getMessage());
+            return false;
+        }
     }
 
     /**
      * Close connection
      */
-    void close();
+    default void close() {
+        getWriter().shutdown(plugin.getSettingsManager().getInt(ConfigField.PERFORMANCE_WRITER_SHUTDOWN_TIMEOUT) * 1000L);
+        SimpleClans.debug("Closing " + getWriter());
+        SimpleClans.debug("Closing " + getPool());
+        getPool().close();
+        if (getReadPool() != getPool()) {
+            SimpleClans.debug("Closing " + getReadPool());
+            getReadPool().close();
+        }
+    }
 
     /**
-     * Execute a select statement
+     * Execute a select statement.
+     * The rows are copied to memory, so the connection is given back to the pool before this method returns.
+     *
      * @param query the query
      * @return the result set or null if the query failed
      */
     default @Nullable ResultSet select(String query) {
-        try {
-            return getConnection().createStatement().executeQuery(query);
+        try (Connection connection = getReadPool().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet res = statement.executeQuery(query)) {
+            CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+            rows.populate(res);
+            // some drivers report the column name instead of the alias, and the cached set only looks up names
+            ResultSetMetaData metaData = res.getMetaData();
+            RowSetMetaData rowsMetaData = (RowSetMetaData) rows.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                rowsMetaData.setColumnName(i, metaData.getColumnLabel(i));
+            }
+            return rows;
         } catch (SQLException ex) {
             log.log(Level.SEVERE, String.format("Error executing query: %s", query), ex);
         }
@@ -56,8 +129,9 @@ public interface DBCore {
      * @return true if the statement was executed
      */
     default boolean execute(String query) {
-        try {
-            getConnection().createStatement().execute(query);
+        try (Connection connection = getPool().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(query);
             return true;
         } catch (SQLException ex) {
             log.log(Level.SEVERE, String.format("Error executing query: %s", query), ex);
@@ -71,8 +145,8 @@ public interface DBCore {
      * @return true if the table exists
      */
     default boolean existsTable(String table) {
-        try {
-            ResultSet tables = getConnection().getMetaData().getTables(null, null, table, null);
+        try (Connection connection = getPool().getConnection();
+             ResultSet tables = connection.getMetaData().getTables(null, null, table, null)) {
             return tables.next();
         } catch (SQLException ex) {
             log.log(Level.SEVERE, String.format("Error checking if table %s exists", table), ex);
@@ -88,8 +162,8 @@ public interface DBCore {
      * @return true if the column exists
      */
     default boolean existsColumn(String table, String column) {
-        try {
-            ResultSet col = getConnection().getMetaData().getColumns(null, null, table, column);
+        try (Connection connection = getPool().getConnection();
+             ResultSet col = connection.getMetaData().getColumns(null, null, table, column)) {
             return col.next();
         } catch (Exception ex) {
             log.log(Level.SEVERE, String.format("Error checking if column %s exists in table %s", column, table), ex);
@@ -97,6 +171,28 @@ public interface DBCore {
         }
     }
 
+    /**
+     * Check whether an index exists
+     *
+     * @param table the table
+     * @param index the index name
+     * @return true if the index exists
+     */
+    default boolean existsIndex(String table, String index) {
+        try (Connection connection = getPool().getConnection();
+             ResultSet indexes = connection.getMetaData().getIndexInfo(null, null, table, false, false)) {
+            while (indexes.next()) {
+                if (index.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (SQLException ex) {
+            log.log(Level.SEVERE, String.format("Error checking if index %s exists in table %s", index, table), ex);
+            return false;
+        }
+    }
+
     default void executeUpdate(String query) {
         executeUpdateWithCallback(query, null);
     }
@@ -104,32 +200,35 @@ public interface DBCore {
     /**
      * Execute an update statement with an optional callback that runs after the query completes.
      * Useful for Redis notifications that need to happen AFTER the database write.
-     * 
+     *
      * @param query the query
      * @param onSuccess callback to run after successful execution (can be null)
      */
     default void executeUpdateWithCallback(String query, @Nullable Runnable onSuccess) {
-        final Exception exception = new Exception(); // Stores a reference to the caller's stack trace for async tasks
-        Runnable executeUpdate = () -> {
-            if (getConnection() != null) {
-                try {
-                    getConnection().createStatement().executeUpdate(query);
-                    // Execute callback on success
-                    if (onSuccess != null) {
-                        onSuccess.run();
-                    }
-                } catch (SQLException ex) {
-                    log.log(Level.SEVERE, String.format("Error executing query: %s", query), ex);
-                    if (!Bukkit.isPrimaryThread()) {
-                        log.log(Level.SEVERE, "Caller's stack trace:", exception);
-                    }
-                }
-            }
-        };
+        executeUpdate(query, null, onSuccess);
+    }
+
+    /**
+     * Execute an update statement, through the {@link StorageWriter} if threads are enabled
+     *
+     * @param query the query
+     * @param shard the row the query writes to (e.g. {@code clan:TAG}), updates to the same row keep their order
+     * @param onSuccess callback to run after successful execution (can be null)
+     */
+    default void executeUpdate(String query, @Nullable String shard, @Nullable Runnable onSuccess) {
         if (plugin.getSettingsManager().is(ConfigField.PERFORMANCE_USE_THREADS)) {
-            Bukkit.getScheduler().runTaskAsynchronously(plugin, executeUpdate);
-        } else {
-            executeUpdate.run();
+            getWriter().submit(shard, query, onSuccess);
+            return;
+        }
+        try (Connection connection = getPool().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate(query);
+        } catch (SQLException ex) {
+            log.log(Level.SEVERE, String.format("Error executing query: %s", query), ex);
+            return;
+        }
+        if (onSuccess != null) {
+            onSuccess.run();
         }
     }
 }
@@ -0,0 +1,148 @@
+package net.sacredlabyrinth.phaed.simpleclans.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Monthly {@code RANGE} partitioning of the MySQL kills table.
+ * <p>
+ * Each month of kills lives in its own partition, so expired kills are removed by dropping whole partitions
+ * instead of deleting them row by row. Kills older than the retention window when the table is converted go to
+ * a single {@code p_old} partition, and kills beyond the last monthly partition go to {@code p_future}.
+ * </p>
+ */
+public final class KillPartitioning {
+
+    private static final String OLD = "p_old";
+    private static final String FUTURE = "p_future";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    /**
+     * The value MySQL's {@code TO_DAYS} returns for 1970-01-01
+     */
+    private static final long TO_DAYS_EPOCH = 719528;
+
+    private final ConnectionPool pool;
+    private final Logger log;
+    private final String table;
+
+    /**
+     * @param pool  the MySQL pool
+     * @param log   the logger
+     * @param table the kills table name, with its prefix
+     */
+    public KillPartitioning(@NotNull ConnectionPool pool, @NotNull Logger log, @NotNull String table) {
+        this.pool = pool;
+        this.log = log;
+        this.table = table;
+    }
+
+    /**
+     * Partitions the table if needed, adds the partitions for this and next month and drops the partitions whose
+     * kills are all older than the cutoff
+     *
+     * @param cutoff kills before this day are expired
+     * @return the amount of dropped partitions
+     * @throws SQLException if the table could not be altered
+     */
+    public int maintain(@NotNull LocalDate cutoff) throws SQLException {
+        YearMonth current = YearMonth.now();
+        Map<String, Long> partitions = getPartitions();
+        if (partitions.isEmpty()) {
+            partition(YearMonth.from(cutoff), current.plusMonths(1));
+            partitions = getPartitions();
+        }
+
+        List<YearMonth> missing = new ArrayList<>();
+        for (YearMonth month = current; !month.isAfter(current.plusMonths(1)); month = month.plusMonths(1)) {
+            if (!partitions.containsKey(month.format(NAME_FORMAT))) {
+                missing.add(month);
+            }
+        }
+        if (!missing.isEmpty()) {
+            execute("ALTER TABLE `" + table + "` REORGANIZE PARTITION " + FUTURE + " INTO (" + definitions(missing) + ");");
+        }
+
+        long cutoffDays = toDays(cutoff);
+        int dropped = 0;
+        for (Map.Entry<String, Long> partition : partitions.entrySet()) {
+            Long bound = partition.getValue();
+            if (bound != null && bound <= cutoffDays) {
+                execute("ALTER TABLE `" + table + "` DROP PARTITION " + partition.getKey() + ";");
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    private void partition(YearMonth first, YearMonth last) throws SQLException {
+        log.warning(String.format("Partitioning table %s, kills can't be saved until it finishes...", table));
+        // kills saved before created_at existed have no date, they are treated as the oldest ones
+        execute("UPDATE `" + table + "` SET `created_at` = '1970-01-01 00:00:00' WHERE `created_at` IS NULL;");
+        // MySQL requires the partitioning column to be part of the primary key
+        execute("ALTER TABLE `" + table + "` MODIFY `created_at` datetime NOT NULL DEFAULT '1970-01-01 00:00:00', " +
+                "DROP PRIMARY KEY, ADD PRIMARY KEY (`kill_id`, `created_at`);");
+
+        List<YearMonth> months = new ArrayList<>();
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            months.add(month);
+        }
+        execute("ALTER TABLE `" + table + "` PARTITION BY RANGE (TO_DAYS(`created_at`)) (PARTITION " + OLD +
+                " VALUES LESS THAN (" + toDays(first.atDay(1)) + "), " + definitions(months) + ");");
+        log.info(String.format("Partitioned table %s", table));
+    }
+
+    private String definitions(List<YearMonth> months) {
+        StringBuilder sb = new StringBuilder();
+        for (YearMonth month : months) {
+            sb.append("PARTITION ").append(month.format(NAME_FORMAT)).append(" VALUES LESS THAN (")
+                    .append(toDays(month.plusMonths(1).atDay(1))).append("), ");
+        }
+        return sb.append("PARTITION ").append(FUTURE).append(" VALUES LESS THAN MAXVALUE").toString();
+    }
+
+    /**
+     * @return the partitions, in order, and their upper bounds as {@code TO_DAYS} values (null for MAXVALUE)
+     */
+    private Map<String, Long> getPartitions() throws SQLException {
+        Map<String, Long> partitions = new LinkedHashMap<>();
+        String query = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL " +
+                "ORDER BY PARTITION_ORDINAL_POSITION;";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement pst = connection.prepareStatement(query)) {
+            pst.setString(1, table);
+            try (ResultSet res = pst.executeQuery()) {
+                while (res.next()) {
+                    String description = res.getString("PARTITION_DESCRIPTION");
+                    Long bound = "MAXVALUE".equalsIgnoreCase(description) ? null : Long.valueOf(description);
+                    partitions.put(res.getString("PARTITION_NAME"), bound);
+                }
+            }
+        }
+        return partitions;
+    }
+
+    private void execute(String query) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(query);
+        }
+    }
+
+    private static long toDays(LocalDate date) {
+        return date.toEpochDay() + TO_DAYS_EPOCH;
+    }
+}
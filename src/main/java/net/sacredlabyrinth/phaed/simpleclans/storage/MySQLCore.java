@@ -1,24 +1,35 @@
 package net.sacredlabyrinth.phaed.simpleclans.storage;
 
 import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
+import net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager;
+import org.jetbrains.annotations.NotNull;
 
-import java.sql.Connection;
 import java.sql.DriverManager;
-import java.sql.SQLException;
 import java.util.logging.Logger;
 
+import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField.PERFORMANCE_WRITER_MAX_WAIT;
+import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField.PERFORMANCE_WRITER_QUEUE_SIZE;
+import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField.PERFORMANCE_WRITER_THREADS;
+
 /**
  * @author cc_madelg
  */
 public class MySQLCore implements DBCore {
 
+    private static final int DEFAULT_POOL_SIZE = 10;
+    private static final long DEFAULT_CONNECTION_TIMEOUT = 5000;
+    private static final int DEFAULT_VALIDATION_TIMEOUT = 2;
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 250;
+
     private final Logger log;
-    private Connection connection;
+    private final ConnectionPool pool;
+    private final StorageWriter writer;
     private final String host;
     private final String username;
     private final String password;
     private final String database;
     private final int port;
+    private final int statementCacheSize;
 
     /**
      * @param host     The host
@@ -27,47 +38,64 @@ public class MySQLCore implements DBCore {
      * @param password The password
      */
     public MySQLCore(String host, String database, int port, String username, String password) {
+        this(host, database, port, username, password, DEFAULT_POOL_SIZE, DEFAULT_CONNECTION_TIMEOUT,
+                DEFAULT_VALIDATION_TIMEOUT, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * @param host               The host
+     * @param database           The database
+     * @param username           The username
+     * @param password           The password
+     * @param poolSize           The maximum amount of open connections
+     * @param connectionTimeout  How long, in milliseconds, to wait for a free connection
+     * @param validationTimeout  How long, in seconds, to wait when validating an idle connection
+     * @param statementCacheSize How many prepared statements the driver caches per connection, 0 to disable
+     */
+    public MySQLCore(String host, String database, int port, String username, String password, int poolSize,
+                     long connectionTimeout, int validationTimeout, int statementCacheSize) {
         this.database = database;
         this.port = port;
         this.host = host;
         this.username = username;
         this.password = password;
+        this.statementCacheSize = statementCacheSize;
         this.log = SimpleClans.getInstance().getLogger();
         initialize();
+        this.pool = new ConnectionPool("SimpleClans-MySQL", log, poolSize, connectionTimeout, validationTimeout,
+                () -> DriverManager.getConnection(getUrl(), this.username, this.password));
+        SettingsManager settings = SimpleClans.getInstance().getSettingsManager();
+        this.writer = new StorageWriter("SimpleClans-MySQL-Writer", log, pool,
+                Math.min(poolSize, settings.getInt(PERFORMANCE_WRITER_THREADS)), settings.getInt(PERFORMANCE_WRITER_QUEUE_SIZE),
+                settings.getInt(PERFORMANCE_WRITER_MAX_WAIT));
     }
 
     private void initialize() {
         try {
             Class.forName("com.mysql.jdbc.Driver");
-            connection = DriverManager.getConnection("jdbc:mysql://" + host + ":" + port + "/" + database + "?useUnicode=true&characterEncoding=utf-8&autoReconnect=true&useSSL=false", username, password);
         } catch (ClassNotFoundException e) {
             log.severe("ClassNotFoundException! " + e.getMessage());
-        } catch (SQLException e) {
-            log.severe("SQLException! " + e.getMessage());
         }
     }
 
-    @Override
-    public Connection getConnection() {
-        try {
-            if (connection == null || connection.isClosed() || !connection.isValid(0)) {
-                initialize();
-            }
-        } catch (SQLException e) {
-            initialize();
+    private String getUrl() {
+        String url = "jdbc:mysql://" + host + ":" + port + "/" + database +
+                "?useUnicode=true&characterEncoding=utf-8&autoReconnect=true&useSSL=false";
+        if (statementCacheSize > 0) {
+            url += "&cachePrepStmts=true&useServerPrepStmts=true&prepStmtCacheSqlLimit=2048&prepStmtCacheSize=" +
+                    statementCacheSize;
         }
-        return connection;
+        return url;
     }
 
     @Override
-    public void close() {
-        try {
-            if (connection != null) {
-                connection.close();
-            }
-        } catch (Exception e) {
-            log.severe("Failed to close database connection! " + e.getMessage());
-        }
+    public @NotNull ConnectionPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public @NotNull StorageWriter getWriter() {
+        return writer;
     }
 
 }
@@ -1,19 +1,43 @@
 package net.sacredlabyrinth.phaed.simpleclans.storage;
 
 import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
+import net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField.PERFORMANCE_WRITER_MAX_WAIT;
+import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField.PERFORMANCE_WRITER_QUEUE_SIZE;
+
 /**
  * @author cc_madelg
  */
 public class SQLiteCore implements DBCore {
+    /**
+     * SQLite locks the whole file on writes, so more connections would only fail with SQLITE_BUSY
+     */
+    private static final int POOL_SIZE = 1;
+    /**
+     * In WAL mode readers don't wait for the writer, so selects (e.g. the main thread's) have their own connections
+     * instead of queueing behind the writer's work, such as a chunk of the kills purge
+     */
+    private static final int READ_POOL_SIZE = 2;
+    private static final long CONNECTION_TIMEOUT = 30000;
+    private static final int BUSY_TIMEOUT = 5000;
+    private static final int VALIDATION_TIMEOUT = 2;
+
     private final Logger log;
-    private Connection connection;
+    private final ConnectionPool pool;
+    private final ConnectionPool readPool;
+    private final StorageWriter writer;
     private final String dbLocation;
     private final String dbName;
     private File file;
@@ -26,6 +50,13 @@ public class SQLiteCore implements DBCore {
         this.dbLocation = dbLocation;
         this.log = SimpleClans.getInstance().getLogger();
         initialize();
+        this.pool = new ConnectionPool("SimpleClans-SQLite", log, POOL_SIZE, CONNECTION_TIMEOUT, VALIDATION_TIMEOUT,
+                this::openConnection);
+        this.readPool = new ConnectionPool("SimpleClans-SQLite-Read", log, READ_POOL_SIZE, CONNECTION_TIMEOUT,
+                VALIDATION_TIMEOUT, this::openConnection);
+        SettingsManager settings = SimpleClans.getInstance().getSettingsManager();
+        this.writer = new StorageWriter("SimpleClans-SQLite-Writer", log, pool, POOL_SIZE,
+                settings.getInt(PERFORMANCE_WRITER_QUEUE_SIZE), settings.getInt(PERFORMANCE_WRITER_MAX_WAIT));
     }
 
     private void initialize() {
@@ -42,33 +73,70 @@ public class SQLiteCore implements DBCore {
 
         try {
             Class.forName("org.sqlite.JDBC");
-
-            connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
-
-        } catch (SQLException ex) {
-            log.severe("SQLite exception on initialize " + ex);
         } catch (ClassNotFoundException ex) {
             log.severe("You need the SQLite library " + ex);
         }
     }
 
-    @Override
-    public Connection getConnection() {
-        if (connection == null) {
-            initialize();
+    private Connection openConnection() throws SQLException {
+        if (file == null) {
+            throw new SQLException("Database file is not available");
+        }
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL;");
+            statement.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT + ";");
+        } catch (SQLException ex) {
+            connection.close();
+            throw ex;
         }
-
         return connection;
     }
 
     @Override
-    public void close() {
+    public @NotNull ConnectionPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public @NotNull ConnectionPool getReadPool() {
+        return readPool;
+    }
+
+    @Override
+    public @NotNull StorageWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * @return the version of the SQLite library, e.g. 3.36.0, or null if it could not be read
+     */
+    public @Nullable String getVersion() {
+        try (Connection connection = readPool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet res = statement.executeQuery("SELECT sqlite_version();")) {
+            return res.next() ? res.getString(1) : null;
+        } catch (SQLException ex) {
+            log.log(Level.SEVERE, "Error reading the SQLite version", ex);
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the SQLite library understands {@code INSERT ... ON CONFLICT DO UPDATE}, added in 3.24.0
+     */
+    public boolean supportsUpsert() {
+        String version = getVersion();
+        if (version == null) {
+            return false;
+        }
+        String[] parts = version.split("\\.");
         try {
-            if (connection != null) {
-                connection.close();
-            }
-        } catch (Exception e) {
-            log.severe("Failed to close database connection! " + e.getMessage());
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return major > 3 || (major == 3 && minor >= 24);
+        } catch (NumberFormatException ex) {
+            return false;
         }
     }
 
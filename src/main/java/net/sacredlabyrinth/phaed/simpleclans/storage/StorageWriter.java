@@ -0,0 +1,452 @@
+package net.sacredlabyrinth.phaed.simpleclans.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind executor for database writes.
+ * <p>
+ * Writes are routed to one of the writer threads by their shard (e.g. {@code clan:TAG} or {@code player:UUID}),
+ * so writes to the same row are always executed in submission order. A write that is submitted while an identical
+ * one for the same row is still waiting in the queue is coalesced into it instead of being queued again.
+ * </p>
+ * <p>
+ * Each writer has a bounded queue: when it is full, the caller waits a little for room. If none is made in time, the
+ * write is queued over the capacity rather than stalling the caller (usually the main thread) any longer, or running
+ * it there, which would overtake the older writes of its row. On shutdown, the writers drain their queues before
+ * stopping, and writes submitted afterwards run on the caller's thread once the queued ones were executed.
+ * </p>
+ */
+public final class StorageWriter {
+
+    private static final String DEFAULT_SHARD = "";
+    private static final long POLL_INTERVAL = 250;
+    private static final long WARNING_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    private final String name;
+    private final Logger log;
+    private final ConnectionPool pool;
+    private final Worker[] workers;
+    private final Map<String, WriteTask> tails = new ConcurrentHashMap<>();
+    private final long maxWaitNanos;
+    private final AtomicLong lastWarning = new AtomicLong(System.nanoTime() - WARNING_INTERVAL);
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+
+    private volatile boolean accepting = true;
+
+    /**
+     * @param name      the writer name, used for thread names
+     * @param log       the logger
+     * @param pool      the pool connections are borrowed from
+     * @param threads   the amount of writer threads
+     * @param queueSize the capacity of each writer's queue
+     * @param maxWait   how long, in milliseconds, a caller waits for room in a full queue before queueing over it
+     */
+    public StorageWriter(@NotNull String name, @NotNull Logger log, @NotNull ConnectionPool pool, int threads,
+                         int queueSize, long maxWait) {
+        this.name = name;
+        this.log = log;
+        this.pool = pool;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWait));
+        this.workers = new Worker[Math.max(1, threads)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(name + "-" + i, Math.max(1, queueSize));
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queues a write
+     *
+     * @param shard       the row this write belongs to, writes with the same shard keep their order
+     * @param coalesceKey writes with the same shard and key replace each other while still queued, null disables it
+     * @param operation   the operation
+     * @param onSuccess   runs on the writer thread after the operation succeeds
+     */
+    public void submit(@Nullable String shard, @Nullable String coalesceKey, @NotNull SQLOperation operation,
+                       @Nullable Runnable onSuccess) {
+        submit(shard, coalesceKey, operation, onSuccess, null, null);
+    }
+
+    /**
+     * Queues a single update statement
+     *
+     * @param shard     the row this write belongs to, null if it has no particular ordering requirement
+     * @param query     the query
+     * @param onSuccess runs on the writer thread after the query succeeds
+     */
+    public void submit(@Nullable String shard, @NotNull String query, @Nullable Runnable onSuccess) {
+        final Exception caller = new Exception(); // Stores a reference to the caller's stack trace
+        submit(shard, null, connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(query);
+            }
+        }, onSuccess, String.format("query: %s", query), caller);
+    }
+
+    private void submit(@Nullable String shard, @Nullable String coalesceKey, @NotNull SQLOperation operation,
+                        @Nullable Runnable onSuccess, @Nullable String description, @Nullable Exception caller) {
+        submitted.increment();
+        String s = shard == null ? DEFAULT_SHARD : shard;
+        WriteTask task = new WriteTask(s, coalesceKey, operation, onSuccess, description, caller);
+        if (accepting && enqueue(task, true)) {
+            return;
+        }
+        runAfterShutdown(task);
+    }
+
+    /**
+     * Waits until the writes submitted so far for the shard have been executed, e.g. so a write made while holding a
+     * lock reaches the database before the lock is released
+     *
+     * @param shard         the row
+     * @param timeoutMillis how long to wait
+     * @return false if the writes were not executed in time
+     */
+    public boolean flush(@Nullable String shard, long timeoutMillis) {
+        String s = shard == null ? DEFAULT_SHARD : shard;
+        Worker worker = getWorker(s);
+        if (Thread.currentThread() == worker) {
+            return false;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        WriteTask barrier = new WriteTask(s, null, null, latch::countDown, null, null);
+        if (!accepting || !enqueue(barrier, false)) {
+            runAfterShutdown(barrier);
+            return true;
+        }
+        try {
+            return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return false if the worker was stopped and the task was not queued
+     */
+    private boolean enqueue(WriteTask task, boolean tail) {
+        Worker worker = getWorker(task.shard);
+        // the worker's own callbacks can't wait for room, the worker is the one making it
+        boolean own = Thread.currentThread() == worker;
+        boolean reserved = false;
+        boolean overflow = false;
+        while (true) {
+            synchronized (worker) {
+                if (worker.stopped) {
+                    if (reserved) {
+                        worker.room.release();
+                    }
+                    return false;
+                }
+                WriteTask last = tails.get(task.shard);
+                if (task.coalesceKey != null && last != null && task.coalesceKey.equals(last.coalesceKey) &&
+                        last.merge(task.operation, task.callbacks)) {
+                    if (reserved) {
+                        worker.room.release();
+                    }
+                    coalesced.increment();
+                    return true;
+                }
+                if (!own && !reserved && !overflow) {
+                    reserved = worker.room.tryAcquire();
+                }
+                if (own || reserved || overflow) {
+                    task.reserved = reserved;
+                    worker.queue.add(task);
+                    if (tail) {
+                        tails.put(task.shard, task);
+                    }
+                    return true;
+                }
+            }
+            if (awaitRoom(worker)) {
+                reserved = true;
+            } else if (!accepting) {
+                return false;
+            } else {
+                overflowed.increment();
+                overflow = true;
+            }
+        }
+    }
+
+    /**
+     * @return true if room was made, false if the wait timed out, the writer is shutting down or the thread was
+     * interrupted
+     */
+    private boolean awaitRoom(Worker worker) {
+        blocked.increment();
+        warnFull();
+        long deadline = System.nanoTime() + maxWaitNanos;
+        try {
+            while (accepting) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                long wait = Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL));
+                if (worker.room.tryAcquire(wait, TimeUnit.NANOSECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void warnFull() {
+        long now = System.nanoTime();
+        long last = lastWarning.get();
+        if (now - last >= WARNING_INTERVAL && lastWarning.compareAndSet(last, now)) {
+            log.warning(String.format("%s queue is full, the database is not keeping up (waited for room: %d, " +
+                    "queued over the capacity: %d)", name, getBlockedCount(), getOverflowCount()));
+        }
+    }
+
+    /**
+     * Runs a task on the caller's thread once the shutdown drained the queued writes, so it still runs after them
+     */
+    private void runAfterShutdown(WriteTask task) {
+        synchronized (this) {
+            callerRuns.increment();
+            task.run();
+        }
+    }
+
+    private Worker getWorker(String shard) {
+        return workers[Math.floorMod(shard.hashCode(), workers.length)];
+    }
+
+    /**
+     * Stops accepting writes and waits for the queued ones to be executed.
+     * The writers that did not drain in time are stopped once they finish their current write, and their remaining
+     * writes are executed on the caller's thread, in order.
+     *
+     * @param timeoutMillis how long to wait for the writers
+     */
+    public synchronized void shutdown(long timeoutMillis) {
+        if (!accepting) {
+            return;
+        }
+        accepting = false;
+        for (Worker worker : workers) {
+            worker.running = false;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Worker worker : workers) {
+            try {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<WriteTask> remaining = new ArrayList<>();
+        for (Worker worker : workers) {
+            synchronized (worker) {
+                // waits for the write the worker may still be executing
+                worker.execution.lock();
+                try {
+                    worker.stopped = true;
+                    worker.queue.drainTo(remaining);
+                } finally {
+                    worker.execution.unlock();
+                }
+            }
+        }
+        if (!remaining.isEmpty()) {
+            log.warning(String.format("%s did not drain in time, running %d writes now", name, remaining.size()));
+            remaining.forEach(WriteTask::run);
+        }
+        tails.clear();
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Worker worker : workers) {
+            depth += worker.queue.size();
+        }
+        return depth;
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getCallerRunsCount() {
+        return callerRuns.sum();
+    }
+
+    public long getBlockedCount() {
+        return blocked.sum();
+    }
+
+    public long getOverflowCount() {
+        return overflowed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[threads=%d, queued=%d, submitted=%d, coalesced=%d, executed=%d, failed=%d, " +
+                        "callerRuns=%d, blocked=%d, overflowed=%d]", name, workers.length, getQueueDepth(),
+                getSubmittedCount(), getCoalescedCount(), getExecutedCount(), getFailedCount(), getCallerRunsCount(),
+                getBlockedCount(), getOverflowCount());
+    }
+
+    /**
+     * A database operation executed with a pooled connection
+     */
+    @FunctionalInterface
+    public interface SQLOperation {
+        void execute(@NotNull Connection connection) throws SQLException;
+    }
+
+    private final class WriteTask implements Runnable {
+
+        private final String shard;
+        private final String coalesceKey;
+        private final String description;
+        private final Exception caller;
+        private final List<Runnable> callbacks = new ArrayList<>(1);
+        private SQLOperation operation;
+        private boolean started;
+        private boolean reserved;
+
+        private WriteTask(String shard, String coalesceKey, SQLOperation operation, Runnable onSuccess,
+                          String description, Exception caller) {
+            this.shard = shard;
+            this.coalesceKey = coalesceKey;
+            this.operation = operation;
+            this.description = description != null ? description : (shard.isEmpty() ? "database" : shard);
+            this.caller = caller;
+            if (onSuccess != null) {
+                callbacks.add(onSuccess);
+            }
+        }
+
+        private synchronized boolean merge(SQLOperation newer, List<Runnable> onSuccess) {
+            if (started) {
+                return false;
+            }
+            operation = newer;
+            for (Runnable callback : onSuccess) {
+                if (!callbacks.contains(callback)) {
+                    callbacks.add(callback);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            SQLOperation op;
+            List<Runnable> toRun;
+            synchronized (this) {
+                started = true;
+                op = operation;
+                toRun = new ArrayList<>(callbacks);
+            }
+            tails.remove(shard, this);
+            // barriers of flush() have no operation
+            if (op != null) {
+                try (Connection connection = pool.getConnection()) {
+                    op.execute(connection);
+                    executed.increment();
+                } catch (SQLException | RuntimeException ex) {
+                    failed.increment();
+                    log.log(Level.SEVERE, String.format("Error executing write, %s", description), ex);
+                    if (caller != null) {
+                        log.log(Level.SEVERE, "Caller's stack trace:", caller);
+                    }
+                    return;
+                }
+            }
+            for (Runnable callback : toRun) {
+                try {
+                    callback.run();
+                } catch (RuntimeException ex) {
+                    log.log(Level.SEVERE, String.format("Error running write callback, %s", description), ex);
+                }
+            }
+        }
+    }
+
+    private final class Worker extends Thread {
+
+        private final BlockingQueue<WriteTask> queue = new LinkedBlockingQueue<>();
+        private final Semaphore room;
+        // fair, so the shutdown is not starved by the worker taking it again right away
+        private final ReentrantLock execution = new ReentrantLock(true);
+        private volatile boolean running = true;
+        private boolean stopped;
+
+        private Worker(String name, int queueSize) {
+            super(name);
+            this.room = new Semaphore(queueSize);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                execution.lock();
+                try {
+                    if (stopped || (!running && queue.isEmpty())) {
+                        return;
+                    }
+                    WriteTask task = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (task != null) {
+                        if (task.reserved) {
+                            room.release();
+                        }
+                        task.run();
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                } finally {
+                    execution.unlock();
+                }
+            }
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package net.sacredlabyrinth.phaed.simpleclans.tasks;
 
 import net.sacredlabyrinth.phaed.simpleclans.*;
+import net.sacredlabyrinth.phaed.simpleclans.loggers.BankLogger;
 import net.sacredlabyrinth.phaed.simpleclans.loggers.BankOperator;
 import net.sacredlabyrinth.phaed.simpleclans.managers.PermissionsManager;
 import net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager;
 import net.sacredlabyrinth.phaed.simpleclans.proxy.ProxyManager;
+import net.sacredlabyrinth.phaed.simpleclans.redis.RedisManager;
+import net.sacredlabyrinth.phaed.simpleclans.redis.lock.DistributedLock;
 import net.sacredlabyrinth.phaed.simpleclans.utils.CurrencyFormat;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.scheduler.BukkitRunnable;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+
 import static net.sacredlabyrinth.phaed.simpleclans.SimpleClans.lang;
 import static net.sacredlabyrinth.phaed.simpleclans.events.ClanBalanceUpdateEvent.Cause;
 import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField.*;
@@ -74,37 +83,95 @@ public class CollectFeeTask extends BukkitRunnable {
             return;
         }
         
-        PermissionsManager pm = plugin.getPermissionsManager();
-        
+        List<Clan> clans = new ArrayList<>();
         for (Clan clan : plugin.getClanManager().getClans()) {
-            final double memberFee = clan.getMemberFee();
-            if (!clan.isMemberFeeEnabled() || memberFee <= 0) {
-                continue;
+            if (clan.isMemberFeeEnabled() && clan.getMemberFee() > 0) {
+                clans.add(clan);
             }
+        }
 
-            for (ClanPlayer cp : clan.getFeePayers()) {
-                OfflinePlayer player = Bukkit.getOfflinePlayer(cp.getUniqueId());
-                
-                boolean success = pm.chargePlayer(player, memberFee);
-                double balanceAfter = pm.playerGetMoney(player);
-                
-                if (success) {
-                    // Send message via proxy if player might be on another server
-                    String feeMessage = AQUA + lang("fee.collected", cp, CurrencyFormat.format(memberFee));
-                    if (player.isOnline()) {
-                        // Player is on this server, send directly
-                        ChatBlock.sendMessage(cp, feeMessage);
-                    } else if (plugin.getProxyManager() != null && plugin.getProxyManager().isOnline(cp.getName())) {
-                        // Player is online on another server, send via proxy
-                        plugin.getProxyManager().sendMessage(cp.getName(), feeMessage);
-                    }
+        RedisManager redis = plugin.getRedisManager();
+        if (redis != null && redis.isInitialized()) {
+            // Waiting for the bank locks must not stall the main thread
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> collectFeesLocked(redis, clans));
+        } else {
+            clans.forEach(this::collectFees);
+        }
+    }
 
-                    clan.deposit(new BankOperator(cp, balanceAfter), Cause.MEMBER_FEE, memberFee);
-                    plugin.getStorageManager().updateClan(clan);
+    /**
+     * Collects the fees of each clan while holding its bank lock, only the charges run on the main thread
+     */
+    private void collectFeesLocked(RedisManager redis, List<Clan> clans) {
+        long timeout = redis.getConfig().getLockBankTimeout();
+        for (Clan clan : clans) {
+            // Charging every member may outlast the lock's timeout, so its lease is renewed meanwhile
+            try (DistributedLock lock = redis.acquireRenewedLock("bank:" + clan.getTag(), timeout)) {
+                Double balance = null;
+                if (lock.tryAcquire()) {
+                    // The bank lock guards the balance, the other fields are kept in sync by the updates
+                    plugin.getStorageManager().flushClan(clan, timeout);
+                    balance = plugin.getStorageManager().retrieveClanBalance(clan.getTag());
+                    // If the lease is lost meanwhile, e.g. during a long pause, another server may already have
+                    // changed the balance, so each write checks the lock is still ours right before it runs
+                    plugin.getStorageManager().guardClan(clan, lock::isHeld);
                 } else {
-                    clan.removePlayerFromClan(cp.getUniqueId());
-                    clan.addBb(lang("bb.fee.player.kicked", cp.getName()));
+                    plugin.getLogger().warning("Collecting the fees of " + clan.getTag() +
+                            " without the bank lock");
+                }
+
+                try {
+                    Double reloaded = balance;
+                    Bukkit.getScheduler().callSyncMethod(plugin, () -> {
+                        if (reloaded != null) {
+                            clan.setBalance(BankOperator.INTERNAL, Cause.LOADING, BankLogger.Operation.SET, reloaded);
+                        }
+                        collectFees(clan);
+                        return null;
+                    }).get();
+                    // The next holder reloads the balance, so it must be saved before the lock is released
+                    plugin.getStorageManager().flushClan(clan, timeout);
+                } finally {
+                    plugin.getStorageManager().guardClan(clan, null);
                 }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (CancellationException ex) {
+                // The plugin is disabling
+                return;
+            } catch (ExecutionException ex) {
+                plugin.getLogger().log(Level.SEVERE, "Error collecting the fees of " + clan.getTag(), ex.getCause());
+            }
+        }
+    }
+
+    private void collectFees(Clan clan) {
+        PermissionsManager pm = plugin.getPermissionsManager();
+        final double memberFee = clan.getMemberFee();
+
+        for (ClanPlayer cp : clan.getFeePayers()) {
+            OfflinePlayer player = Bukkit.getOfflinePlayer(cp.getUniqueId());
+            
+            boolean success = pm.chargePlayer(player, memberFee);
+            double balanceAfter = pm.playerGetMoney(player);
+            
+            if (success) {
+                // Send message via proxy if player might be on another server
+                String feeMessage = AQUA + lang("fee.collected", cp, CurrencyFormat.format(memberFee));
+                if (player.isOnline()) {
+                    // Player is on this server, send directly
+                    ChatBlock.sendMessage(cp, feeMessage);
+                } else if (plugin.getProxyManager() != null && plugin.getProxyManager().isOnline(cp.getName())) {
+                    // Player is online on another server, send via proxy
+                    plugin.getProxyManager().sendMessage(cp.getName(), feeMessage);
+                }
+
+                clan.deposit(new BankOperator(cp, balanceAfter), Cause.MEMBER_FEE, memberFee);
+                plugin.getStorageManager().updateClan(clan);
+            } else {
+                clan.removePlayerFromClan(cp.getUniqueId());
+                clan.addBb(lang("bb.fee.player.kicked", cp.getName()));
             }
         }
     }
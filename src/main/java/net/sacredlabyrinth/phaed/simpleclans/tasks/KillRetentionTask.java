@@ -0,0 +1,51 @@
+package net.sacredlabyrinth.phaed.simpleclans.tasks;
+
+import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
+import net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager;
+import net.sacredlabyrinth.phaed.simpleclans.managers.StorageManager;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.LocalDateTime;
+
+import static net.sacredlabyrinth.phaed.simpleclans.managers.SettingsManager.ConfigField.*;
+
+/**
+ * Deletes the kills older than the retention window
+ */
+public class KillRetentionTask extends BukkitRunnable {
+
+    private final SimpleClans plugin;
+
+    public KillRetentionTask(@NotNull SimpleClans plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Starts the repetitive task
+     */
+    public void start() {
+        long interval = plugin.getSettingsManager().getMinutes(PERFORMANCE_KILL_RETENTION_INTERVAL);
+        runTaskTimerAsynchronously(plugin, interval, interval);
+    }
+
+    @Override
+    public void run() {
+        SettingsManager sm = plugin.getSettingsManager();
+        StorageManager storage = plugin.getStorageManager();
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(Math.max(1, sm.getInt(PERFORMANCE_KILL_RETENTION_DAYS)));
+        long begin = System.currentTimeMillis();
+
+        int partitions = 0;
+        if (sm.is(MYSQL_ENABLE) && sm.is(PERFORMANCE_KILL_RETENTION_MYSQL_PARTITIONING)) {
+            partitions = storage.dropKillPartitions(cutoff.toLocalDate());
+        }
+        int kills = storage.purgeKills(cutoff, Math.max(1, sm.getInt(PERFORMANCE_KILL_RETENTION_BATCH_SIZE)),
+                this::isCancelled);
+
+        if (partitions > 0 || kills > 0) {
+            plugin.getLogger().info(String.format("Removed %d old kills and %d kill partitions in %d milliseconds",
+                    kills, partitions, System.currentTimeMillis() - begin));
+        }
+    }
+}
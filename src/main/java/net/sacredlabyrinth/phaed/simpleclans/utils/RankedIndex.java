@@ -0,0 +1,268 @@
+package net.sacredlabyrinth.phaed.simpleclans.utils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Keeps elements ranked by a score, highest first, answering position and top-N queries in O(log N).
+ * <p>
+ * Elements are tracked by identity. When an element's score changes, call {@link #update(Object)}: the element is
+ * only re-ranked on the next query, so bursts of changes cost one re-rank. Elements with the same score are ranked
+ * in the order they were added.
+ * </p>
+ *
+ * @param <E> the element being ranked
+ */
+public final class RankedIndex<E> {
+
+    private final ToDoubleFunction<E> score;
+    private final Map<E, Node<E>> nodes = new IdentityHashMap<>();
+    private final Set<E> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Node<E> root;
+    private long sequence;
+
+    /**
+     * @param score the score elements are ranked by, it is only read when an element is added or updated
+     */
+    public RankedIndex(@NotNull ToDoubleFunction<E> score) {
+        this.score = score;
+    }
+
+    /**
+     * Adds an element, or re-ranks it if already present
+     */
+    public synchronized void add(@NotNull E element) {
+        dirty.add(element);
+    }
+
+    /**
+     * Marks the element's score as changed, does nothing if the element is not in this index
+     */
+    public synchronized void update(@NotNull E element) {
+        if (nodes.containsKey(element)) {
+            dirty.add(element);
+        }
+    }
+
+    public synchronized void remove(@NotNull E element) {
+        dirty.remove(element);
+        Node<E> node = nodes.remove(element);
+        if (node != null) {
+            root = remove(root, node);
+        }
+    }
+
+    public synchronized void clear() {
+        dirty.clear();
+        nodes.clear();
+        root = null;
+    }
+
+    public synchronized int size() {
+        flush();
+        return size(root);
+    }
+
+    /**
+     * @param element the element
+     * @return the element's position, starting at 1, or -1 if it is not in this index
+     */
+    public synchronized int getPosition(@NotNull E element) {
+        flush();
+        Node<E> node = nodes.get(element);
+        if (node == null) {
+            return -1;
+        }
+        int position = 0;
+        Node<E> current = root;
+        while (current != null) {
+            int c = compare(node, current);
+            if (c < 0) {
+                current = current.left;
+            } else if (c > 0) {
+                position += size(current.left) + 1;
+                current = current.right;
+            } else {
+                return position + size(current.left) + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param position the position, starting at 1
+     * @return the element at the position or null if there is none
+     */
+    @Nullable
+    public synchronized E get(int position) {
+        flush();
+        int index = position - 1;
+        if (index < 0 || index >= size(root)) {
+            return null;
+        }
+        Node<E> current = root;
+        while (current != null) {
+            int leftSize = size(current.left);
+            if (index < leftSize) {
+                current = current.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                current = current.right;
+            } else {
+                return current.element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param amount the maximum amount of elements
+     * @return the highest ranked elements, in order
+     */
+    @NotNull
+    public synchronized List<E> getTop(int amount) {
+        flush();
+        List<E> top = new ArrayList<>(Math.max(0, Math.min(amount, size(root))));
+        collect(root, top, amount);
+        return top;
+    }
+
+    private void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        for (E element : dirty) {
+            Node<E> old = nodes.get(element);
+            long id;
+            if (old != null) {
+                root = remove(root, old);
+                id = old.id;
+            } else {
+                id = sequence++;
+            }
+            Node<E> node = new Node<>(element, score.applyAsDouble(element), id);
+            nodes.put(element, node);
+            root = insert(root, node);
+        }
+        dirty.clear();
+    }
+
+    private void collect(Node<E> node, List<E> out, int amount) {
+        if (node == null || out.size() >= amount) {
+            return;
+        }
+        collect(node.left, out, amount);
+        if (out.size() < amount) {
+            out.add(node.element);
+        }
+        collect(node.right, out, amount);
+    }
+
+    private static <E> int compare(Node<E> a, Node<E> b) {
+        int c = Double.compare(b.score, a.score);
+        return c != 0 ? c : Long.compare(a.id, b.id);
+    }
+
+    private static <E> int size(Node<E> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static <E> Node<E> insert(Node<E> root, Node<E> node) {
+        if (root == null) {
+            return node;
+        }
+        if (compare(node, root) < 0) {
+            root.left = insert(root.left, node);
+            if (root.left.priority > root.priority) {
+                root = rotateRight(root);
+            }
+        } else {
+            root.right = insert(root.right, node);
+            if (root.right.priority > root.priority) {
+                root = rotateLeft(root);
+            }
+        }
+        root.resize();
+        return root;
+    }
+
+    private static <E> Node<E> remove(Node<E> root, Node<E> node) {
+        if (root == null) {
+            return null;
+        }
+        if (root == node) {
+            return merge(root.left, root.right);
+        }
+        if (compare(node, root) < 0) {
+            root.left = remove(root.left, node);
+        } else {
+            root.right = remove(root.right, node);
+        }
+        root.resize();
+        return root;
+    }
+
+    private static <E> Node<E> merge(Node<E> left, Node<E> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.resize();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.resize();
+        return right;
+    }
+
+    private static <E> Node<E> rotateRight(Node<E> node) {
+        Node<E> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.resize();
+        left.resize();
+        return left;
+    }
+
+    private static <E> Node<E> rotateLeft(Node<E> node) {
+        Node<E> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.resize();
+        right.resize();
+        return right;
+    }
+
+    private static final class Node<E> {
+        private final E element;
+        private final double score;
+        private final long id;
+        private final int priority = ThreadLocalRandom.current().nextInt();
+        private Node<E> left;
+        private Node<E> right;
+        private int size = 1;
+
+        private Node(E element, double score, long id) {
+            this.element = element;
+            this.score = score;
+            this.id = id;
+        }
+
+        private void resize() {
+            size = 1 + RankedIndex.size(left) + RankedIndex.size(right);
+        }
+    }
+}
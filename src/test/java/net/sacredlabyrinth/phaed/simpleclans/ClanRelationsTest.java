@@ -0,0 +1,40 @@
+package net.sacredlabyrinth.phaed.simpleclans;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClanRelationsTest {
+
+    @Test
+    public void relations() {
+        ClanRelations relations = new ClanRelations(Arrays.asList("one", "two"), Collections.singletonList("three"),
+                Collections.singletonList("three"));
+
+        assertTrue(relations.isAlly("one"));
+        assertTrue(relations.isAlly("two"));
+        assertFalse(relations.isAlly("three"));
+        assertTrue(relations.isRival("three"));
+        assertTrue(relations.isWarring("three"));
+        assertFalse(relations.isWarring("one"));
+    }
+
+    @Test
+    public void unknownTags() {
+        ClanRelations relations = new ClanRelations(Collections.singletonList(""), Collections.emptyList(),
+                Collections.emptyList());
+
+        assertFalse(relations.isAlly("never-interned"));
+        assertFalse(relations.isAlly(""));
+        assertFalse(relations.isRival(null));
+    }
+
+    @Test
+    public void sameIdForEveryClan() {
+        assertEquals(ClanRelations.intern("shared"), ClanRelations.intern("shared"));
+        assertNotEquals(ClanRelations.intern("shared"), ClanRelations.intern("other"));
+    }
+}
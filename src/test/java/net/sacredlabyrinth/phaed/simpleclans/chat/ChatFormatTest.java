@@ -0,0 +1,39 @@
+package net.sacredlabyrinth.phaed.simpleclans.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChatFormatTest {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    {
+        values.put("clan", "[X]");
+        values.put("player", "Bob");
+    }
+
+    @Test
+    public void replacesKnownPlaceholders() {
+        ChatFormat format = ChatFormat.compile("[%clan%] <%player%> %rank%: %message%");
+        assertEquals("[[X]] <Bob> %rank%: %message%", format.apply(values::get));
+    }
+
+    @Test
+    public void keepsPercentSigns() {
+        assertEquals("100% sure Bob 50%", ChatFormat.compile("100% sure %player% 50%").apply(values::get));
+        assertEquals("%Bob%", ChatFormat.compile("%%player%%").apply(values::get));
+        assertEquals("%player", ChatFormat.compile("%player").apply(values::get));
+        assertEquals("", ChatFormat.compile("").apply(values::get));
+    }
+
+    @Test
+    public void listsPlaceholders() {
+        ChatFormat format = ChatFormat.compile("100% [%clan%] %player%: %message%");
+        assertEquals(Arrays.asList("clan", "player", "message"), format.getPlaceholders());
+    }
+}
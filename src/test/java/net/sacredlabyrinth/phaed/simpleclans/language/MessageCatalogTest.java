@@ -0,0 +1,33 @@
+package net.sacredlabyrinth.phaed.simpleclans.language;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageCatalogTest {
+
+    @Test
+    public void formatWithArguments() {
+        MessageCatalog.Template template = MessageCatalog.Template.compile("§a{0} joined {1}");
+        assertEquals("§aPhaed joined ABC", template.format("Phaed", "ABC"));
+        assertEquals("§aRoinuj joined XYZ", template.format("Roinuj", "XYZ"));
+    }
+
+    @Test
+    public void formatWithoutArguments() {
+        MessageCatalog.Template template = MessageCatalog.Template.compile("You can''t do that");
+        assertEquals("You can't do that", template.format());
+        assertEquals("You can't do that", template.format("ignored"));
+    }
+
+    @Test
+    public void acfPlaceholdersAreKept() {
+        MessageCatalog.Template template = MessageCatalog.Template.compile("Use {commandprefix}clan help");
+        assertEquals("Use {commandprefix}clan help", template.format());
+    }
+
+    @Test
+    public void invalidPattern() {
+        assertThrows(IllegalArgumentException.class, () -> MessageCatalog.Template.compile("Broken {0"));
+    }
+}
@@ -0,0 +1,66 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryCodecTest {
+
+    @Test
+    public void readsWhatWasWritten() throws IOException {
+        BinaryCodec.Output out = new BinaryCodec.Output();
+        out.writeByte(7);
+        out.writeVarInt(300);
+        out.writeSignedVarLong(-3);
+        out.writeVarLong(Long.MAX_VALUE);
+        out.writeLong(Long.MIN_VALUE);
+        out.writeDouble(12.5);
+        out.writeString("tägs");
+        out.writeString(null);
+        out.writeString("");
+
+        BinaryCodec.Input in = BinaryCodec.unframe(BinaryCodec.frame(out.toByteArray(), 0));
+        assertEquals(7, in.readByte());
+        assertEquals(300, in.readVarInt());
+        assertEquals(-3, in.readSignedVarLong());
+        assertEquals(Long.MAX_VALUE, in.readVarLong());
+        assertEquals(Long.MIN_VALUE, in.readLong());
+        assertEquals(12.5, in.readDouble());
+        assertEquals("tägs", in.readString());
+        assertNull(in.readString());
+        assertEquals("", in.readString());
+        assertFalse(in.hasMore());
+    }
+
+    @Test
+    public void compressesLargeValues() throws IOException {
+        StringBuilder flags = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            flags.append("{\"rank\":\"member\"},");
+        }
+        BinaryCodec.Output out = new BinaryCodec.Output();
+        out.writeString(flags.toString());
+        byte[] body = out.toByteArray();
+
+        byte[] framed = BinaryCodec.frame(body, 512);
+        assertEquals(BinaryCodec.DEFLATE, framed[0]);
+        assertTrue(framed.length < body.length / 4);
+        assertEquals(flags.toString(), BinaryCodec.unframe(framed).readString());
+
+        assertEquals(BinaryCodec.BINARY, BinaryCodec.frame(body, 0)[0]);
+    }
+
+    @Test
+    public void rejectsTruncatedValues() {
+        BinaryCodec.Output out = new BinaryCodec.Output();
+        out.writeString("truncated");
+        byte[] framed = BinaryCodec.frame(out.toByteArray(), 0);
+        byte[] truncated = new byte[framed.length - 3];
+        System.arraycopy(framed, 0, truncated, 0, truncated.length);
+
+        assertThrows(IOException.class, () -> BinaryCodec.unframe(truncated).readString());
+        assertThrows(IOException.class, () -> BinaryCodec.unframe(new byte[]{'{'}));
+    }
+}
@@ -0,0 +1,81 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.codec;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PayloadCodecTest {
+
+    @Test
+    public void compactPayloadsAreReadBack() {
+        JsonObject fields = new JsonObject();
+        fields.addProperty("deaths", 4);
+        fields.addProperty("lastSeen", 1790000000000L);
+        fields.addProperty("balance", -12.5);
+        fields.addProperty("leader", true);
+        fields.addProperty("flags", "{\"chat\":\"tägs\"}");
+        JsonObject update = new JsonObject();
+        update.addProperty("type", "player");
+        update.addProperty("id", UUID.randomUUID().toString());
+        update.addProperty("full", false);
+        update.add("fields", fields);
+        update.add("target", JsonNull.INSTANCE);
+        update.addProperty("unknownKey", "NOT-A-UUID-0000-0000-000000000000");
+        JsonArray updates = new JsonArray();
+        updates.add(update);
+        JsonObject message = new JsonObject();
+        message.addProperty("origin", "lobby-1");
+        message.add("updates", updates);
+
+        String compact = PayloadCodec.encode(message, true);
+
+        assertEquals(PayloadCodec.MARKER, compact.charAt(0));
+        assertTrue(compact.length() < message.toString().length() * 3 / 4);
+        assertEquals(message, PayloadCodec.decode(compact));
+    }
+
+    @Test
+    public void largePayloadsAreCompressed() {
+        StringBuilder bb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            bb.append("Player").append(i).append(" joined the clan|");
+        }
+        JsonObject message = new JsonObject();
+        message.addProperty("bb", bb.toString());
+
+        String compact = PayloadCodec.encode(message, true);
+
+        assertTrue(compact.length() < bb.length() / 2);
+        assertEquals(message, PayloadCodec.decode(compact));
+    }
+
+    @Test
+    public void jsonPayloadsAreStillRead() {
+        String json = "{\"type\":\"clan\",\"clanTag\":\"abc\",\"version\":12}";
+
+        assertEquals(json, PayloadCodec.encode(JsonParser.parseString(json).getAsJsonObject(), false));
+        JsonObject decoded = PayloadCodec.decode(json);
+        assertEquals("abc", decoded.get("clanTag").getAsString());
+        assertEquals(12, decoded.get("version").getAsLong());
+
+        // numbers parsed from JSON are kept as written
+        assertEquals(decoded, PayloadCodec.decode(PayloadCodec.encode(decoded, true)));
+    }
+
+    @Test
+    public void rejectsMalformedPayloads() {
+        assertThrows(JsonSyntaxException.class, () -> PayloadCodec.decode(PayloadCodec.MARKER + "not base64!"));
+        assertThrows(JsonSyntaxException.class, () -> PayloadCodec.decode(PayloadCodec.MARKER + "AQkA"));
+        assertThrows(JsonSyntaxException.class, () -> PayloadCodec.decode("[1, 2]"));
+
+        String compact = PayloadCodec.encode(JsonParser.parseString("{\"message\":\"hello\"}").getAsJsonObject(), true);
+        assertThrows(JsonSyntaxException.class, () -> PayloadCodec.decode(compact.substring(0, compact.length() - 4)));
+    }
+}
@@ -0,0 +1,67 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.lock;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LockManagerTest {
+
+    private static final String KEY = "simpleclans:lock:bank:A";
+    private final LockManager locks = new LockManager();
+
+    @AfterEach
+    public void tearDown() {
+        locks.shutdown();
+    }
+
+    @Test
+    public void signalWakesUpTheWaitingThread() throws InterruptedException {
+        long seen = locks.releases(KEY);
+        Thread releaser = new Thread(() -> {
+            sleep(100);
+            locks.signal(KEY);
+        });
+        releaser.start();
+
+        long start = System.currentTimeMillis();
+        assertTrue(locks.await(KEY, seen, 5000));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        releaser.join();
+    }
+
+    @Test
+    public void releaseBeforeWaitingIsNotMissed() {
+        long seen = locks.releases(KEY);
+        locks.signal(KEY);
+
+        long start = System.currentTimeMillis();
+        assertTrue(locks.await(KEY, seen, 5000));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void otherLocksDoNotWakeUpTheWaitingThread() {
+        long seen = locks.releases(KEY);
+        locks.signal("simpleclans:lock:bank:B");
+
+        long start = System.currentTimeMillis();
+        assertTrue(locks.await(KEY, seen, 200));
+        assertTrue(System.currentTimeMillis() - start >= 150);
+    }
+
+    @Test
+    public void interruptionStopsTheWait() {
+        Thread.currentThread().interrupt();
+        assertFalse(locks.await(KEY, locks.releases(KEY), 5000));
+        assertTrue(Thread.interrupted());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.lock;
+
+import net.sacredlabyrinth.phaed.simpleclans.redis.RedisManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class RedisLockTest {
+
+    private final AtomicReference<String> holder = new AtomicReference<>();
+    private final AtomicInteger locks = new AtomicInteger();
+    private final AtomicInteger unlocks = new AtomicInteger();
+    private LockManager lockManager;
+    private RedisManager redis;
+
+    @BeforeEach
+    public void setup() {
+        lockManager = new LockManager();
+        redis = mock(RedisManager.class);
+        when(redis.getLockManager()).thenReturn(lockManager);
+        when(redis.getServerId()).thenReturn("server-a");
+
+        // Answers the lock and unlock scripts like Redis would
+        Jedis jedis = mock(Jedis.class);
+        when(jedis.eval(anyString(), anyList(), anyList())).thenAnswer(invocation -> {
+            String script = invocation.getArgument(0);
+            List<String> args = invocation.getArgument(2);
+            String lockId = args.get(0);
+            if (script.contains("'NX'")) {
+                locks.incrementAndGet();
+                return holder.compareAndSet(null, lockId) ? -1L : 10_000L;
+            }
+            if (script.contains("'del'")) {
+                unlocks.incrementAndGet();
+                return holder.compareAndSet(lockId, null) ? 1L : 0L;
+            }
+            return lockId.equals(holder.get()) ? 1L : 0L;
+        });
+        when(jedis.get(anyString())).thenAnswer(invocation -> holder.get());
+        when(redis.getConnection()).thenReturn(jedis);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        lockManager.shutdown();
+    }
+
+    @Test
+    public void sameThreadReacquiresWithoutRedis() {
+        RedisLock outer = new RedisLock(redis, "bank:A", 1000);
+        RedisLock inner = new RedisLock(redis, "bank:A", 1000);
+
+        assertTrue(outer.tryAcquire());
+        assertTrue(inner.tryAcquire());
+        assertEquals(1, locks.get());
+
+        inner.release();
+        assertFalse(inner.isLocked());
+        assertNotNull(holder.get());
+        assertEquals(0, unlocks.get());
+
+        outer.release();
+        assertNull(holder.get());
+        assertEquals(1, unlocks.get());
+    }
+
+    @Test
+    public void releaseWakesUpTheWaitingThread() throws InterruptedException {
+        RedisLock held = new RedisLock(redis, "bank:A", 1000);
+        assertTrue(held.tryAcquire());
+
+        AtomicLong acquiredAt = new AtomicLong();
+        Thread waiter = new Thread(() -> {
+            RedisLock lock = new RedisLock(redis, "bank:A", 1000);
+            if (lock.tryAcquire(5000)) {
+                acquiredAt.set(System.currentTimeMillis());
+                lock.release();
+            }
+        });
+        waiter.start();
+        waitFor(() -> locks.get() >= 2);
+
+        long releasedAt = System.currentTimeMillis();
+        held.release();
+        waiter.join(5000);
+
+        assertTrue(acquiredAt.get() > 0);
+        // Well below the bounded wait, so the waiter was woken up rather than polling
+        assertTrue(acquiredAt.get() - releasedAt < 300);
+    }
+
+    @Test
+    public void foregroundDoesNotWaitForOtherThreadsOfThisServer() throws InterruptedException {
+        Thread foreground = Thread.currentThread();
+        lockManager.setForeground(() -> Thread.currentThread() == foreground);
+
+        RedisLock held = new RedisLock(redis, "bank:A", 1000);
+        Thread holderThread = new Thread(() -> assertTrue(held.tryAcquire()));
+        holderThread.start();
+        holderThread.join();
+
+        long start = System.currentTimeMillis();
+        assertFalse(new RedisLock(redis, "bank:A", 1000).tryAcquire(5000));
+        assertTrue(System.currentTimeMillis() - start < 300);
+        assertEquals(1, locks.get());
+    }
+
+    @Test
+    public void isHeldChecksRedis() {
+        RedisLock lock = new RedisLock(redis, "bank:A", 1000);
+        assertFalse(lock.isHeld());
+
+        assertTrue(lock.tryAcquire());
+        assertTrue(lock.isHeld());
+
+        // The lease expired and another server took the lock
+        holder.set("server-b:lock");
+        assertTrue(lock.isLocked());
+        assertFalse(lock.isHeld());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,157 @@
+package net.sacredlabyrinth.phaed.simpleclans.redis.sync;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import net.sacredlabyrinth.phaed.simpleclans.ClanPlayer;
+import net.sacredlabyrinth.phaed.simpleclans.SimpleClans;
+import net.sacredlabyrinth.phaed.simpleclans.managers.ClanManager;
+import net.sacredlabyrinth.phaed.simpleclans.redis.RedisConfiguration;
+import net.sacredlabyrinth.phaed.simpleclans.redis.RedisManager;
+import net.sacredlabyrinth.phaed.simpleclans.redis.codec.PayloadCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class DeltaSyncTest {
+
+    private SimpleClans plugin;
+    private RedisManager redis;
+    private RedisConfiguration config;
+    private ClanPlayer cp;
+
+    @BeforeEach
+    public void setup() {
+        plugin = mock(SimpleClans.class);
+        redis = mock(RedisManager.class);
+        config = mock(RedisConfiguration.class);
+        when(redis.getConfig()).thenReturn(config);
+        when(redis.getServerId()).thenReturn("server-a");
+
+        cp = new ClanPlayer();
+        cp.setUniqueId(UUID.randomUUID());
+    }
+
+    @Test
+    public void batchesUpdatesOfTheFlushWindow() {
+        when(config.getUpdateFlushWindow()).thenReturn(60_000);
+        DeltaSync sync = new DeltaSync(plugin, redis);
+        ClanPlayer other = new ClanPlayer();
+        other.setUniqueId(UUID.randomUUID());
+
+        sync.publish(cp);
+        cp.setDeaths(1);
+        sync.publish(cp);
+        sync.publish(other);
+        verify(redis, never()).publish(anyString(), anyString());
+
+        sync.shutdown();
+        List<JsonObject> messages = published(1);
+        assertEquals("server-a", messages.get(0).get("origin").getAsString());
+        JsonArray updates = messages.get(0).getAsJsonArray("updates");
+        assertEquals(2, updates.size());
+        assertEquals(cp.getUniqueId().toString(), updates.get(0).getAsJsonObject().get("id").getAsString());
+        assertEquals(other.getUniqueId().toString(), updates.get(1).getAsJsonObject().get("id").getAsString());
+    }
+
+    @Test
+    public void sendsCompactPayloadsWhenEnabled() {
+        when(config.isCompactPayloads()).thenReturn(true);
+        DeltaSync sync = new DeltaSync(plugin, redis);
+
+        sync.publish(cp);
+
+        ArgumentCaptor<String> payload = ArgumentCaptor.forClass(String.class);
+        verify(redis).publish(eq(RedisManager.CHANNEL_UPDATE), payload.capture());
+        assertEquals(PayloadCodec.MARKER, payload.getValue().charAt(0));
+        JsonObject update = update(PayloadCodec.decode(payload.getValue()));
+        assertEquals(cp.getUniqueId().toString(), update.get("id").getAsString());
+    }
+
+    @Test
+    public void sendsChangedFieldsWithConsecutiveVersions() {
+        DeltaSync sync = new DeltaSync(plugin, redis);
+
+        sync.publish(cp);
+        cp.setDeaths(3);
+        sync.publish(cp);
+        sync.publish(cp);
+
+        List<JsonObject> messages = published(2);
+        JsonObject first = update(messages.get(0));
+        assertEquals(1, first.get("version").getAsLong());
+        assertTrue(first.get("full").getAsBoolean());
+
+        JsonObject second = update(messages.get(1));
+        assertEquals(2, second.get("version").getAsLong());
+        assertFalse(second.get("full").getAsBoolean());
+        JsonObject fields = second.getAsJsonObject("fields");
+        assertEquals(1, fields.size());
+        assertEquals(3, fields.get("deaths").getAsInt());
+    }
+
+    @Test
+    public void readsTheStateWhenPrepared() {
+        DeltaSync sync = new DeltaSync(plugin, redis);
+        sync.publish(cp);
+
+        cp.setDeaths(1);
+        DeltaSync.Update update = sync.prepare(cp);
+        cp.setDeaths(2);
+        sync.publish(update);
+
+        JsonObject fields = update(published(2).get(1)).getAsJsonObject("fields");
+        assertEquals(1, fields.get("deaths").getAsInt());
+    }
+
+    @Test
+    public void reloadsAfterAGap() {
+        ClanManager clanManager = mock(ClanManager.class);
+        when(plugin.getClanManager()).thenReturn(clanManager);
+        when(clanManager.getAnyClanPlayer(cp.getUniqueId())).thenReturn(cp);
+        DeltaSync sync = new DeltaSync(plugin, redis);
+
+        assertFalse(sync.apply("server-b", delta(1, true, 1)));
+        assertTrue(sync.apply("server-b", delta(2, false, 4)));
+        assertEquals(4, cp.getDeaths());
+
+        assertFalse(sync.apply("server-b", delta(4, false, 9)));
+        assertEquals(4, cp.getDeaths());
+        assertTrue(sync.apply("server-b", delta(5, false, 10)));
+        assertEquals(10, cp.getDeaths());
+
+        assertFalse(sync.apply("server-c", delta(6, false, 11)));
+        assertEquals(10, cp.getDeaths());
+    }
+
+    private JsonObject delta(long version, boolean full, int deaths) {
+        JsonObject fields = new JsonObject();
+        fields.addProperty("deaths", deaths);
+        JsonObject json = new JsonObject();
+        json.addProperty("type", DeltaSync.PLAYER);
+        json.addProperty("id", cp.getUniqueId().toString());
+        json.addProperty("version", version);
+        json.addProperty("full", full);
+        json.add("fields", fields);
+        return json;
+    }
+
+    private List<JsonObject> published(int count) {
+        ArgumentCaptor<String> payloads = ArgumentCaptor.forClass(String.class);
+        verify(redis, times(count)).publish(eq(RedisManager.CHANNEL_UPDATE), payloads.capture());
+        return payloads.getAllValues().stream().map(PayloadCodec::decode)
+                .collect(Collectors.toList());
+    }
+
+    private JsonObject update(JsonObject message) {
+        JsonArray updates = message.getAsJsonArray("updates");
+        assertEquals(1, updates.size());
+        return updates.get(0).getAsJsonObject();
+    }
+}
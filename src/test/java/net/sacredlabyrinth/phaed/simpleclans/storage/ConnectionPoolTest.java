@@ -0,0 +1,103 @@
+package net.sacredlabyrinth.phaed.simpleclans.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ConnectionPoolTest {
+
+    private final List<Connection> opened = new ArrayList<>();
+    private final List<Statement> statements = new ArrayList<>();
+    private ConnectionPool pool;
+
+    @BeforeEach
+    public void setup() {
+        opened.clear();
+        statements.clear();
+        pool = new ConnectionPool("Test", Logger.getLogger("Test"), 2, 50, 1, () -> {
+            Connection connection = mock(Connection.class);
+            when(connection.isValid(anyInt())).thenReturn(true);
+            when(connection.getAutoCommit()).thenReturn(true);
+            Statement statement = mock(Statement.class);
+            when(connection.createStatement()).thenReturn(statement);
+            statements.add(statement);
+            opened.add(connection);
+            return connection;
+        });
+    }
+
+    @Test
+    public void reusesReturnedConnections() throws SQLException {
+        pool.getConnection().close();
+        pool.getConnection().close();
+
+        assertEquals(1, opened.size());
+        assertEquals(0, pool.getActiveConnections());
+        assertEquals(1, pool.getIdleConnections());
+        assertEquals(2, pool.getBorrowCount());
+    }
+
+    @Test
+    public void timesOutWhenExhausted() throws SQLException {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+
+        assertThrows(SQLTimeoutException.class, pool::getConnection);
+        assertEquals(1, pool.getTimeoutCount());
+
+        first.close();
+        second.close();
+        assertEquals(2, pool.getIdleConnections());
+    }
+
+    @Test
+    public void sharedConnectionStaysOutsideThePool() throws SQLException {
+        Connection shared = pool.getSharedConnection();
+        assertSame(shared, pool.getSharedConnection());
+
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        assertEquals(3, opened.size());
+        assertEquals(2, pool.getTotalConnections());
+        first.close();
+        second.close();
+
+        pool.close();
+        verify(shared).close();
+        assertThrows(SQLException.class, pool::getSharedConnection);
+    }
+
+    @Test
+    public void closesStatementsOnRelease() throws SQLException {
+        Connection connection = pool.getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("SELECT 1");
+        connection.close();
+
+        verify(statements.get(0)).close();
+        verify(opened.get(0), never()).close();
+        assertTrue(connection.isClosed());
+        assertEquals(1, pool.getQueryCount());
+        assertThrows(SQLException.class, connection::createStatement);
+    }
+
+    @Test
+    public void closingPoolClosesIdleConnections() throws SQLException {
+        pool.getConnection().close();
+        pool.close();
+
+        verify(opened.get(0)).close();
+        assertEquals(0, pool.getTotalConnections());
+        assertThrows(SQLException.class, pool::getConnection);
+    }
+}
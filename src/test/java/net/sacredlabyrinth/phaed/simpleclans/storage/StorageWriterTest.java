@@ -0,0 +1,165 @@
+package net.sacredlabyrinth.phaed.simpleclans.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class StorageWriterTest {
+
+    private final List<Integer> executed = new CopyOnWriteArrayList<>();
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final CountDownLatch started = new CountDownLatch(1);
+    private ConnectionPool pool;
+    private StorageWriter writer;
+
+    @BeforeEach
+    public void setup() {
+        executed.clear();
+        pool = new ConnectionPool("Test", Logger.getLogger("Test"), 2, 1000, 1, () -> {
+            Connection connection = mock(Connection.class);
+            when(connection.isValid(anyInt())).thenReturn(true);
+            when(connection.getAutoCommit()).thenReturn(true);
+            return connection;
+        });
+    }
+
+    @AfterEach
+    public void tearDown() {
+        gate.countDown();
+        writer.shutdown(1000);
+    }
+
+    @Test
+    public void fullQueueBlocksInsteadOfOvertaking() throws InterruptedException {
+        writer = new StorageWriter("Test-Writer", Logger.getLogger("Test"), pool, 1, 1, 10000);
+        blockWorker("clan:A");
+        writer.submit("clan:A", null, record(2), null);
+
+        Thread producer = new Thread(() -> writer.submit("clan:A", null, record(3), null));
+        producer.start();
+        producer.join(300);
+
+        assertTrue(producer.isAlive());
+        assertEquals(1, writer.getBlockedCount());
+        assertEquals(0, writer.getCallerRunsCount());
+
+        gate.countDown();
+        producer.join(5000);
+        assertTrue(writer.flush("clan:A", 5000));
+        assertEquals(List.of(1, 2, 3), executed);
+    }
+
+    @Test
+    public void fullQueueOverflowsAfterMaxWait() throws InterruptedException {
+        writer = new StorageWriter("Test-Writer", Logger.getLogger("Test"), pool, 1, 1, 50);
+        blockWorker("clan:A");
+        writer.submit("clan:A", null, record(2), null);
+
+        long start = System.nanoTime();
+        writer.submit("clan:A", null, record(3), null);
+        writer.submit("clan:A", null, record(4), null);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        assertEquals(2, writer.getOverflowCount());
+        assertEquals(0, writer.getCallerRunsCount());
+
+        gate.countDown();
+        assertTrue(writer.flush("clan:A", 5000));
+        assertEquals(List.of(1, 2, 3, 4), executed);
+    }
+
+    @Test
+    public void coalescesQueuedUpdatesOfTheSameRow() throws InterruptedException {
+        writer = new StorageWriter("Test-Writer", Logger.getLogger("Test"), pool, 1, 10, 10000);
+        AtomicInteger callbacks = new AtomicInteger();
+        Runnable callback = callbacks::incrementAndGet;
+        blockWorker("clan:A");
+        writer.submit("clan:A", "update", record(2), callback);
+        writer.submit("clan:A", "update", record(3), callback);
+        writer.submit("clan:A", "update", record(4), callback);
+
+        gate.countDown();
+        assertTrue(writer.flush("clan:A", 5000));
+
+        assertEquals(List.of(1, 4), executed);
+        assertEquals(2, writer.getCoalescedCount());
+        assertEquals(1, callbacks.get());
+    }
+
+    @Test
+    public void flushWaitsForQueuedWrites() {
+        writer = new StorageWriter("Test-Writer", Logger.getLogger("Test"), pool, 1, 10, 10000);
+        writer.submit("player:A", null, connection -> {
+            sleep(100);
+            executed.add(1);
+        }, null);
+
+        assertTrue(writer.flush("player:A", 5000));
+        assertEquals(List.of(1), executed);
+    }
+
+    @Test
+    public void shutdownDrainsBeforeLaterWrites() throws InterruptedException {
+        writer = new StorageWriter("Test-Writer", Logger.getLogger("Test"), pool, 1, 10, 10000);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        StorageWriter.SQLOperation tracked = connection -> {
+            if (running.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            executed.add(executed.size() + 1);
+            running.decrementAndGet();
+        };
+        blockWorker("kills");
+        writer.submit("kills", null, tracked, null);
+
+        Thread releaser = new Thread(() -> {
+            sleep(200);
+            gate.countDown();
+        });
+        releaser.start();
+        writer.shutdown(10);
+        writer.submit("kills", null, tracked, null);
+
+        assertEquals(List.of(1, 2, 3), executed);
+        assertEquals(0, overlaps.get());
+        assertEquals(1, writer.getCallerRunsCount());
+        releaser.join();
+    }
+
+    private void blockWorker(String shard) throws InterruptedException {
+        writer.submit(shard, null, connection -> {
+            started.countDown();
+            executed.add(1);
+            try {
+                gate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private StorageWriter.SQLOperation record(int value) {
+        return connection -> executed.add(value);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package net.sacredlabyrinth.phaed.simpleclans.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RankedIndexTest {
+
+    @Test
+    public void ranksHighestFirst() {
+        RankedIndex<Score> index = new RankedIndex<>(s -> s.value);
+        Score low = new Score(1);
+        Score high = new Score(3);
+        Score mid = new Score(2);
+        index.add(low);
+        index.add(high);
+        index.add(mid);
+
+        assertEquals(Arrays.asList(high, mid, low), index.getTop(10));
+        assertEquals(1, index.getPosition(high));
+        assertEquals(3, index.getPosition(low));
+        assertSame(mid, index.get(2));
+        assertNull(index.get(0));
+        assertNull(index.get(4));
+    }
+
+    @Test
+    public void reranksUpdatedElements() {
+        RankedIndex<Score> index = new RankedIndex<>(s -> s.value);
+        Score first = new Score(5);
+        Score second = new Score(4);
+        index.add(first);
+        index.add(second);
+
+        second.value = 6;
+        assertEquals(1, index.getPosition(first), "not re-ranked before update");
+        index.update(second);
+        assertEquals(1, index.getPosition(second));
+        assertEquals(2, index.getPosition(first));
+    }
+
+    @Test
+    public void ignoresUpdatesOfUnknownAndRemovedElements() {
+        RankedIndex<Score> index = new RankedIndex<>(s -> s.value);
+        Score score = new Score(1);
+        index.update(score);
+        assertEquals(0, index.size());
+
+        index.add(score);
+        index.remove(score);
+        index.update(score);
+        assertEquals(0, index.size());
+        assertEquals(-1, index.getPosition(score));
+    }
+
+    @Test
+    public void keepsAddOrderForTies() {
+        RankedIndex<Score> index = new RankedIndex<>(s -> s.value);
+        Score first = new Score(1);
+        Score second = new Score(1);
+        index.add(first);
+        index.add(second);
+        index.update(first);
+
+        assertEquals(Arrays.asList(first, second), index.getTop(2));
+    }
+
+    @Test
+    public void matchesFullSort() {
+        Random random = new Random(42);
+        RankedIndex<Score> index = new RankedIndex<>(s -> s.value);
+        List<Score> scores = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Score score = new Score(random.nextInt(50));
+            scores.add(score);
+            index.add(score);
+        }
+        for (int i = 0; i < 2000; i++) {
+            Score score = scores.get(random.nextInt(scores.size()));
+            score.value = random.nextInt(50);
+            index.update(score);
+            if (i % 10 == 0) {
+                index.remove(scores.remove(random.nextInt(scores.size())));
+            }
+        }
+
+        List<Score> sorted = new ArrayList<>(index.getTop(scores.size()));
+        sorted.sort(Comparator.comparingDouble((Score s) -> s.value).reversed());
+        assertEquals(scores.size(), index.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(sorted.get(i).value, index.get(i + 1).value);
+            assertEquals(i + 1, index.getPosition(index.get(i + 1)));
+        }
+    }
+
+    private static final class Score {
+        private double value;
+
+        private Score(double value) {
+            this.value = value;
+        }
+    }
+}